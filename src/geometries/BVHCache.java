@@ -0,0 +1,206 @@
+package geometries;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Cache of compiled hierarchies on the disk. A hierarchy is kept in a binary
+ * file named by a hash of the geometries it was built of - their types, their
+ * boxes and their order - and of the build parameters, so a static scene is
+ * built once and then loaded by mapping the file into memory. The bounds of the
+ * nodes, most of the file, are used in place from the mapping (see
+ * {@link LinearBVH#LinearBVH(DoubleBuffer, int[], Intersectable[], int)}), the
+ * nodes data and the indices of the primitives are copied in bulk, as the
+ * indices are resolved into the geometries anyway.<br/>
+ * The file holds a header (magic, version, hash, amounts of nodes and
+ * primitives, depth, padding which aligns the bounds) followed by the bounds of
+ * the nodes, the nodes data and the indices of the primitives of the leaves in
+ * the list of the geometries
+ *
+ * @author Moy Georgi & Efrat Aharoni
+ */
+final class BVHCache {
+    /** Magic number of a cache file */
+    private static final int MAGIC = 0x42564843; // "BVHC"
+    /** Version of the file format */
+    private static final int VERSION = 2;
+    /** Size of the header in bytes */
+    static final int HEADER_SIZE = 4 + 4 + 8 + 4 + 4 + 4 + 4;
+    /** Logger of the cache errors */
+    private static final Logger logger = Logger.getLogger("BVHCache");
+
+    /** Utility class */
+    private BVHCache() {
+    }
+
+    /**
+     * Calculates the hash of the geometries of a hierarchy and of its build
+     * parameters
+     *
+     * @param items      the bounded geometries of the hierarchy
+     * @param parameters the build parameters
+     * @return the hash
+     */
+    static long key(List<Intersectable> items, double... parameters) {
+        long hash = 0xcbf29ce484222325L;
+        hash = mix(hash, items.size());
+        for (double p : parameters)
+            hash = mix(hash, Double.doubleToLongBits(p));
+        for (var g : items) {
+            hash = mix(hash, g.getClass().getName().hashCode());
+            Intersectable.Box b = g.box;
+            hash = mix(hash, Double.doubleToLongBits(b.minX));
+            hash = mix(hash, Double.doubleToLongBits(b.maxX));
+            hash = mix(hash, Double.doubleToLongBits(b.minY));
+            hash = mix(hash, Double.doubleToLongBits(b.maxY));
+            hash = mix(hash, Double.doubleToLongBits(b.minZ));
+            hash = mix(hash, Double.doubleToLongBits(b.maxZ));
+        }
+        return hash;
+    }
+
+    /**
+     * Mixes a value into a hash
+     *
+     * @param hash  the hash
+     * @param value the value
+     * @return the new hash
+     */
+    private static long mix(long hash, long value) {
+        hash ^= value;
+        hash *= 0x100000001b3L;
+        return hash ^ hash >>> 29;
+    }
+
+    /**
+     * Returns the file of a hierarchy in a cache directory
+     *
+     * @param directory the cache directory
+     * @param key       the hash of the hierarchy
+     * @return the file
+     */
+    static Path file(Path directory, long key) {
+        return directory.resolve(String.format("bvh-%016x.bin", key));
+    }
+
+    /**
+     * Loads a hierarchy from the cache
+     *
+     * @param file  the file of the hierarchy
+     * @param key   the hash of the hierarchy
+     * @param items the bounded geometries the hierarchy was built of
+     * @return the hierarchy, or null if the file doesn't exist or doesn't fit the
+     *         geometries
+     */
+    static LinearBVH load(Path file, long key, List<Intersectable> items) {
+        if (!Files.isRegularFile(file))
+            return null;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            // a file of 2GB or more can't be mapped at once
+            if (channel.size() < HEADER_SIZE || channel.size() > Integer.MAX_VALUE)
+                return null;
+            // the mapping stays valid after the channel is closed
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+            if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION || buffer.getLong() != key)
+                return null;
+            int nodeCount = buffer.getInt();
+            int primitiveCount = buffer.getInt();
+            int depth = buffer.getInt();
+            if (nodeCount <= 0 || primitiveCount < 0 || depth <= 0 || channel.size() != HEADER_SIZE
+                    + (long) nodeCount * (6 * Double.BYTES + 2 * Integer.BYTES) + (long) primitiveCount * Integer.BYTES)
+                return null;
+
+            buffer.position(HEADER_SIZE);
+            DoubleBuffer bounds = buffer.asDoubleBuffer();
+            bounds.limit(nodeCount * 6);
+            buffer.position(HEADER_SIZE + nodeCount * 6 * Double.BYTES);
+            int[] nodes = new int[nodeCount * 2];
+            buffer.asIntBuffer().get(nodes);
+            buffer.position(buffer.position() + nodes.length * Integer.BYTES);
+            int[] indices = new int[primitiveCount];
+            buffer.asIntBuffer().get(indices);
+
+            Intersectable[] primitives = new Intersectable[primitiveCount];
+            for (int i = 0; i < primitiveCount; ++i) {
+                if (indices[i] < 0 || indices[i] >= items.size())
+                    return null;
+                primitives[i] = items.get(indices[i]);
+            }
+            for (int node = 0; node < nodeCount; ++node) {
+                int first = nodes[2 * node], count = nodes[2 * node + 1];
+                if (count == 0 ? first <= node + 1 || first >= nodeCount
+                        : count < 0 || first < 0 || first + count > primitiveCount)
+                    return null;
+            }
+            return new LinearBVH(bounds, nodes, primitives, depth);
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "BVH cache can't be read - rebuilding " + file, e);
+            return null;
+        }
+    }
+
+    /**
+     * Saves a hierarchy in the cache. Hierarchies whose primitives are not all in
+     * the list of the geometries (e.g. nested geometries which were inlined) are
+     * not saved. The cache only saves building time, so a hierarchy which can't be
+     * written is logged and left out of the cache
+     *
+     * @param file  the file of the hierarchy
+     * @param key   the hash of the hierarchy
+     * @param bvh   the hierarchy
+     * @param items the bounded geometries the hierarchy was built of
+     */
+    static void save(Path file, long key, LinearBVH bvh, List<Intersectable> items) {
+        Map<Intersectable, Integer> indices = new IdentityHashMap<>();
+        int index = 0;
+        for (var g : items)
+            indices.put(g, index++);
+        Intersectable[] primitives = bvh.primitives();
+        int[] primitiveIndices = new int[primitives.length];
+        for (int i = 0; i < primitives.length; ++i) {
+            Integer primitive = indices.get(primitives[i]);
+            if (primitive == null)
+                return;
+            primitiveIndices[i] = primitive;
+        }
+        double[] bounds = bvh.bounds();
+        int[] nodes = bvh.nodes();
+
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + bounds.length * Double.BYTES
+                + (nodes.length + primitiveIndices.length) * Integer.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(MAGIC).putInt(VERSION).putLong(key);
+        buffer.putInt(nodes.length / 2).putInt(primitives.length).putInt(bvh.depth()).putInt(0);
+        buffer.asDoubleBuffer().put(bounds);
+        buffer.position(buffer.position() + bounds.length * Double.BYTES);
+        buffer.asIntBuffer().put(nodes).put(primitiveIndices);
+        buffer.position(buffer.capacity());
+        buffer.flip();
+
+        try {
+            Files.createDirectories(file.toAbsolutePath().getParent());
+            // write a temporary file and move it, so a reader never sees half a file
+            Path temp = Files.createTempFile(file.toAbsolutePath().getParent(), "bvh", ".tmp");
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+                while (buffer.hasRemaining())
+                    channel.write(buffer);
+            }
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "BVH cache can't be written - ignored " + file, e);
+        }
+    }
+}
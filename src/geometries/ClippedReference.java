@@ -0,0 +1,62 @@
+package geometries;
+
+import java.util.List;
+import java.util.function.Consumer;
+
+import primitives.Point;
+import primitives.Ray;
+
+/**
+ * Reference to a part of a geometry which was split between several leaves of
+ * a hierarchy with spatial splits. The box of the reference bounds only the
+ * part of the geometry inside its cell, and the reference reports only the
+ * intersections inside its cell. The cells of the references of a geometry
+ * are half open - a cell contains its minimal planes but not its maximal ones
+ * - and they don't overlap, so every intersection is reported by exactly one
+ * reference
+ *
+ * @author Moy Georgi & Efrat Aharoni
+ */
+final class ClippedReference extends Intersectable {
+    /** The referenced geometry */
+    private final Intersectable geometry;
+    /** The cell of the reference - minX, maxX, minY, maxY, minZ, maxZ */
+    private final double[] cell;
+
+    /**
+     * Creates a reference to the part of a geometry inside a cell
+     *
+     * @param geometry the referenced geometry
+     * @param bounds   the bounds of the part of the geometry inside the cell
+     * @param cell     the cell - minX, maxX, minY, maxY, minZ, maxZ
+     */
+    ClippedReference(Intersectable geometry, Box bounds, double[] cell) {
+        this.geometry = geometry;
+        this.cell = cell;
+        box = bounds;
+    }
+
+    /**
+     * Checks whether a point is inside the cell
+     *
+     * @param p the point
+     * @return true if the point is inside the cell
+     */
+    private boolean inCell(Point p) {
+        double x = p.getX(), y = p.getY(), z = p.getZ();
+        return x >= cell[0] && x < cell[1] && y >= cell[2] && y < cell[3] && z >= cell[4] && z < cell[5];
+    }
+
+    @Override
+    protected List<GeoPoint> findGeoIntersectionsHelper(Ray ray, double maxDistance) {
+        return collectGeoIntersections(ray, maxDistance);
+    }
+
+    @Override
+    protected void findGeoIntersectionsHelper(Ray ray, double maxDistance, Consumer<GeoPoint> sink) {
+        geometry.findGeoIntersections(ray, maxDistance, gp -> {
+            if (inCell(gp.getPoint()))
+                sink.accept(gp);
+        });
+    }
+}
@@ -6,9 +6,10 @@
 package geometries;
 
 import primitives.*;
+import static primitives.Util.alignZero;
 import static primitives.Util.isZero;
 
-import java.util.List;
+import java.util.function.Consumer;
 
 public class Cylinder extends Tube {
     /**
@@ -26,6 +27,25 @@ public class Cylinder extends Tube {
     public Cylinder(Ray axisRay, double radius, double height) {
         super(axisRay, radius);
         this.height = height;
+        // if CBR improvement is on
+        if (cbr)
+            createBox();
+    }
+
+    /**
+     * Builds the box of the cylinder - the box of the two caps. A cap of an axis
+     * direction d reaches r * sqrt(1 - d_i^2) from its center along the i-th axis
+     */
+    private void createBox() {
+        Vector va = axisRay.getDirection();
+        Point bottom = axisRay.getHead();
+        Point top = axisRay.getPoint(height);
+        double ex = radius * Math.sqrt(Math.max(0, 1 - va.getX() * va.getX()));
+        double ey = radius * Math.sqrt(Math.max(0, 1 - va.getY() * va.getY()));
+        double ez = radius * Math.sqrt(Math.max(0, 1 - va.getZ() * va.getZ()));
+        box = new Box(Math.min(bottom.getX(), top.getX()) - ex, Math.max(bottom.getX(), top.getX()) + ex, //
+                Math.min(bottom.getY(), top.getY()) - ey, Math.max(bottom.getY(), top.getY()) + ey, //
+                Math.min(bottom.getZ(), top.getZ()) - ez, Math.max(bottom.getZ(), top.getZ()) + ez);
     }
 
     @Override
@@ -39,5 +59,47 @@ public class Cylinder extends Tube {
         if (isZero(t) || isZero(t - this.height)) return this.axisRay.getDirection();
         return super.getNormal(point);
     }
+
+    @Override
+    protected void findGeoIntersectionsHelper(Ray ray, double maxDistance, Consumer<GeoPoint> sink) {
+        findSideIntersections(ray, maxDistance, 0, height, sink);
+
+        // the caps - the points of the planes of the bases inside the radius
+        Vector va = axisRay.getDirection();
+        Vector v = ray.getDirection();
+        double vva = v.dotProduct(va);
+        // the ray is parallel to the bases
+        if (isZero(vva))
+            return;
+        Vec3 dp = new Vec3().subtract(ray.getHead(), axisRay.getHead());
+        double dpva = dp.dot(va);
+        findCapIntersection(ray, maxDistance, dp, alignZero(-dpva / vva), 0, sink);
+        findCapIntersection(ray, maxDistance, dp, alignZero((height - dpva) / vva), height, sink);
+    }
+
+    /**
+     * Passes the intersection of a ray with the plane of a base to a sink, if it
+     * is inside the base and closer than a maximal distance
+     *
+     * @param ray         the ray
+     * @param maxDistance the maximal distance from the ray head
+     * @param dp          the vector from the axis head to the ray head
+     * @param t           the distance along the ray to the plane of the base
+     * @param axial       the distance of the base along the axis
+     * @param sink        the sink of the intersections
+     */
+    private void findCapIntersection(Ray ray, double maxDistance, Vec3 dp, double t, double axial,
+                                     Consumer<GeoPoint> sink) {
+        if (t <= 0 || alignZero(t - maxDistance) >= 0)
+            return;
+        Vector va = axisRay.getDirection();
+        Vector v = ray.getDirection();
+        // the vector from the center of the base to the point
+        double x = dp.x + t * v.getX() - axial * va.getX();
+        double y = dp.y + t * v.getY() - axial * va.getY();
+        double z = dp.z + t * v.getZ() - axial * va.getZ();
+        if (alignZero(x * x + y * y + z * z - radiusSquared) < 0)
+            sink.accept(new GeoPoint(this, ray, t, va));
+    }
 }
 
@@ -1,15 +1,62 @@
 package geometries;
+import primitives.Double3;
 import primitives.Ray;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.Consumer;
+import java.util.function.Function;
 
 public class Geometries extends Intersectable{
    final private List<Intersectable> geometries = new LinkedList<Intersectable>();
     /** List of infinities geometries */
     private final List<Intersectable> infinitiesGeometries = new LinkedList<>();
 
+    /**
+     * Acceleration structure of the bounded geometries - the hierarchy compiled
+     * into flat arrays once the BVH is built, a grid or a kd-tree. It answers the
+     * queries of the bounded geometries
+     */
+    private Intersectable accelerator = null;
+
+    /** Number of bins per axis for the Surface Area Heuristic */
+    private static final int SAH_BINS = 16;
+    /** Amount of geometries from which a node of the BVH is built in parallel */
+    private static final int PARALLEL_THRESHOLD = 4096;
+    /** Amount of geometries in a chunk of a parallel reduction */
+    private static final int CHUNK_SIZE = 1024;
+    /** Maximal amount of geometries in a leaf of the BVH */
+    private int maxLeafSize = 4;
+    /** SAH cost of traversing a node of the BVH */
+    private double traversalCost = 1;
+    /** SAH cost of intersecting a single geometry */
+    private double intersectionCost = 1;
+
+    /** Whether the BVH is built by Morton codes instead of SAH */
+    private boolean mortonBuild = false;
+    /** Whether the BVH is collapsed into nodes of 4 children */
+    private boolean wideNodes = false;
+    /** Whether the BVH is built with spatial splits */
+    private boolean spatialSplits = false;
+    /** Overlap of children, as a fraction of the scene area, from which spatial splits are tried */
+    private double overlapBudget = 1e-5;
+    /** The compiled binary BVH */
+    private LinearBVH compiled = null;
+    /** The bounded geometries the BVH was built of */
+    private List<Intersectable> bvhItems = null;
+    /** Parent node of every node and geometry of the BVH */
+    private Map<Intersectable, Geometries> parents = null;
+    /** Cost of the BVH when it was built */
+    private double builtCost;
+    /** Ratio of the cost of a refitted BVH to its built cost from which it is rebuilt */
+    private double rebuildRatio = 1.5;
+
     public Geometries() {
     }
 
@@ -18,7 +65,7 @@ public class Geometries extends Intersectable{
     }
 
     public Geometries(List<Intersectable> geometries) {
-
+        add(geometries);
     }
 
 
@@ -36,6 +83,8 @@ public class Geometries extends Intersectable{
      * @param geometries the geomtries to add
      */
     public void add(List<Intersectable> geometries) {
+        // the compiled hierarchy doesn't contain the new geometries
+        restoreGeometries();
         // if CBR improvement is off
         if (!cbr) {
             this.geometries.addAll(geometries);
@@ -53,18 +102,7 @@ public class Geometries extends Intersectable{
                 if (infinitiesGeometries.isEmpty()) {
                     if (box == null)
                         box = new Box();
-                    if (geometry.box.minX < box.minX)
-                        box.minX = geometry.box.minX;
-                    if (geometry.box.minY < box.minY)
-                        box.minY = geometry.box.minY;
-                    if (geometry.box.minZ < box.minZ)
-                        box.minZ = geometry.box.minZ;
-                    if (geometry.box.maxX > box.maxX)
-                        box.maxX = geometry.box.maxX;
-                    if (geometry.box.maxY > box.maxY)
-                        box.maxY = geometry.box.maxY;
-                    if (geometry.box.maxZ > box.maxZ)
-                        box.maxZ = geometry.box.maxZ;
+                    box.extend(geometry.box);
                 }
             }
         }
@@ -88,124 +126,689 @@ public class Geometries extends Intersectable{
 //    }
 
 
-@Override
-public List<GeoPoint> findGeoIntersectionsHelper(Ray ray) {
-    List<GeoPoint> intersections = null;
+    @Override
+    public List<GeoPoint> findGeoIntersectionsHelper(Ray ray, double maxDistance) {
+        return collectGeoIntersections(ray, maxDistance);
+    }
 
-    for (Intersectable geo : geometries) {
-        // list of single geometry
-        List<GeoPoint> IntersectionsPerGeometry = geo.findGeoIntersections(ray);
-        if (IntersectionsPerGeometry != null) {
-            if (intersections == null)// for the first time
-                intersections = new LinkedList<>();
-            intersections.addAll(IntersectionsPerGeometry);
-        }
+    @Override
+    protected void findGeoIntersectionsHelper(Ray ray, double maxDistance, Consumer<GeoPoint> sink) {
+        for (Intersectable shape : accelerator == null ? geometries : List.<Intersectable>of(accelerator))
+            shape.findGeoIntersections(ray, maxDistance, sink);
+        for (Intersectable geo : infinitiesGeometries)
+            geo.findGeoIntersections(ray, maxDistance, sink);
     }
-    for (Intersectable geo : infinitiesGeometries) {
-        List<GeoPoint> IntersectionsPerGeometry = geo.findGeoIntersections(ray);// list of single geometry
-        if (IntersectionsPerGeometry != null) {
-            if (intersections == null)// for the first time
-                intersections = new LinkedList<>();
-            intersections.addAll(IntersectionsPerGeometry);
+
+    @Override
+    protected GeoPoint findClosestIntersectionHelper(Ray ray, double maxDistance) {
+        GeoPoint closest = null;
+        if (accelerator != null)
+            closest = accelerator.findClosestIntersection(ray, maxDistance);
+        else {
+            // visit the geometries from the nearest box to the farthest one
+            int size = geometries.size();
+            Intersectable[] ordered = new Intersectable[size];
+            double[] entries = new double[size];
+            int count = 0;
+            for (Intersectable geo : geometries) {
+                double entry = geo.box == null ? 0 : geo.box.entry(ray, maxDistance);
+                if (entry == Double.POSITIVE_INFINITY)
+                    continue;
+                int i = count++;
+                for (; i > 0 && entries[i - 1] > entry; --i) {
+                    ordered[i] = ordered[i - 1];
+                    entries[i] = entries[i - 1];
+                }
+                ordered[i] = geo;
+                entries[i] = entry;
+            }
+            for (int i = 0; i < count && entries[i] < maxDistance; ++i) {
+                GeoPoint gp = ordered[i].findClosestIntersectionHelper(ray, maxDistance);
+                if (gp != null) {
+                    closest = gp;
+                    maxDistance = gp.getDistance();
+                }
+            }
         }
+        if (closest != null)
+            maxDistance = closest.getDistance();
+
+        for (Intersectable geo : infinitiesGeometries) {
+            GeoPoint gp = geo.findClosestIntersection(ray, maxDistance);
+            if (gp != null) {
+                closest = gp;
+                maxDistance = gp.getDistance();
+            }
+        }
+        return closest;
     }
-    return intersections;
-}
 
     @Override
-    public List<GeoPoint> findGeoIntersectionsHelper(Ray ray, double maxDistance) {
-        LinkedList<GeoPoint> intersections = null;
-        for (Intersectable shape : geometries) {
-            List<GeoPoint> shapeIntersections = shape.findGeoIntersectionsHelper(ray, maxDistance);
-            if (shapeIntersections != null) {
-                if (intersections == null)
-                    intersections = new LinkedList<>();
-                intersections.addAll(shapeIntersections);
+    public GeoPoint[] findClosestIntersections(Ray[] rays) {
+        if (accelerator == null)
+            return super.findClosestIntersections(rays);
+        GeoPoint[] closest = accelerator.findClosestIntersections(rays);
+        if (!infinitiesGeometries.isEmpty())
+            for (int i = 0; i < rays.length; ++i) {
+                double maxDistance = closest[i] == null ? Double.POSITIVE_INFINITY : closest[i].getDistance();
+                for (Intersectable geo : infinitiesGeometries) {
+                    GeoPoint gp = geo.findClosestIntersection(rays[i], maxDistance);
+                    if (gp != null) {
+                        closest[i] = gp;
+                        maxDistance = gp.getDistance();
+                    }
+                }
             }
+        return closest;
+    }
+
+    @Override
+    protected Double3 findTransparencyHelper(Ray ray, double maxDistance, double minK) {
+        Double3 ktr = Double3.ONE;
+        for (Intersectable geo : accelerator == null ? geometries : List.<Intersectable>of(accelerator)) {
+            Double3 kt = geo.findTransparency(ray, maxDistance, minK);
+            if (kt == Double3.ONE)
+                continue;
+            ktr = ktr.product(kt);
+            if (ktr.lowerThan(minK))
+                return Double3.ZERO;
         }
-        return intersections;
+        for (Intersectable geo : infinitiesGeometries) {
+            Double3 kt = geo.findTransparency(ray, maxDistance, minK);
+            if (kt == Double3.ONE)
+                continue;
+            ktr = ktr.product(kt);
+            if (ktr.lowerThan(minK))
+                return Double3.ZERO;
+        }
+        return ktr;
     }
 
     /**
-     * puts the geometries in the right boxes and creates a fitting tree
+     * Returns the geometries of this node of the hierarchy
+     *
+     * @return the bounded geometries (all the geometries if CBR is off)
+     */
+    List<Intersectable> children() {
+        return geometries;
+    }
+
+    /**
+     * Returns the acceleration structure of the bounded geometries
+     *
+     * @return the structure, null if there is none
+     */
+    Intersectable accelerator() {
+        return accelerator;
+    }
+
+    /**
+     * Sets the parameters of the Surface Area Heuristic used by {@link #createBVH()}
+     *
+     * @param maxLeafSize      maximal amount of geometries in a leaf of the tree
+     * @param traversalCost    the cost of traversing a node of the tree
+     * @param intersectionCost the cost of intersecting a single geometry
+     * @return the Geometries object itself (for method chaining)
+     * @throws IllegalArgumentException if the leaf size or one of the costs is not
+     *                                  positive
+     */
+    public Geometries setBVHParameters(int maxLeafSize, double traversalCost, double intersectionCost) {
+        if (maxLeafSize < 1)
+            throw new IllegalArgumentException("BVH leaf size must be positive");
+        if (traversalCost <= 0 || intersectionCost <= 0)
+            throw new IllegalArgumentException("BVH costs must be positive");
+        this.maxLeafSize = maxLeafSize;
+        this.traversalCost = traversalCost;
+        this.intersectionCost = intersectionCost;
+        return this;
+    }
+
+    /**
+     * puts the geometries in the right boxes and creates a fitting tree. The tree
+     * is built by the binned Surface Area Heuristic - every node is split by the
+     * plane that minimizes the expected cost of a ray passing through the node.
+     * The sub-trees of large scenes are built in parallel on the ForkJoin pool
+     * of the calling task, or on the common pool
      */
     public void createBVH() {
+        spatialSplits = false;
+        mortonBuild = false;
+        wideNodes = false;
+        buildHierarchy();
+    }
+
+    /**
+     * puts the geometries in the right boxes and creates a fitting tree like
+     * {@link #createBVH()}, and collapses it into a tree of nodes with 4 children,
+     * whose bounds are tested together
+     */
+    public void createQBVH() {
+        spatialSplits = false;
+        mortonBuild = false;
+        wideNodes = true;
+        buildHierarchy();
+    }
+
+    /**
+     * puts the geometries in the right boxes and creates a fitting tree fast. The
+     * tree is built by sorting the geometries by the Morton codes of their
+     * centers, it is built much faster than by {@link #createBVH()} but it is
+     * worse, so it fits previews and interactive renders
+     */
+    public void createLBVH() {
+        spatialSplits = false;
+        mortonBuild = true;
+        wideNodes = false;
+        buildHierarchy();
+    }
+
+    /**
+     * puts the geometries in the right boxes and creates a fitting tree with
+     * spatial splits. Where the children of a node would overlap by more than the
+     * overlap budget (e.g. around long thin triangles and large polygons), the
+     * node may be split by a plane instead, and a geometry crossing the plane is
+     * referenced from both children, each bounding only its part of the
+     * geometry. A refit of such a tree rebuilds it
+     */
+    public void createSBVH() {
+        spatialSplits = true;
+        mortonBuild = false;
+        wideNodes = false;
+        buildHierarchy();
+    }
+
+    /**
+     * Sets the overlap budget of {@link #createSBVH()} - spatial splits are tried
+     * only in nodes whose children would overlap by more than this fraction of
+     * the surface area of the scene
+     *
+     * @param overlapBudget the overlap budget
+     * @return the Geometries object itself (for method chaining)
+     * @throws IllegalArgumentException if the budget is negative
+     */
+    public Geometries setSBVHOverlapBudget(double overlapBudget) {
+        if (overlapBudget < 0)
+            throw new IllegalArgumentException("SBVH overlap budget must not be negative");
+        this.overlapBudget = overlapBudget;
+        return this;
+    }
+
+    /**
+     * puts the geometries in the right boxes and creates a tree by the chosen
+     * builder, and compiles it into flat arrays
+     */
+    private void buildHierarchy() {
         if (!cbr)
             return;
 
-        if (geometries.size() <= 4)
+        // a hierarchy that was already built is rebuilt of its geometries
+        restoreGeometries();
+        if (geometries.size() <= maxLeafSize)
             return;
 
-        if (box == null) {
-            var finites = new Geometries(geometries);
-            geometries.clear();
-            geometries.add(finites);
+        var finites = takeBounded();
+        if (finites.isEmpty())
+            return;
+        Intersectable root = spatialSplits //
+                ? SBVHBuilder.build(finites, maxLeafSize, traversalCost, intersectionCost, overlapBudget) //
+                : mortonBuild //
+                        ? LBVHBuilder.build(finites, maxLeafSize) //
+                        : new SAHBuild(finites).invoke();
+        geometries.add(root);
+        compiled = new LinearBVH(geometries);
+        accelerator = wideNodes ? new WideBVH(compiled) : compiled;
+        bvhItems = finites;
+        builtCost = compiled.cost();
+        parents = new IdentityHashMap<>();
+        parents.put(root, this);
+        mapParents(root);
+    }
+
+    /**
+     * Takes the bounded geometries out of the list, and moves the geometries
+     * without a box to the infinities list
+     *
+     * @return the bounded geometries
+     */
+    private List<Intersectable> takeBounded() {
+        var finites = new ArrayList<Intersectable>();
+        for (var g : geometries)
+            // geometries added before CBR was set have no box
+            (g.box == null ? infinitiesGeometries : finites).add(g);
+        geometries.clear();
+        return finites;
+    }
+
+    /**
+     * puts the geometries in the right boxes and creates a fitting tree like
+     * {@link #createBVH()}, through a cache on the disk. A tree built of the same
+     * geometries with the same parameters is loaded from the cache instead of
+     * being built, otherwise the built tree is saved in the cache. A tree which
+     * can't be saved is only logged
+     *
+     * @param cacheDirectory the directory of the cache
+     */
+    public void createBVH(Path cacheDirectory) {
+        spatialSplits = false;
+        mortonBuild = false;
+        wideNodes = false;
+        if (!cbr)
+            return;
+        restoreGeometries();
+        if (geometries.size() <= maxLeafSize)
+            return;
+
+        var finites = takeBounded();
+        geometries.addAll(finites);
+        if (finites.isEmpty())
+            return;
+        long key = BVHCache.key(finites, maxLeafSize, traversalCost, intersectionCost);
+        Path file = BVHCache.file(cacheDirectory, key);
+        LinearBVH cached = BVHCache.load(file, key, finites);
+        if (cached == null) {
+            buildHierarchy();
+            BVHCache.save(file, key, compiled, bvhItems);
+            return;
+        }
+        // the loaded tree has no nodes objects - the geometries stay a flat list
+        compiled = cached;
+        accelerator = cached;
+        bvhItems = finites;
+        builtCost = cached.cost();
+        parents = null;
+    }
+
+    /**
+     * Maps the children of a node of the BVH to the node, and so the descendants
+     * of the children
+     *
+     * @param node the node
+     */
+    private void mapParents(Intersectable node) {
+        if (node instanceof Geometries g)
+            for (var child : g.geometries) {
+                parents.put(child, g);
+                mapParents(child);
+            }
+    }
+
+    /**
+     * Sets the ratio of the cost of a refitted BVH to its cost when it was built,
+     * from which {@link #refit(Intersectable...)} rebuilds the BVH
+     *
+     * @param rebuildRatio the ratio
+     * @return the Geometries object itself (for method chaining)
+     * @throws IllegalArgumentException if the ratio is less than 1
+     */
+    public Geometries setRebuildRatio(double rebuildRatio) {
+        if (rebuildRatio < 1)
+            throw new IllegalArgumentException("BVH rebuild ratio must be at least 1");
+        this.rebuildRatio = rebuildRatio;
+        return this;
+    }
+
+    /**
+     * Updates the boxes after geometries have moved. The boxes of the BVH are
+     * recalculated from the moved geometries up to the root, and the whole BVH is
+     * rebuilt once its nodes overlap so much that its cost has grown by the
+     * rebuild ratio. A BVH of nodes with 4 children is collapsed again from the
+     * refitted binary BVH, and a BVH with spatial splits, a grid or a kd-tree is
+     * rebuilt
+     *
+     * @param moved the moved geometries
+     * @throws IllegalArgumentException if a geometry is not in the BVH
+     */
+    public void refit(Intersectable... moved) {
+        if (!cbr)
+            return;
+        // the clipped references of a split geometry can't be refitted
+        if (spatialSplits && compiled != null) {
+            buildHierarchy();
+            refitBox();
+            return;
+        }
+        if (parents == null) {
+            // a tree loaded from the cache has no nodes objects to map the geometries
+            if (compiled != null)
+                for (var g : moved)
+                    if (!compiled.contains(g))
+                        throw new IllegalArgumentException("The geometry is not in the BVH");
+            refitBox();
+        } else
+            for (var g : moved) {
+                Geometries node = parents.get(g);
+                if (node == null)
+                    throw new IllegalArgumentException("The geometry is not in the BVH");
+                for (; node != null; node = parents.get(node))
+                    node.refitBox();
+            }
+
+        if (compiled != null) {
+            compiled.refit(moved);
+            if (compiled.cost() > builtCost * rebuildRatio)
+                buildHierarchy();
+            else if (wideNodes)
+                accelerator = new WideBVH(compiled);
+        } else if (accelerator instanceof Grid)
+            createGrid();
+        else if (accelerator instanceof KdTree)
+            createKdTree();
+    }
+
+    /**
+     * Recalculates the box from the boxes of the geometries
+     */
+    private void refitBox() {
+        if (!infinitiesGeometries.isEmpty() || geometries.isEmpty())
+            return;
+        Box bounds = new Box();
+        for (var g : geometries) {
+            if (g.box == null)
+                return;
+            bounds.extend(g.box);
+        }
+        box = bounds;
+    }
+
+    /**
+     * Puts the bounded geometries in a uniform grid instead of a hierarchy, the
+     * resolution of the grid is chosen by the amount of the geometries and their
+     * extent
+     */
+    public void createGrid() {
+        if (!cbr)
+            return;
+        restoreGeometries();
+        if (geometries.isEmpty())
+            return;
+        accelerator = new Grid(geometries);
+    }
+
+    /**
+     * Puts the bounded geometries in a kd-tree instead of a hierarchy, the space
+     * is split by the planes chosen by the Surface Area Heuristic
+     */
+    public void createKdTree() {
+        if (!cbr)
             return;
+        restoreGeometries();
+        if (geometries.isEmpty())
+            return;
+        accelerator = new KdTree(geometries);
+    }
+
+    /**
+     * Drops the acceleration structure and puts the bounded geometries the
+     * hierarchy was built of back into the flat list instead of its root, so the
+     * next structure is built of all of them. The geometries without a box stay
+     * in the infinities list, which is searched besides any structure
+     */
+    private void restoreGeometries() {
+        accelerator = null;
+        compiled = null;
+        parents = null;
+        if (bvhItems != null) {
+            geometries.clear();
+            geometries.addAll(bvhItems);
+            bvhItems = null;
         }
+    }
+
+    /**
+     * Task building a sub-tree of the hierarchy for a list of bounded geometries.
+     * The sub-trees of large nodes are built in parallel, and so are the
+     * reductions over their geometries. The results of the parallel parts are
+     * combined in the order of the geometries, so the tree doesn't depend on the
+     * amount of threads
+     */
+    private final class SAHBuild extends RecursiveTask<Intersectable> {
+        /** Serialization version of the task (the task is never serialized) */
+        private static final long serialVersionUID = 1L;
+
+        /** The geometries of the sub-tree */
+        private final List<Intersectable> items;
 
-        double x = box.maxX - box.minX;
-        double y = box.maxY - box.minY;
-        double z = box.maxZ - box.minZ;
-        // the axis we are referring to is the longest
-        final char axis = y > x && y > z ? 'y' : z > x && z > y ? 'z' : 'x';
-
-        var left = new Geometries();
-        var middle = new Geometries();
-        var right = new Geometries();
-        double midX = (box.maxX + box.minX) / 2;
-        double midY = (box.maxY + box.minY) / 2;
-        double midZ = (box.maxZ + box.minZ) / 2;
-        switch (axis) {
-            case 'x':
-                for (var g : geometries) {
-                    if (g.box.minX > midX)
-                        right.add(g);
-                    else if (g.box.maxX < midX)
-                        left.add(g);
-                    else
-                        middle.add(g);
+        /**
+         * Creates a task building a sub-tree
+         *
+         * @param items the geometries of the sub-tree
+         */
+        SAHBuild(List<Intersectable> items) {
+            this.items = items;
+        }
+
+        /**
+         * Builds the sub-tree
+         *
+         * @return the single geometry if there is only one, otherwise the root node
+         *         of the sub-tree
+         */
+        @Override
+        protected Intersectable compute() {
+            int n = items.size();
+            if (n == 1)
+                return items.get(0);
+
+            // bounds of the boxes and of their centers - the bins are spread over the
+            // centers
+            Box bounds = new Box();
+            double[] cMin = { Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY };
+            double[] cMax = { Double.NEGATIVE_INFINITY, Double.NEGATIVE_INFINITY, Double.NEGATIVE_INFINITY };
+            for (var part : reduce(items, Geometries::centerBounds)) {
+                bounds.extend(part.bounds);
+                for (int axis = 0; axis < 3; ++axis) {
+                    cMin[axis] = Math.min(cMin[axis], part.cMin[axis]);
+                    cMax[axis] = Math.max(cMax[axis], part.cMax[axis]);
+                }
+            }
+
+            // fill the bins of all the axes
+            Bins bins = new Bins(cMin, cMax);
+            for (var part : reduce(items, chunk -> new Bins(cMin, cMax).fill(chunk)))
+                bins.merge(part);
+
+            double parentArea = bounds.surfaceArea();
+            double bestCost = Double.POSITIVE_INFINITY;
+            int bestAxis = -1;
+            int bestBin = 0;
+            for (int axis = 0; axis < 3; ++axis) {
+                if (cMax[axis] - cMin[axis] <= 0)
+                    continue;
+                int[] counts = bins.counts[axis];
+                // sweep from the right to get the areas of all the right sides
+                double[] rightAreas = new double[SAH_BINS];
+                int[] rightCounts = new int[SAH_BINS];
+                Box right = new Box();
+                int count = 0;
+                for (int i = SAH_BINS - 1; i > 0; --i) {
+                    right.extend(bins.boxes[axis][i]);
+                    count += counts[i];
+                    rightAreas[i] = right.surfaceArea();
+                    rightCounts[i] = count;
                 }
-                break;
-            case 'y':
-                for (var g : geometries) {
-                    if (g.box.minY > midY)
-                        right.add(g);
-                    else if (g.box.maxY < midY)
-                        left.add(g);
-                    else
-                        middle.add(g);
+                // sweep from the left and evaluate the cost of every split plane
+                Box left = new Box();
+                count = 0;
+                for (int i = 0; i < SAH_BINS - 1; ++i) {
+                    left.extend(bins.boxes[axis][i]);
+                    count += counts[i];
+                    if (count == 0 || rightCounts[i + 1] == 0)
+                        continue;
+                    double cost = traversalCost + intersectionCost
+                            * (left.surfaceArea() * count + rightAreas[i + 1] * rightCounts[i + 1]) / parentArea;
+                    if (cost < bestCost) {
+                        bestCost = cost;
+                        bestAxis = axis;
+                        bestBin = i;
+                    }
                 }
-                break;
-            case 'z':
-                for (var g : geometries) {
-                    if (g.box.minZ > midZ)
-                        right.add(g);
-                    else if (g.box.maxZ < midZ)
-                        left.add(g);
-                    else
-                        middle.add(g);
+            }
+
+            // a leaf is cheaper than any split
+            if (n <= maxLeafSize && (bestAxis < 0 || bestCost >= intersectionCost * n))
+                return new Geometries(items);
+
+            List<Intersectable> left = new ArrayList<>();
+            List<Intersectable> right = new ArrayList<>();
+            if (bestAxis < 0) {
+                // all the centers are at the same point - split the list in half
+                left.addAll(items.subList(0, n / 2));
+                right.addAll(items.subList(n / 2, n));
+            } else {
+                int axis = bestAxis, split = bestBin;
+                double extent = cMax[axis] - cMin[axis];
+                for (var part : reduce(items, chunk -> {
+                    List<List<Intersectable>> sides = List.of(new ArrayList<>(), new ArrayList<>());
+                    for (var g : chunk)
+                        sides.get(binOf(g.box.center(axis), cMin[axis], extent) <= split ? 0 : 1).add(g);
+                    return sides;
+                })) {
+                    left.addAll(part.get(0));
+                    right.addAll(part.get(1));
                 }
-                break;
+            }
+
+            if (n < PARALLEL_THRESHOLD)
+                return new Geometries(new SAHBuild(left).compute(), new SAHBuild(right).compute());
+            SAHBuild leftTask = new SAHBuild(left);
+            leftTask.fork();
+            Intersectable rightNode = new SAHBuild(right).compute();
+            return new Geometries(leftTask.join(), rightNode);
         }
+    }
 
-        geometries.clear();
-        if (left.geometries.size() <= 2)
-            geometries.addAll(left.geometries);
-        else {
-            left.createBVH();
-            geometries.add(left);
+    /**
+     * Bounds of the boxes of some geometries and of their centers
+     */
+    private static final class CenterBounds {
+        /** Bounds of the boxes */
+        private final Box bounds = new Box();
+        /** Minimal centers along every axis */
+        private final double[] cMin = { Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY,
+                Double.POSITIVE_INFINITY };
+        /** Maximal centers along every axis */
+        private final double[] cMax = { Double.NEGATIVE_INFINITY, Double.NEGATIVE_INFINITY,
+                Double.NEGATIVE_INFINITY };
+    }
+
+    /**
+     * Calculates the bounds of the boxes of geometries and of their centers
+     *
+     * @param items the geometries
+     * @return the bounds
+     */
+    private static CenterBounds centerBounds(List<Intersectable> items) {
+        CenterBounds result = new CenterBounds();
+        for (var g : items) {
+            result.bounds.extend(g.box);
+            for (int axis = 0; axis < 3; ++axis) {
+                double c = g.box.center(axis);
+                if (c < result.cMin[axis])
+                    result.cMin[axis] = c;
+                if (c > result.cMax[axis])
+                    result.cMax[axis] = c;
+            }
         }
+        return result;
+    }
+
+    /**
+     * The SAH bins of all the axes - the amount of geometries whose center falls
+     * in every bin and the bounds of their boxes
+     */
+    private static final class Bins {
+        /** Minimal centers along every axis */
+        private final double[] cMin;
+        /** Maximal centers along every axis */
+        private final double[] cMax;
+        /** Amount of geometries in every bin */
+        private final int[][] counts = new int[3][SAH_BINS];
+        /** Bounds of the geometries in every bin */
+        private final Box[][] boxes = new Box[3][SAH_BINS];
 
-        if (middle.geometries.size() <= 2)
-            geometries.addAll(middle.geometries);
-        else
-            geometries.add(middle);
+        /**
+         * Creates empty bins spread over the bounds of the centers
+         *
+         * @param cMin minimal centers along every axis
+         * @param cMax maximal centers along every axis
+         */
+        Bins(double[] cMin, double[] cMax) {
+            this.cMin = cMin;
+            this.cMax = cMax;
+            for (int axis = 0; axis < 3; ++axis)
+                for (int i = 0; i < SAH_BINS; ++i)
+                    boxes[axis][i] = new Box();
+        }
 
-        if (right.geometries.size() <= 2)
-            geometries.addAll(right.geometries);
-        else {
-            right.createBVH();
-            geometries.add(right);
+        /**
+         * Puts geometries in the bins
+         *
+         * @param items the geometries
+         * @return the bins themselves
+         */
+        Bins fill(List<Intersectable> items) {
+            for (int axis = 0; axis < 3; ++axis) {
+                double extent = cMax[axis] - cMin[axis];
+                if (extent <= 0)
+                    continue;
+                for (var g : items) {
+                    int bin = binOf(g.box.center(axis), cMin[axis], extent);
+                    ++counts[axis][bin];
+                    boxes[axis][bin].extend(g.box);
+                }
+            }
+            return this;
+        }
+
+        /**
+         * Adds the content of other bins to these bins
+         *
+         * @param other the other bins
+         */
+        void merge(Bins other) {
+            for (int axis = 0; axis < 3; ++axis)
+                for (int i = 0; i < SAH_BINS; ++i) {
+                    counts[axis][i] += other.counts[axis][i];
+                    boxes[axis][i].extend(other.boxes[axis][i]);
+                }
         }
     }
+
+    /**
+     * Runs a calculation over consecutive chunks of geometries, in parallel if
+     * there are enough geometries
+     *
+     * @param <T>   the type of the result of a chunk
+     * @param items the geometries
+     * @param work  the calculation of a chunk
+     * @return the results of the chunks, in the order of the chunks
+     */
+    private static <T> List<T> reduce(List<Intersectable> items, Function<List<Intersectable>, T> work) {
+        int n = items.size();
+        if (n < PARALLEL_THRESHOLD)
+            return List.of(work.apply(items));
+        List<ForkJoinTask<T>> tasks = new ArrayList<>();
+        for (int start = 0; start < n; start += CHUNK_SIZE) {
+            List<Intersectable> chunk = items.subList(start, Math.min(start + CHUNK_SIZE, n));
+            tasks.add(ForkJoinTask.adapt(() -> work.apply(chunk)));
+        }
+        ForkJoinTask.invokeAll(tasks);
+        List<T> results = new ArrayList<>(tasks.size());
+        for (var task : tasks)
+            results.add(task.join());
+        return results;
+    }
+
+    /**
+     * Finds the SAH bin of a box center
+     *
+     * @param center the center of the box along the split axis
+     * @param min    the minimal center along the axis
+     * @param extent the extent of the centers along the axis
+     * @return the bin index
+     */
+    private static int binOf(double center, double min, double extent) {
+        int bin = (int) (SAH_BINS * (center - min) / extent);
+        return bin < SAH_BINS ? bin : SAH_BINS - 1;
+    }
 }
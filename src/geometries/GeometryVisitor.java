@@ -0,0 +1,16 @@
+package geometries;
+
+/**
+ * Visitor of the geometries an acceleration structure finds along a ray
+ *
+ * @author Moy Georgi & Efrat Aharoni
+ */
+interface GeometryVisitor {
+    /**
+     * Visits a geometry the ray may intersect
+     *
+     * @param geometry the geometry
+     * @return the distance beyond which the traversal may stop
+     */
+    double visit(Intersectable geometry);
+}
@@ -0,0 +1,343 @@
+package geometries;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+import primitives.Double3;
+import primitives.Point;
+import primitives.Ray;
+import primitives.Vector;
+
+/**
+ * Uniform grid acceleration structure - a container of geometries that splits
+ * their common bounding box into equal cells. Every cell keeps the geometries
+ * whose boxes overlap it, and a ray visits only the cells it passes through, in
+ * their order along the ray (3D-DDA). It fits scenes of many geometries of
+ * similar sizes better than a hierarchy.<br/>
+ * The resolution of the grid is chosen by the amount of the geometries and the
+ * extent of the scene. Geometries without a box are tested by every ray.
+ *
+ * @author Moy Georgi & Efrat Aharoni
+ */
+public class Grid extends Intersectable {
+    /** Average amount of geometries per cell the resolution aims at */
+    private static final double DENSITY = 3;
+    /** Maximal amount of cells along an axis */
+    private static final int MAX_RESOLUTION = 256;
+
+    /** The bounded geometries of the grid */
+    private final Intersectable[] items;
+    /** The geometries without a box */
+    private final Intersectable[] unbounded;
+    /** Bounds of the grid - minimum of every axis */
+    private final double[] min = new double[3];
+    /** Bounds of the grid - maximum of every axis */
+    private final double[] max = new double[3];
+    /** Size of a cell along every axis */
+    private final double[] cellSize = new double[3];
+    /** Amount of cells along every axis */
+    private final int[] resolution = new int[3];
+    /**
+     * Start of the geometries of every cell in {@link #cellItems}, the geometries
+     * of cell i are between cellStart[i] and cellStart[i+1]
+     */
+    private final int[] cellStart;
+    /** Indices of the geometries of all the cells, ordered by the cells */
+    private final int[] cellItems;
+    /**
+     * Per thread stamps of the geometries which were already tested by the current
+     * ray, so a geometry overlapping several cells is tested once
+     */
+    private final ThreadLocal<Mailbox> mailbox;
+
+    /**
+     * Builds a grid for geometries
+     *
+     * @param geometries the geometries of the grid
+     */
+    public Grid(Intersectable... geometries) {
+        this(List.of(geometries));
+    }
+
+    /**
+     * Builds a grid for a list of geometries
+     *
+     * @param geometries the geometries of the grid
+     */
+    public Grid(List<Intersectable> geometries) {
+        List<Intersectable> bounded = new ArrayList<>();
+        List<Intersectable> infinite = new ArrayList<>();
+        Box bounds = new Box();
+        for (var g : geometries)
+            if (g.box == null)
+                infinite.add(g);
+            else {
+                bounded.add(g);
+                bounds.extend(g.box);
+            }
+        items = bounded.toArray(new Intersectable[0]);
+        unbounded = infinite.toArray(new Intersectable[0]);
+        int itemsCount = items.length;
+        mailbox = ThreadLocal.withInitial(() -> new Mailbox(itemsCount));
+        if (cbr && unbounded.length == 0 && itemsCount > 0)
+            box = bounds;
+
+        if (itemsCount == 0) {
+            cellStart = new int[] { 0, 0 };
+            cellItems = new int[0];
+            resolution[0] = resolution[1] = resolution[2] = 1;
+            cellSize[0] = cellSize[1] = cellSize[2] = 1;
+            return;
+        }
+
+        // choose the resolution - cubic cells with DENSITY geometries in a cell
+        double[] extent = { bounds.maxX - bounds.minX, bounds.maxY - bounds.minY, bounds.maxZ - bounds.minZ };
+        min[0] = bounds.minX;
+        min[1] = bounds.minY;
+        min[2] = bounds.minZ;
+        double maxExtent = Math.max(extent[0], Math.max(extent[1], extent[2]));
+        // a flat scene must not get a zero volume
+        double minExtent = maxExtent > 0 ? maxExtent / MAX_RESOLUTION : 1;
+        double volume = Math.max(extent[0], minExtent) * Math.max(extent[1], minExtent)
+                * Math.max(extent[2], minExtent);
+        double cellsPerUnit = Math.cbrt(DENSITY * itemsCount / volume);
+        for (int axis = 0; axis < 3; ++axis) {
+            int res = (int) Math.ceil(extent[axis] * cellsPerUnit);
+            resolution[axis] = Math.max(1, Math.min(MAX_RESOLUTION, res));
+            cellSize[axis] = extent[axis] > 0 ? extent[axis] / resolution[axis] : 1;
+            max[axis] = min[axis] + cellSize[axis] * resolution[axis];
+        }
+
+        // count the geometries of every cell, then place them
+        int cells = resolution[0] * resolution[1] * resolution[2];
+        cellStart = new int[cells + 1];
+        int[][] ranges = new int[itemsCount][];
+        for (int i = 0; i < itemsCount; ++i) {
+            Box b = items[i].box;
+            int[] range = { cellOf(0, b.minX), cellOf(0, b.maxX), cellOf(1, b.minY), cellOf(1, b.maxY), //
+                    cellOf(2, b.minZ), cellOf(2, b.maxZ) };
+            ranges[i] = range;
+            for (int z = range[4]; z <= range[5]; ++z)
+                for (int y = range[2]; y <= range[3]; ++y)
+                    for (int x = range[0]; x <= range[1]; ++x)
+                        ++cellStart[index(x, y, z) + 1];
+        }
+        for (int c = 0; c < cells; ++c)
+            cellStart[c + 1] += cellStart[c];
+        cellItems = new int[cellStart[cells]];
+        int[] fill = new int[cells];
+        for (int i = 0; i < itemsCount; ++i) {
+            int[] range = ranges[i];
+            for (int z = range[4]; z <= range[5]; ++z)
+                for (int y = range[2]; y <= range[3]; ++y)
+                    for (int x = range[0]; x <= range[1]; ++x) {
+                        int c = index(x, y, z);
+                        cellItems[cellStart[c] + fill[c]++] = i;
+                    }
+        }
+    }
+
+    /**
+     * Finds the cell of a coordinate along an axis
+     *
+     * @param axis       0 for x, 1 for y, 2 for z
+     * @param coordinate the coordinate
+     * @return the cell index along the axis, clamped into the grid
+     */
+    private int cellOf(int axis, double coordinate) {
+        int cell = (int) Math.floor((coordinate - min[axis]) / cellSize[axis]);
+        return cell < 0 ? 0 : cell >= resolution[axis] ? resolution[axis] - 1 : cell;
+    }
+
+    /**
+     * Calculates the index of a cell in the cells arrays
+     *
+     * @param x cell index along x
+     * @param y cell index along y
+     * @param z cell index along z
+     * @return the index of the cell
+     */
+    private int index(int x, int y, int z) {
+        return (z * resolution[1] + y) * resolution[0] + x;
+    }
+
+    /**
+     * Calculates the distance along the ray where it exits the grid bounds, by the
+     * far planes of the slab test of {@link Box#entry(Ray, double, double)} - the
+     * sign bits of the ray pick the far plane of every slab and the inverse
+     * direction gives the distance. A ray parallel to a slab gets an infinite
+     * distance, or NaN when its head is on the plane, which the comparison skips
+     *
+     * @param ray         the ray
+     * @param maxDistance the maximal distance along the ray
+     * @return the exit distance, limited by the maximal distance
+     */
+    private double exit(Ray ray, double maxDistance) {
+        Point head = ray.getHead();
+        double tExit = maxDistance;
+        double t;
+        t = ((ray.signX == 0 ? max[0] : min[0]) - head.getX()) * ray.inverseX;
+        tExit = t < tExit ? t : tExit;
+        t = ((ray.signY == 0 ? max[1] : min[1]) - head.getY()) * ray.inverseY;
+        tExit = t < tExit ? t : tExit;
+        t = ((ray.signZ == 0 ? max[2] : min[2]) - head.getZ()) * ray.inverseZ;
+        return t < tExit ? t : tExit;
+    }
+
+    /**
+     * Sets the walk of a ray along an axis - the cell where the ray enters the
+     * grid, the step to the next cell, and the distances to the next cell
+     * boundary and between the boundaries. The inverse direction gives the
+     * distances, so a ray parallel to the axis gets infinite distances (NaN when
+     * its head is on a boundary is taken as infinite too) and never steps along it
+     *
+     * @param axis      0 for x, 1 for y, 2 for z
+     * @param origin    the coordinate of the ray head
+     * @param direction the coordinate of the ray direction
+     * @param inverse   the inverse of the coordinate of the ray direction
+     * @param sign      the sign bit of the ray direction
+     * @param tEnter    the distance where the ray enters the grid
+     * @param cell      gets the cell of the ray along the axes
+     * @param step      gets the step to the next cell along the axes
+     * @param tNext     gets the distance to the next cell boundary along the axes
+     * @param tDelta    gets the distance between the cell boundaries along the
+     *                  axes
+     */
+    private void start(int axis, double origin, double direction, double inverse, int sign, double tEnter,
+                       int[] cell, int[] step, double[] tNext, double[] tDelta) {
+        cell[axis] = cellOf(axis, origin + direction * tEnter);
+        step[axis] = 1 - 2 * sign;
+        double t = (min[axis] + (cell[axis] + 1 - sign) * cellSize[axis] - origin) * inverse;
+        tNext[axis] = Double.isNaN(t) ? Double.POSITIVE_INFINITY : t;
+        tDelta[axis] = cellSize[axis] * Math.abs(inverse);
+    }
+
+    /**
+     * Walks the cells the ray passes through in their order along the ray, and
+     * visits every geometry of the cells once
+     *
+     * @param ray         the ray
+     * @param maxDistance the maximal distance along the ray
+     * @param visitor     the visitor of the geometries, the traversal stops when
+     *                    the visitor has returned a distance not beyond the
+     *                    current cell
+     */
+    private void traverse(Ray ray, double maxDistance, GeometryVisitor visitor) {
+        if (items.length == 0)
+            return;
+        Box bounds = new Box(min[0], max[0], min[1], max[1], min[2], max[2]);
+        double tEnter = bounds.entry(ray, maxDistance);
+        if (tEnter == Double.POSITIVE_INFINITY)
+            return;
+        double tExit = exit(ray, maxDistance);
+
+        Mailbox tested = mailbox.get();
+        int stamp = tested.start();
+
+        Point head = ray.getHead();
+        Vector dir = ray.getDirection();
+        int[] cell = new int[3];
+        int[] step = new int[3];
+        double[] tNext = new double[3];
+        double[] tDelta = new double[3];
+        start(0, head.getX(), dir.getX(), ray.inverseX, ray.signX, tEnter, cell, step, tNext, tDelta);
+        start(1, head.getY(), dir.getY(), ray.inverseY, ray.signY, tEnter, cell, step, tNext, tDelta);
+        start(2, head.getZ(), dir.getZ(), ray.inverseZ, ray.signZ, tEnter, cell, step, tNext, tDelta);
+
+        double stop = Double.POSITIVE_INFINITY;
+        while (true) {
+            int axis = tNext[0] < tNext[1] //
+                    ? (tNext[0] < tNext[2] ? 0 : 2) //
+                    : (tNext[1] < tNext[2] ? 1 : 2);
+            double cellExit = tNext[axis];
+
+            int c = index(cell[0], cell[1], cell[2]);
+            for (int i = cellStart[c], end = cellStart[c + 1]; i < end; ++i) {
+                int item = cellItems[i];
+                if (tested.mark(item, stamp))
+                    stop = Math.min(stop, visitor.visit(items[item]));
+            }
+            if (stop <= cellExit || cellExit >= tExit)
+                return;
+
+            cell[axis] += step[axis];
+            if (cell[axis] < 0 || cell[axis] >= resolution[axis])
+                return;
+            tNext[axis] += tDelta[axis];
+        }
+    }
+
+    @Override
+    protected GeoPoint findClosestIntersectionHelper(Ray ray, double maxDistance) {
+        GeoPoint[] closest = { null };
+        double[] distance = { maxDistance };
+        for (var g : unbounded) {
+            GeoPoint gp = g.findClosestIntersection(ray, distance[0]);
+            if (gp != null) {
+                closest[0] = gp;
+                distance[0] = gp.getDistance();
+            }
+        }
+        traverse(ray, distance[0], g -> {
+            GeoPoint gp = g.findClosestIntersection(ray, distance[0]);
+            if (gp != null) {
+                closest[0] = gp;
+                distance[0] = gp.getDistance();
+            }
+            return distance[0];
+        });
+        return closest[0];
+    }
+
+    @Override
+    protected Double3 findTransparencyHelper(Ray ray, double maxDistance, double minK) {
+        Double3[] ktr = { Double3.ONE };
+        for (var g : unbounded) {
+            Double3 kt = g.findTransparency(ray, maxDistance, minK);
+            if (kt != Double3.ONE) {
+                ktr[0] = ktr[0].product(kt);
+                if (ktr[0].lowerThan(minK))
+                    return Double3.ZERO;
+            }
+        }
+        traverse(ray, maxDistance, g -> {
+            Double3 kt = g.findTransparency(ray, maxDistance, minK);
+            if (kt != Double3.ONE) {
+                ktr[0] = ktr[0].product(kt);
+                // stop at the first opaque geometry
+                if (ktr[0].lowerThan(minK))
+                    return Double.NEGATIVE_INFINITY;
+            }
+            return Double.POSITIVE_INFINITY;
+        });
+        return ktr[0].lowerThan(minK) ? Double3.ZERO : ktr[0];
+    }
+
+    @Override
+    protected List<GeoPoint> findGeoIntersectionsHelper(Ray ray, double maxDistance) {
+        return collectGeoIntersections(ray, maxDistance);
+    }
+
+    @Override
+    protected void findGeoIntersectionsHelper(Ray ray, double maxDistance, Consumer<GeoPoint> sink) {
+        collect(ray, maxDistance, sink);
+    }
+
+    /**
+     * Passes the intersections of all the geometries along the ray to a sink
+     *
+     * @param ray         the ray
+     * @param maxDistance the maximal distance along the ray
+     * @param sink        the sink of the intersections
+     */
+    private void collect(Ray ray, double maxDistance, Consumer<GeoPoint> sink) {
+        GeometryVisitor visitor = g -> {
+            g.findGeoIntersections(ray, maxDistance, sink);
+            return Double.POSITIVE_INFINITY;
+        };
+        for (var g : unbounded)
+            visitor.visit(g);
+        traverse(ray, maxDistance, visitor);
+    }
+}
@@ -0,0 +1,107 @@
+package geometries;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Consumer;
+
+import geometries.Intersectable.GeoPoint;
+
+/**
+ * Growable array of intersections that is used as a sink of
+ * {@link Intersectable#findGeoIntersections(primitives.Ray, double, Consumer)}.
+ * Every rendering thread has a buffer of its own (see {@link #local()}) that is
+ * reused by all the queries of the thread, so a query doesn't allocate any
+ * collection. The buffer is used as a stack - a query remembers the size of the
+ * buffer before it starts and truncates the buffer back to it when it ends, so
+ * a query may run inside another one
+ *
+ * @author Moy Georgi & Efrat Aharoni
+ */
+public final class HitBuffer implements Consumer<GeoPoint> {
+    /** Initial capacity of a buffer */
+    private static final int INITIAL_CAPACITY = 16;
+    /** The buffers of the threads */
+    private static final ThreadLocal<HitBuffer> LOCAL = ThreadLocal.withInitial(HitBuffer::new);
+
+    /** The intersections */
+    private GeoPoint[] hits = new GeoPoint[INITIAL_CAPACITY];
+    /** The amount of the intersections */
+    private int size = 0;
+
+    /**
+     * Returns the buffer of the current thread
+     *
+     * @return the buffer
+     */
+    public static HitBuffer local() {
+        return LOCAL.get();
+    }
+
+    @Override
+    public void accept(GeoPoint gp) {
+        if (size == hits.length)
+            hits = Arrays.copyOf(hits, size * 2);
+        hits[size++] = gp;
+    }
+
+    /**
+     * Returns the amount of the intersections in the buffer
+     *
+     * @return the amount of the intersections
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns an intersection of the buffer
+     *
+     * @param index the index of the intersection
+     * @return the intersection
+     */
+    public GeoPoint get(int index) {
+        return hits[index];
+    }
+
+    /**
+     * Removes the intersections from an index to the end of the buffer
+     *
+     * @param from the new size of the buffer
+     */
+    public void truncate(int from) {
+        Arrays.fill(hits, from, size, null);
+        size = from;
+    }
+
+    /**
+     * Finds the closest intersection among the intersections from an index to the
+     * end of the buffer
+     *
+     * @param from the index of the first intersection
+     * @return the closest intersection, null if there are none
+     */
+    public GeoPoint closest(int from) {
+        GeoPoint closest = null;
+        for (int i = from; i < size; ++i)
+            if (closest == null || hits[i].getDistance() < closest.getDistance())
+                closest = hits[i];
+        return closest;
+    }
+
+    /**
+     * Copies the intersections from an index to the end of the buffer into a new
+     * list
+     *
+     * @param from the index of the first intersection
+     * @return the list of the intersections, null if there are none
+     */
+    public List<GeoPoint> toList(int from) {
+        if (from == size)
+            return null;
+        List<GeoPoint> list = new ArrayList<>(size - from);
+        for (int i = from; i < size; ++i)
+            list.add(hits[i]);
+        return list;
+    }
+}
@@ -0,0 +1,109 @@
+package geometries;
+
+import java.util.List;
+import java.util.function.Consumer;
+
+import primitives.Double3;
+import primitives.Point;
+import primitives.Ray;
+import primitives.Transform;
+import primitives.Vector;
+
+/**
+ * Instance of a shared model placed in the scene by an affine transformation.
+ * The rays are transformed into the space of the model and the intersections
+ * are transformed back, so any amount of instances can share one model with
+ * its own hierarchy, and the instances are put in a hierarchy of their own
+ *
+ * @author Moy Georgi & Efrat Aharoni
+ */
+public class Instance extends Intersectable {
+    /** The shared model */
+    private final Intersectable model;
+    /** Transformation from the space of the model to the scene */
+    private final Transform toWorld;
+    /** Transformation from the scene to the space of the model */
+    private final Transform toObject;
+
+    /**
+     * Places a model in the scene
+     *
+     * @param model     the shared model
+     * @param transform the transformation from the space of the model to the
+     *                  scene
+     * @throws IllegalArgumentException if the transformation is not invertible
+     */
+    public Instance(Intersectable model, Transform transform) {
+        this.model = model;
+        toWorld = transform;
+        toObject = transform.inverse();
+        // if CBR improvement is on, the box bounds the transformed corners of the
+        // model's box
+        if (cbr && model.box != null) {
+            Box b = model.box;
+            box = new Box();
+            for (double x : new double[] { b.minX, b.maxX })
+                for (double y : new double[] { b.minY, b.maxY })
+                    for (double z : new double[] { b.minZ, b.maxZ }) {
+                        Point p = toWorld.apply(new Point(x, y, z));
+                        box.extend(new Box(p.getX(), p.getX(), p.getY(), p.getY(), p.getZ(), p.getZ()));
+                    }
+        }
+    }
+
+    /**
+     * Transforms a ray into the space of the model
+     *
+     * @param ray the ray in the scene
+     * @return the ray in the space of the model
+     */
+    private Ray toObject(Ray ray) {
+        return new Ray(toObject.apply(ray.getHead()), toObject.apply(ray.getDirection()));
+    }
+
+    /**
+     * Transforms a distance along a ray into the space of the model
+     *
+     * @param ray      the ray in the scene
+     * @param distance the distance along the ray
+     * @return the distance along the ray in the space of the model
+     */
+    private double toObject(Ray ray, double distance) {
+        return distance == Double.POSITIVE_INFINITY ? distance
+                : distance * toObject.apply(ray.getDirection()).length();
+    }
+
+    /**
+     * Transforms an intersection of the model into the scene
+     *
+     * @param gp  the intersection in the space of the model
+     * @param ray the ray in the scene
+     * @return the intersection in the scene
+     */
+    private GeoPoint toWorld(GeoPoint gp, Ray ray) {
+        Point point = toWorld.apply(gp.getPoint());
+        return new GeoPoint(gp.geometry, point, toObject.applyTransposed(gp.getNormal()).normalize(),
+                point.distance(ray.getHead()));
+    }
+
+    @Override
+    protected List<GeoPoint> findGeoIntersectionsHelper(Ray ray, double maxDistance) {
+        return collectGeoIntersections(ray, maxDistance);
+    }
+
+    @Override
+    protected void findGeoIntersectionsHelper(Ray ray, double maxDistance, Consumer<GeoPoint> sink) {
+        model.findGeoIntersections(toObject(ray), toObject(ray, maxDistance), gp -> sink.accept(toWorld(gp, ray)));
+    }
+
+    @Override
+    protected GeoPoint findClosestIntersectionHelper(Ray ray, double maxDistance) {
+        GeoPoint gp = model.findClosestIntersection(toObject(ray), toObject(ray, maxDistance));
+        return gp == null ? null : toWorld(gp, ray);
+    }
+
+    @Override
+    protected Double3 findTransparencyHelper(Ray ray, double maxDistance, double minK) {
+        return model.findTransparency(toObject(ray), toObject(ray, maxDistance), minK);
+    }
+}
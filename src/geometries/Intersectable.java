@@ -2,6 +2,7 @@ package geometries;
 import primitives.*;
 import java.util.List;
 import java.util.Objects;
+import java.util.function.Consumer;
 import java.util.List;
 import static java.lang.Math.*;
 import primitives.Point;
@@ -35,6 +36,24 @@ public abstract class Intersectable {
         count = 0;
     }
 
+    /** Stores the bulk geometry data in single precision */
+    protected static boolean singlePrecision = false;
+
+    /**
+     * Sets single precision storage of the bulk geometry data - the vertices of
+     * {@link TriangleMesh} and the bounds of the compiled hierarchy. The
+     * calculations stay in double precision, only the stored values are rounded,
+     * and the heads of the secondary rays are offset by the float precision of
+     * their points (see {@link Ray#setAdaptiveDelta(boolean)}). It applies to
+     * the geometries and hierarchies created after it is set
+     *
+     * @param singlePrecision true for single precision storage
+     */
+    public static void createSinglePrecision(boolean singlePrecision) {
+        Intersectable.singlePrecision = singlePrecision;
+        Ray.setAdaptiveDelta(singlePrecision);
+    }
+
     /**
      * Class for representing a Box for BVH contains 6 double values of x,y,z
      * minimum and maximum
@@ -92,99 +111,226 @@ public abstract class Intersectable {
         }
 
         /**
-         * Returns true if the ray intersects the box
+         * Returns true if the line of the ray intersects the box
          *
          * @param r ray
          * @return True if the ray intersects the box. Otherwise, False
          */
         public boolean isIntersected(Ray r) {
             ++count;
+            boolean check = entry(r, Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY) != Double.POSITIVE_INFINITY;
+            if (check)
+                ++positives;
+            return check;
+        }
+
+        /**
+         * Finds the distance along a ray where it enters the box
+         *
+         * @param r           ray
+         * @param maxDistance the maximal distance along the ray
+         * @return the entry distance (0 if the ray starts inside the box), or positive
+         *         infinity if the ray misses the box within the maximal distance
+         */
+        public double entry(Ray r, double maxDistance) {
+            return entry(r, 0, maxDistance);
+        }
+
+        /**
+         * Finds the distance along a ray where it enters the box within an interval
+         * of distances, e.g. up to the closest point found so far or up to a light.
+         * The slab test uses the inverse direction and the sign bits of the ray to
+         * pick the near and the far plane of every slab without dividing or
+         * branching. A ray parallel to a slab gets infinite distances, or NaN when
+         * its head is on the plane, and the comparisons skip a NaN, so such a ray
+         * is inside the slab exactly when its head is between the planes
+         *
+         * @param r    ray
+         * @param tMin the beginning of the interval
+         * @param tMax the end of the interval
+         * @return the entry distance (tMin if the ray is inside the box at tMin), or
+         *         positive infinity if the ray misses the box within the interval
+         */
+        public double entry(Ray r, double tMin, double tMax) {
             Point origin = r.getHead();
-            Vector dir = r.getDirection();
-            double v1, v2;
+            double tNear = tMin;
+            double tFar = tMax;
+            double t;
 
-            double tMin = Double.NEGATIVE_INFINITY;
-            double tMax = Double.POSITIVE_INFINITY;
             double originX = origin.getX();
-            double dirX = dir.getX();
-            if (dirX != 0) {
-                // b=D*t+O => y=mx+b =>dirx*tmin+originx=minx
-                v1 = (minX - originX) / dirX;
-                v2 = (maxX - originX) / dirX;
-                tMin = min(v1, v2);
-                tMax = max(v1, v2);
-            }
+            t = ((r.signX == 0 ? minX : maxX) - originX) * r.inverseX;
+            tNear = t > tNear ? t : tNear;
+            t = ((r.signX == 0 ? maxX : minX) - originX) * r.inverseX;
+            tFar = t < tFar ? t : tFar;
 
-            double tMinY = Double.NEGATIVE_INFINITY;
-            double tMaxY = Double.POSITIVE_INFINITY;
             double originY = origin.getY();
-            double dirY = dir.getY();
-            if (dirY != 0) {
-                // b=D*t+O => y=mx+b =>dirx*tmin+originx=minx
-                v1 = (minY - originY) / dirY;
-                v2 = (maxY - originY) / dirY;
-                tMinY = min(v1, v2);
-                tMaxY = max(v1, v2);
-            }
-            if ((tMin > tMaxY) || (tMinY > tMax))
-                return false;
-
-            if (tMinY > tMin)
-                tMin = tMinY;
-            if (tMaxY < tMax)
-                tMax = tMaxY;
+            t = ((r.signY == 0 ? minY : maxY) - originY) * r.inverseY;
+            tNear = t > tNear ? t : tNear;
+            t = ((r.signY == 0 ? maxY : minY) - originY) * r.inverseY;
+            tFar = t < tFar ? t : tFar;
 
             double originZ = origin.getZ();
-            double dirZ = dir.getZ();
-            double tMinZ = Double.NEGATIVE_INFINITY;
-            double tMaxZ = Double.POSITIVE_INFINITY;
-            if (dirZ != 0) {
-                // b=D*t+O => y=mx+b =>dirx*tmin+originx=minx
-                v1 = (minZ - originZ) / dirZ;
-                v2 = (maxZ - originZ) / dirZ;
-                tMinZ = min(v1, v2);
-                tMaxZ = max(v1, v2);
-            }
+            t = ((r.signZ == 0 ? minZ : maxZ) - originZ) * r.inverseZ;
+            tNear = t > tNear ? t : tNear;
+            t = ((r.signZ == 0 ? maxZ : minZ) - originZ) * r.inverseZ;
+            tFar = t < tFar ? t : tFar;
 
-            // If either the max value of Z is smaller than overall min value, or min value
-            // of Z is bigger than the overall
-            // max, we can already return false. Otherwise we can return true since no other
-            // coordinate checks are needed.
-            boolean check = tMin <= tMaxZ && tMinZ <= tMax;
-            if (check)
-                ++positives;
-            return check;
+            return tNear <= tFar ? tNear : Double.POSITIVE_INFINITY;
+        }
+
+        /**
+         * Extends the box so it will contain another box
+         *
+         * @param other the box to contain
+         */
+        public void extend(Box other) {
+            if (other.minX < minX)
+                minX = other.minX;
+            if (other.minY < minY)
+                minY = other.minY;
+            if (other.minZ < minZ)
+                minZ = other.minZ;
+            if (other.maxX > maxX)
+                maxX = other.maxX;
+            if (other.maxY > maxY)
+                maxY = other.maxY;
+            if (other.maxZ > maxZ)
+                maxZ = other.maxZ;
+        }
+
+        /**
+         * Calculates the surface area of the box, used by the Surface Area Heuristic
+         *
+         * @return the surface area, 0 for an empty box
+         */
+        public double surfaceArea() {
+            double x = maxX - minX;
+            double y = maxY - minY;
+            double z = maxZ - minZ;
+            if (x < 0 || y < 0 || z < 0)
+                return 0;
+            return 2 * (x * y + y * z + z * x);
+        }
+
+        /**
+         * Returns the center of the box along one of the axes
+         *
+         * @param axis 0 for x, 1 for y, 2 for z
+         * @return the center coordinate of the box along the axis
+         */
+        public double center(int axis) {
+            return switch (axis) {
+                case 0 -> (minX + maxX) / 2;
+                case 1 -> (minY + maxY) / 2;
+                default -> (minZ + maxZ) / 2;
+            };
         }
 
     }
 
     public static class GeoPoint {
         public Geometry geometry;
-        public Point point;
+        /** The point, null until it is asked for if it was found along a ray */
+        private Point point;
+        /** The ray which found the point, null if the point is given */
+        private final Ray ray;
+        /** The distance of the point from the head of the ray which found it */
+        private final double t;
+        /** The normal at the point, null until it is calculated by the geometry */
+        private Vector normal = null;
 
         /**
-         * Constructs a GeoPoint object with the specified geometry and point.
+         * Constructs a GeoPoint object of a geometry whose normal at the point is
+         * already known, e.g. a transformed geometry
          *
          * @param geometry the geometry
          * @param point    the point
+         * @param normal   the normal at the point
+         * @param t        the distance of the point from the head of the ray
          */
-        public GeoPoint(Geometry geometry, Point point) {
+        public GeoPoint(Geometry geometry, Point point, Vector normal, double t) {
             this.geometry = geometry;
             this.point = point;
+            this.normal = normal;
+            this.ray = null;
+            this.t = t;
+        }
+
+        /**
+         * Constructs a GeoPoint object of a point found along a ray. The point is
+         * calculated only if it is asked for, so the candidates which lose to a
+         * closer point cost no point
+         *
+         * @param geometry the geometry
+         * @param ray      the ray
+         * @param t        the distance of the point from the head of the ray
+         */
+        public GeoPoint(Geometry geometry, Ray ray, double t) {
+            this.geometry = geometry;
+            this.ray = ray;
+            this.t = t;
+        }
+
+        /**
+         * Constructs a GeoPoint object of a point found along a ray, on a geometry
+         * whose normal at the point is already known
+         *
+         * @param geometry the geometry
+         * @param ray      the ray
+         * @param t        the distance of the point from the head of the ray
+         * @param normal   the normal at the point
+         */
+        public GeoPoint(Geometry geometry, Ray ray, double t, Vector normal) {
+            this(geometry, ray, t);
+            this.normal = normal;
+        }
+
+        /**
+         * Returns the point, calculated on the first call if it was found along a
+         * ray
+         *
+         * @return the point
+         */
+        public Point getPoint() {
+            if (point == null)
+                point = ray.getPoint(t);
+            return point;
+        }
+
+        /**
+         * Returns the distance of the point from the head of the ray which found it,
+         * so the closest of the points of a ray is found by comparing the distances
+         *
+         * @return the distance
+         */
+        public double getDistance() {
+            return t;
+        }
+
+        /**
+         * Returns the normal of the geometry at the point, calculated by the
+         * geometry on the first call
+         *
+         * @return the normal
+         */
+        public Vector getNormal() {
+            if (normal == null)
+                normal = geometry.getNormal(getPoint());
+            return normal;
         }
 
         @Override
         public boolean equals(Object o) {
             if (this == o) return true;
             if (!(o instanceof GeoPoint geoPoint)) return false;
-            return geometry == geoPoint.geometry && point.equals(geoPoint.point);
+            return geometry == geoPoint.geometry && getPoint().equals(geoPoint.getPoint());
         }
 
         @Override
         public String toString() {
             return "GeoPoint{" +
                     "geometry=" + geometry +
-                    ", point=" + point +
+                    ", point=" + getPoint() +
                     '}';
         }
     }
@@ -206,13 +352,93 @@ public abstract class Intersectable {
         return list;
     }
 
-    protected abstract List<GeoPoint> findGeoIntersectionsHelper(Ray ray);
+    /**
+     * Finds the intersections of a ray with the geometry. By default it is the
+     * bounded query with no maximal distance, so a geometry implements the
+     * intersection once - in {@link #findGeoIntersectionsHelper(Ray, double)}
+     *
+     * @param ray the given ray
+     * @return the list of the intersections, null if there are none
+     */
+    protected List<GeoPoint> findGeoIntersectionsHelper(Ray ray) {
+        return findGeoIntersectionsHelper(ray, Double.POSITIVE_INFINITY);
+    }
+
+    /**
+     * Finds the intersections of a ray, which are closer than a maximal distance.
+     * The geometry is skipped if the ray enters its box beyond the maximal
+     * distance, and geometries that hold other geometries skip the boxes the same
+     * way
+     *
+     * @param ray         the given ray
+     * @param maxDistance the maximal distance from the ray head
+     * @return the list of the intersections, null if there are none
+     */
+    public final List<GeoPoint> findGeoIntersections(Ray ray, double maxDistance) {
+        return box == null || box.entry(ray, maxDistance) < maxDistance //
+                ? findGeoIntersectionsHelper(ray, maxDistance) //
+                : null;
+    }
+
+    /**
+     * Finds the intersections of a ray, which are closer than a maximal distance
+     * - the intersection of every geometry type
+     *
+     * @param ray         the given ray
+     * @param maxDistance the maximal distance from the ray head
+     * @return the list of the intersections, null if there are none
+     */
+    protected abstract List<GeoPoint> findGeoIntersectionsHelper(Ray ray, double maxDistance);
+
+    /**
+     * Passes the intersections of a ray, which are closer than a maximal
+     * distance, to a sink one by one, without collecting them into lists. The
+     * geometry is skipped if the ray enters its box beyond the maximal distance
+     *
+     * @param ray         the given ray
+     * @param maxDistance the maximal distance from the ray head
+     * @param sink        the sink of the intersections
+     */
+    public final void findGeoIntersections(Ray ray, double maxDistance, Consumer<GeoPoint> sink) {
+        if (box == null || box.entry(ray, maxDistance) < maxDistance)
+            findGeoIntersectionsHelper(ray, maxDistance, sink);
+    }
 
-    public List<GeoPoint> findGeoIntersections(Ray ray, double maxDistance) {
-            return findGeoIntersectionsHelper(ray, maxDistance);
+    /**
+     * Passes the intersections of a ray, which are closer than a maximal
+     * distance, to a sink. By default it passes the list of
+     * {@link #findGeoIntersectionsHelper(Ray, double)}, geometries should
+     * override it in order to write their intersections into the sink directly
+     * (and then their list helper may return {@link #collectGeoIntersections})
+     *
+     * @param ray         the given ray
+     * @param maxDistance the maximal distance from the ray head
+     * @param sink        the sink of the intersections
+     */
+    protected void findGeoIntersectionsHelper(Ray ray, double maxDistance, Consumer<GeoPoint> sink) {
+        List<GeoPoint> intersections = findGeoIntersectionsHelper(ray, maxDistance);
+        if (intersections != null)
+            intersections.forEach(sink);
     }
 
-        abstract protected List<GeoPoint> findGeoIntersectionsHelper(Ray ray, double maxDistance);
+    /**
+     * Collects the intersections of the sink helper into a list - a list helper
+     * for the geometries that write their intersections into a sink
+     *
+     * @param ray         the given ray
+     * @param maxDistance the maximal distance from the ray head
+     * @return the list of the intersections, null if there are none
+     */
+    protected final List<GeoPoint> collectGeoIntersections(Ray ray, double maxDistance) {
+        HitBuffer hits = HitBuffer.local();
+        int mark = hits.size();
+        try {
+            findGeoIntersectionsHelper(ray, maxDistance, hits);
+            return hits.toList(mark);
+        } finally {
+            hits.truncate(mark);
+        }
+    }
 
         /**
          * @param ray A method that receives a ray
@@ -221,7 +447,7 @@ public abstract class Intersectable {
         public final List<Point> findIntersections(Ray ray) {
             List<GeoPoint> geoList = findGeoIntersections(ray);
             return geoList == null ? null
-                    : geoList.stream().map(gp -> gp.point).toList();
+                    : geoList.stream().map(GeoPoint::getPoint).toList();
         }
 
     /**
@@ -231,7 +457,107 @@ public abstract class Intersectable {
      * @return the point and its geometry, null if there is no such point
      */
     public GeoPoint findClosestIntersection(Ray ray) {
-        List<GeoPoint> intersections = findGeoIntersections(ray);
-        return intersections == null ? null : ray.findClosestGeoPoint(intersections);
+        return findClosestIntersection(ray, Double.POSITIVE_INFINITY);
+    }
+
+    /**
+     * finds the closest intersection point to a given ray, which is closer than a
+     * maximal distance. The geometry is skipped if the ray enters its box beyond
+     * the maximal distance
+     *
+     * @param ray         the given ray
+     * @param maxDistance the maximal distance from the ray head
+     * @return the point and its geometry, null if there is no such point
+     */
+    public final GeoPoint findClosestIntersection(Ray ray, double maxDistance) {
+        return box == null || box.entry(ray, maxDistance) < maxDistance //
+                ? findClosestIntersectionHelper(ray, maxDistance) //
+                : null;
+    }
+
+    /**
+     * finds the closest intersection point of every ray of a packet of coherent
+     * rays, e.g. the primary rays of a tile of pixels. Geometries that hold other
+     * geometries may override it in order to traverse their hierarchy once for
+     * the whole packet
+     *
+     * @param rays the rays of the packet
+     * @return the closest point of every ray, null for a ray without
+     *         intersections
+     */
+    public GeoPoint[] findClosestIntersections(Ray[] rays) {
+        GeoPoint[] closest = new GeoPoint[rays.length];
+        for (int i = 0; i < rays.length; ++i)
+            closest[i] = findClosestIntersection(rays[i]);
+        return closest;
+    }
+
+    /**
+     * Calculates the transparency factor of the geometry along a ray up to a
+     * maximal distance - the product of the transparency coefficients (kT) of all
+     * the intersection points closer than the maximal distance. The search stops
+     * as soon as the accumulated factor drops below a minimal value. The geometry
+     * is skipped if the ray doesn't enter its box within the maximal distance
+     *
+     * @param ray         the given ray
+     * @param maxDistance the maximal distance from the ray head
+     * @param minK        the factor below which the geometry is considered opaque
+     * @return the transparency factor, {@link Double3#ZERO} if it is below the
+     *         minimal value
+     */
+    public final Double3 findTransparency(Ray ray, double maxDistance, double minK) {
+        return box == null || box.entry(ray, maxDistance) < maxDistance //
+                ? findTransparencyHelper(ray, maxDistance, minK) //
+                : Double3.ONE;
+    }
+
+    /**
+     * Calculates the transparency factor of the geometry along a ray up to a
+     * maximal distance. Geometries that hold other geometries should override it
+     * in order to skip the geometries the ray doesn't reach, and to stop at the
+     * first opaque intersection
+     *
+     * @param ray         the given ray
+     * @param maxDistance the maximal distance from the ray head
+     * @param minK        the factor below which the geometry is considered opaque
+     * @return the transparency factor, {@link Double3#ZERO} if it is below the
+     *         minimal value
+     */
+    protected Double3 findTransparencyHelper(Ray ray, double maxDistance, double minK) {
+        HitBuffer hits = HitBuffer.local();
+        int mark = hits.size();
+        try {
+            findGeoIntersectionsHelper(ray, maxDistance, hits);
+            Double3 ktr = Double3.ONE;
+            for (int i = mark; i < hits.size(); ++i) {
+                ktr = ktr.product(hits.get(i).geometry.getMaterial().kT);
+                if (ktr.lowerThan(minK))
+                    return Double3.ZERO;
+            }
+            return ktr;
+        } finally {
+            hits.truncate(mark);
+        }
+    }
+
+    /**
+     * finds the closest intersection point to a given ray, which is closer than a
+     * maximal distance. Geometries that hold other geometries should override it
+     * in order to prune the geometries that are farther than the closest point
+     * found so far
+     *
+     * @param ray         the given ray
+     * @param maxDistance the maximal distance from the ray head
+     * @return the point and its geometry, null if there is no such point
+     */
+    protected GeoPoint findClosestIntersectionHelper(Ray ray, double maxDistance) {
+        HitBuffer hits = HitBuffer.local();
+        int mark = hits.size();
+        try {
+            findGeoIntersectionsHelper(ray, maxDistance, hits);
+            return hits.closest(mark);
+        } finally {
+            hits.truncate(mark);
+        }
     }
 }
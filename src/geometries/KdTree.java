@@ -0,0 +1,409 @@
+package geometries;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Consumer;
+
+import primitives.Double3;
+import primitives.Point;
+import primitives.Ray;
+import primitives.Vector;
+
+/**
+ * kd-tree acceleration structure - a container of geometries that splits space
+ * by axis aligned planes chosen by the Surface Area Heuristic over the extents
+ * of the geometries' boxes. A geometry crossing a split plane is referenced
+ * from both sides.<br/>
+ * The nodes and the references of the leaves are kept in int arrays, and the
+ * leaves are visited in their order along the ray with a small stack bounded
+ * by the depth of the tree. Geometries without a box are tested by every ray.
+ *
+ * @author Moy Georgi & Efrat Aharoni
+ */
+public class KdTree extends Intersectable {
+    /** SAH cost of traversing a node */
+    private static final double TRAVERSAL_COST = 1;
+    /** SAH cost of intersecting a single geometry */
+    private static final double INTERSECTION_COST = 1.5;
+    /** SAH cost factor of a split that cuts off empty space */
+    private static final double EMPTY_BONUS = 0.8;
+    /** Leaf marker in the axis bits of a node */
+    private static final int LEAF = 3;
+
+    /** The bounded geometries of the tree */
+    private final Intersectable[] items;
+    /** The geometries without a box */
+    private final Intersectable[] unbounded;
+    /** Bounds of the tree - minX, maxX, minY, maxY, minZ, maxZ */
+    private final double[] bounds = new double[6];
+    /** Maximal depth of the tree */
+    private final int maxDepth;
+
+    /**
+     * Nodes data, 2 integers per node. The low 2 bits of the first integer are the
+     * split axis, or {@link #LEAF} for a leaf. For an inner node the second integer
+     * is the index of the child above the split plane (the child below the plane
+     * is the next node). For a leaf the rest of the first integer is the amount of
+     * its geometries and the second integer is the index of the first one in
+     * {@link #leafItems}
+     */
+    private int[] nodes = new int[64];
+    /** Split plane position of every inner node */
+    private double[] splits = new double[32];
+    /** Amount of nodes */
+    private int nodeCount = 0;
+    /** Indices of the geometries of all the leaves, ordered by the leaves */
+    private int[] leafItems = new int[64];
+    /** Amount of geometry references in the leaves */
+    private int leafItemsCount = 0;
+
+    /** Per thread stamps of the geometries which were already tested by a ray */
+    private final ThreadLocal<Mailbox> mailbox;
+
+    /**
+     * Builds a kd-tree for geometries
+     *
+     * @param geometries the geometries of the tree
+     */
+    public KdTree(Intersectable... geometries) {
+        this(List.of(geometries));
+    }
+
+    /**
+     * Builds a kd-tree for a list of geometries
+     *
+     * @param geometries the geometries of the tree
+     */
+    public KdTree(List<Intersectable> geometries) {
+        List<Intersectable> bounded = new ArrayList<>();
+        List<Intersectable> infinite = new ArrayList<>();
+        Box all = new Box();
+        for (var g : geometries)
+            if (g.box == null)
+                infinite.add(g);
+            else {
+                bounded.add(g);
+                all.extend(g.box);
+            }
+        items = bounded.toArray(new Intersectable[0]);
+        unbounded = infinite.toArray(new Intersectable[0]);
+        int itemsCount = items.length;
+        mailbox = ThreadLocal.withInitial(() -> new Mailbox(itemsCount));
+        if (cbr && unbounded.length == 0 && itemsCount > 0)
+            box = all;
+
+        maxDepth = (int) Math.round(8 + 1.3 * Math.log(Math.max(itemsCount, 1)) / Math.log(2));
+        if (itemsCount == 0)
+            return;
+        bounds[0] = all.minX;
+        bounds[1] = all.maxX;
+        bounds[2] = all.minY;
+        bounds[3] = all.maxY;
+        bounds[4] = all.minZ;
+        bounds[5] = all.maxZ;
+        int[] refs = new int[itemsCount];
+        for (int i = 0; i < itemsCount; ++i)
+            refs[i] = i;
+        build(refs, bounds.clone(), 0);
+        nodes = Arrays.copyOf(nodes, nodeCount * 2);
+        splits = Arrays.copyOf(splits, nodeCount);
+        leafItems = Arrays.copyOf(leafItems, leafItemsCount);
+    }
+
+    /**
+     * Returns the minimum of a geometry's box along an axis
+     *
+     * @param item the index of the geometry
+     * @param axis 0 for x, 1 for y, 2 for z
+     * @return the minimum of the box
+     */
+    private double minOf(int item, int axis) {
+        Box b = items[item].box;
+        return axis == 0 ? b.minX : axis == 1 ? b.minY : b.minZ;
+    }
+
+    /**
+     * Returns the maximum of a geometry's box along an axis
+     *
+     * @param item the index of the geometry
+     * @param axis 0 for x, 1 for y, 2 for z
+     * @return the maximum of the box
+     */
+    private double maxOf(int item, int axis) {
+        Box b = items[item].box;
+        return axis == 0 ? b.maxX : axis == 1 ? b.maxY : b.maxZ;
+    }
+
+    /**
+     * Calculates the surface area of a box given by its extents
+     *
+     * @param x extent along x
+     * @param y extent along y
+     * @param z extent along z
+     * @return the surface area
+     */
+    private static double area(double x, double y, double z) {
+        return 2 * (x * y + y * z + z * x);
+    }
+
+    /**
+     * Adds a node to the nodes arrays
+     *
+     * @return the index of the node
+     */
+    private int addNode() {
+        if (nodeCount == splits.length) {
+            nodes = Arrays.copyOf(nodes, nodes.length * 2);
+            splits = Arrays.copyOf(splits, splits.length * 2);
+        }
+        return nodeCount++;
+    }
+
+    /**
+     * Builds a sub-tree - finds the cheapest split plane by SAH, or makes a leaf if
+     * no split is cheaper than intersecting all the geometries
+     *
+     * @param refs   the geometries of the sub-tree
+     * @param region the bounds of the sub-tree - minX, maxX, minY, maxY, minZ, maxZ
+     * @param depth  the depth of the sub-tree root
+     */
+    private void build(int[] refs, double[] region, int depth) {
+        int node = addNode();
+        int n = refs.length;
+        double[] extent = { region[1] - region[0], region[3] - region[2], region[5] - region[4] };
+        double nodeArea = area(extent[0], extent[1], extent[2]);
+
+        double bestCost = INTERSECTION_COST * n;
+        int bestAxis = -1;
+        double bestSplit = 0;
+        if (n > 1 && depth < maxDepth && nodeArea > 0)
+            for (int axis = 0; axis < 3; ++axis) {
+                double lo = region[2 * axis], hi = region[2 * axis + 1];
+                if (hi <= lo)
+                    continue;
+                double[] mins = new double[n];
+                double[] maxs = new double[n];
+                for (int i = 0; i < n; ++i) {
+                    mins[i] = minOf(refs[i], axis);
+                    maxs[i] = maxOf(refs[i], axis);
+                }
+                Arrays.sort(mins);
+                Arrays.sort(maxs);
+                int other1 = (axis + 1) % 3, other2 = (axis + 2) % 3;
+                double crossPerimeter = extent[other1] + extent[other2];
+                double crossArea = extent[other1] * extent[other2];
+                // sweep the candidate planes - a geometry is below a plane if its minimum is
+                // not above it, and above the plane if its maximum is above it
+                int iMin = 0, iMax = 0;
+                while (iMin < n || iMax < n) {
+                    double plane = iMax >= n || (iMin < n && mins[iMin] <= maxs[iMax]) ? mins[iMin] : maxs[iMax];
+                    while (iMin < n && mins[iMin] <= plane)
+                        ++iMin;
+                    while (iMax < n && maxs[iMax] <= plane)
+                        ++iMax;
+                    if (plane <= lo || plane >= hi)
+                        continue;
+                    int below = iMin;
+                    int above = n - iMax;
+                    if (below == n && above == n)
+                        continue;
+                    double belowArea = 2 * (crossArea + (plane - lo) * crossPerimeter);
+                    double aboveArea = 2 * (crossArea + (hi - plane) * crossPerimeter);
+                    double cost = TRAVERSAL_COST
+                            + INTERSECTION_COST * (belowArea * below + aboveArea * above) / nodeArea;
+                    if (below == 0 || above == 0)
+                        cost *= EMPTY_BONUS;
+                    if (cost < bestCost) {
+                        bestCost = cost;
+                        bestAxis = axis;
+                        bestSplit = plane;
+                    }
+                }
+            }
+
+        if (bestAxis < 0) { // leaf
+            if (leafItemsCount + n > leafItems.length)
+                leafItems = Arrays.copyOf(leafItems, Math.max(leafItems.length * 2, leafItemsCount + n));
+            System.arraycopy(refs, 0, leafItems, leafItemsCount, n);
+            nodes[2 * node] = n << 2 | LEAF;
+            nodes[2 * node + 1] = leafItemsCount;
+            leafItemsCount += n;
+            return;
+        }
+
+        int belowCount = 0, aboveCount = 0;
+        for (int ref : refs) {
+            if (minOf(ref, bestAxis) <= bestSplit)
+                ++belowCount;
+            if (maxOf(ref, bestAxis) > bestSplit)
+                ++aboveCount;
+        }
+        int[] below = new int[belowCount];
+        int[] above = new int[aboveCount];
+        belowCount = aboveCount = 0;
+        for (int ref : refs) {
+            if (minOf(ref, bestAxis) <= bestSplit)
+                below[belowCount++] = ref;
+            if (maxOf(ref, bestAxis) > bestSplit)
+                above[aboveCount++] = ref;
+        }
+
+        nodes[2 * node] = bestAxis;
+        splits[node] = bestSplit;
+        double[] belowRegion = region.clone();
+        belowRegion[2 * bestAxis + 1] = bestSplit;
+        build(below, belowRegion, depth + 1);
+        nodes[2 * node + 1] = nodeCount;
+        double[] aboveRegion = region.clone();
+        aboveRegion[2 * bestAxis] = bestSplit;
+        build(above, aboveRegion, depth + 1);
+    }
+
+    /**
+     * Walks the leaves the ray passes through in their order along the ray, and
+     * visits every geometry of the leaves once
+     *
+     * @param ray         the ray
+     * @param maxDistance the maximal distance along the ray
+     * @param visitor     the visitor of the geometries, the traversal stops when
+     *                    the visitor has returned a distance not beyond the
+     *                    current leaf
+     */
+    private void traverse(Ray ray, double maxDistance, GeometryVisitor visitor) {
+        if (items.length == 0)
+            return;
+        Box region = new Box(bounds[0], bounds[1], bounds[2], bounds[3], bounds[4], bounds[5]);
+        double tMin = region.entry(ray, maxDistance);
+        if (tMin == Double.POSITIVE_INFINITY)
+            return;
+
+        Point head = ray.getHead();
+        Vector dir = ray.getDirection();
+        double[] o = { head.getX(), head.getY(), head.getZ() };
+        double[] d = { dir.getX(), dir.getY(), dir.getZ() };
+        double[] inv = { ray.inverseX, ray.inverseY, ray.inverseZ };
+        double tMax = maxDistance;
+        for (int axis = 0; axis < 3; ++axis)
+            if (d[axis] != 0)
+                tMax = Math.min(tMax, Math.max((bounds[2 * axis] - o[axis]) * inv[axis], //
+                        (bounds[2 * axis + 1] - o[axis]) * inv[axis]));
+
+        Mailbox tested = mailbox.get();
+        int stamp = tested.start();
+
+        int[] stackNodes = new int[maxDepth + 1];
+        double[] stackMin = new double[maxDepth + 1];
+        double[] stackMax = new double[maxDepth + 1];
+        int top = 0;
+        int node = 0;
+        double stop = Double.POSITIVE_INFINITY;
+        while (true) {
+            int info = nodes[2 * node];
+            int axis = info & 3;
+            if (axis != LEAF) {
+                double split = splits[node];
+                double tSplit = (split - o[axis]) * inv[axis];
+                boolean belowFirst = o[axis] < split || (o[axis] == split && d[axis] <= 0);
+                int first = belowFirst ? node + 1 : nodes[2 * node + 1];
+                int second = belowFirst ? nodes[2 * node + 1] : node + 1;
+                if (d[axis] == 0 || tSplit > tMax || tSplit <= 0)
+                    node = first;
+                else if (tSplit < tMin)
+                    node = second;
+                else {
+                    stackNodes[top] = second;
+                    stackMin[top] = tSplit;
+                    stackMax[top++] = tMax;
+                    node = first;
+                    tMax = tSplit;
+                }
+                continue;
+            }
+
+            for (int i = nodes[2 * node + 1], end = i + (info >>> 2); i < end; ++i) {
+                int item = leafItems[i];
+                if (tested.mark(item, stamp))
+                    stop = Math.min(stop, visitor.visit(items[item]));
+            }
+            if (stop <= tMax || top == 0)
+                return;
+            node = stackNodes[--top];
+            tMin = stackMin[top];
+            tMax = stackMax[top];
+        }
+    }
+
+    @Override
+    protected GeoPoint findClosestIntersectionHelper(Ray ray, double maxDistance) {
+        GeoPoint[] closest = { null };
+        double[] distance = { maxDistance };
+        for (var g : unbounded) {
+            GeoPoint gp = g.findClosestIntersection(ray, distance[0]);
+            if (gp != null) {
+                closest[0] = gp;
+                distance[0] = gp.getDistance();
+            }
+        }
+        traverse(ray, distance[0], g -> {
+            GeoPoint gp = g.findClosestIntersection(ray, distance[0]);
+            if (gp != null) {
+                closest[0] = gp;
+                distance[0] = gp.getDistance();
+            }
+            return distance[0];
+        });
+        return closest[0];
+    }
+
+    @Override
+    protected Double3 findTransparencyHelper(Ray ray, double maxDistance, double minK) {
+        Double3[] ktr = { Double3.ONE };
+        for (var g : unbounded) {
+            Double3 kt = g.findTransparency(ray, maxDistance, minK);
+            if (kt != Double3.ONE) {
+                ktr[0] = ktr[0].product(kt);
+                if (ktr[0].lowerThan(minK))
+                    return Double3.ZERO;
+            }
+        }
+        traverse(ray, maxDistance, g -> {
+            Double3 kt = g.findTransparency(ray, maxDistance, minK);
+            if (kt != Double3.ONE) {
+                ktr[0] = ktr[0].product(kt);
+                // stop at the first opaque geometry
+                if (ktr[0].lowerThan(minK))
+                    return Double.NEGATIVE_INFINITY;
+            }
+            return Double.POSITIVE_INFINITY;
+        });
+        return ktr[0].lowerThan(minK) ? Double3.ZERO : ktr[0];
+    }
+
+    @Override
+    protected List<GeoPoint> findGeoIntersectionsHelper(Ray ray, double maxDistance) {
+        return collectGeoIntersections(ray, maxDistance);
+    }
+
+    @Override
+    protected void findGeoIntersectionsHelper(Ray ray, double maxDistance, Consumer<GeoPoint> sink) {
+        collect(ray, maxDistance, sink);
+    }
+
+    /**
+     * Passes the intersections of all the geometries along the ray to a sink
+     *
+     * @param ray         the ray
+     * @param maxDistance the maximal distance along the ray
+     * @param sink        the sink of the intersections
+     */
+    private void collect(Ray ray, double maxDistance, Consumer<GeoPoint> sink) {
+        GeometryVisitor visitor = g -> {
+            g.findGeoIntersections(ray, maxDistance, sink);
+            return Double.POSITIVE_INFINITY;
+        };
+        for (var g : unbounded)
+            visitor.visit(g);
+        traverse(ray, maxDistance, visitor);
+    }
+}
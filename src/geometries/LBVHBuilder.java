@@ -0,0 +1,259 @@
+package geometries;
+
+import static primitives.Util.spreadBits;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Builder of a Bounding Volume Hierarchy by Morton codes (a linear BVH). The
+ * centers of the geometries' boxes are quantized on a grid of 1024 cells per
+ * axis and their bits are interleaved into 30-bit codes, which order the
+ * geometries along a space filling curve. The codes are sorted by a parallel
+ * radix sort and every node is split where the highest bit of the codes in it
+ * changes.<br/>
+ * The build is much faster than the Surface Area Heuristic but the tree is
+ * worse, so it suits previews and interactive renders. It builds the same
+ * {@link Geometries} nodes as the SAH builder. The sort is stable, so the tree
+ * doesn't depend on the amount of threads
+ *
+ * @author Moy Georgi & Efrat Aharoni
+ */
+final class LBVHBuilder {
+    /** Bits of a Morton code per axis */
+    private static final int BITS = 10;
+    /** Bits of a radix sort pass */
+    private static final int RADIX_BITS = 8;
+    /** Amount of buckets of a radix sort pass */
+    private static final int RADIX = 1 << RADIX_BITS;
+    /** Amount of geometries from which the work is done in parallel */
+    private static final int PARALLEL_THRESHOLD = 4096;
+    /** Amount of geometries in a chunk of a parallel pass */
+    private static final int CHUNK_SIZE = 4096;
+
+    /** The geometries, sorted by their codes */
+    private final Intersectable[] items;
+    /** The sorted Morton codes */
+    private final int[] codes;
+    /** Maximal amount of geometries in a leaf */
+    private final int maxLeafSize;
+
+    /**
+     * Work on a range of a chunk of geometries
+     */
+    private interface ChunkWork {
+        /**
+         * Works on a chunk
+         *
+         * @param chunk the index of the chunk
+         * @param from  the first geometry of the chunk
+         * @param to    the end of the chunk (exclusive)
+         */
+        void run(int chunk, int from, int to);
+    }
+
+    /**
+     * Sorts the geometries by their Morton codes
+     *
+     * @param geometries  the bounded geometries
+     * @param maxLeafSize maximal amount of geometries in a leaf
+     */
+    private LBVHBuilder(List<Intersectable> geometries, int maxLeafSize) {
+        this.maxLeafSize = maxLeafSize;
+        Intersectable[] unsorted = geometries.toArray(new Intersectable[0]);
+        int n = unsorted.length;
+        int chunks = (n + CHUNK_SIZE - 1) / CHUNK_SIZE;
+
+        // bounds of the centers
+        double[][] partMin = new double[chunks][];
+        double[][] partMax = new double[chunks][];
+        parallel(n, (chunk, from, to) -> {
+            double[] min = { Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY };
+            double[] max = { Double.NEGATIVE_INFINITY, Double.NEGATIVE_INFINITY, Double.NEGATIVE_INFINITY };
+            for (int i = from; i < to; ++i)
+                for (int axis = 0; axis < 3; ++axis) {
+                    double c = unsorted[i].box.center(axis);
+                    min[axis] = Math.min(min[axis], c);
+                    max[axis] = Math.max(max[axis], c);
+                }
+            partMin[chunk] = min;
+            partMax[chunk] = max;
+        });
+        double[] min = partMin[0].clone();
+        double[] scale = partMax[0].clone();
+        for (int chunk = 1; chunk < chunks; ++chunk)
+            for (int axis = 0; axis < 3; ++axis) {
+                min[axis] = Math.min(min[axis], partMin[chunk][axis]);
+                scale[axis] = Math.max(scale[axis], partMax[chunk][axis]);
+            }
+        for (int axis = 0; axis < 3; ++axis) {
+            double extent = scale[axis] - min[axis];
+            scale[axis] = extent > 0 ? ((1 << BITS) - 1) / extent : 0;
+        }
+
+        // the codes
+        int[] unsortedKeys = new int[n];
+        parallel(n, (chunk, from, to) -> {
+            for (int i = from; i < to; ++i) {
+                Intersectable.Box b = unsorted[i].box;
+                unsortedKeys[i] = spreadBits((int) ((b.center(0) - min[0]) * scale[0])) << 2
+                        | spreadBits((int) ((b.center(1) - min[1]) * scale[1])) << 1
+                        | spreadBits((int) ((b.center(2) - min[2]) * scale[2]));
+            }
+        });
+
+        // stable radix sort of the codes with the indices of the geometries
+        int[] keys = unsortedKeys;
+        int[] order = new int[n];
+        for (int i = 0; i < n; ++i)
+            order[i] = i;
+        int[] keysTemp = new int[n];
+        int[] orderTemp = new int[n];
+        int[][] counts = new int[chunks][];
+        for (int shift = 0; shift < 3 * BITS; shift += RADIX_BITS) {
+            int[] inKeys = keys, inOrder = order;
+            int digitShift = shift;
+            parallel(n, (chunk, from, to) -> {
+                int[] count = new int[RADIX];
+                for (int i = from; i < to; ++i)
+                    ++count[inKeys[i] >>> digitShift & RADIX - 1];
+                counts[chunk] = count;
+            });
+            // turn the counts into the positions of every bucket of every chunk, the
+            // chunks are ordered inside every bucket
+            int position = 0;
+            for (int digit = 0; digit < RADIX; ++digit)
+                for (int chunk = 0; chunk < chunks; ++chunk) {
+                    int count = counts[chunk][digit];
+                    counts[chunk][digit] = position;
+                    position += count;
+                }
+            int[] outKeys = keysTemp, outOrder = orderTemp;
+            parallel(n, (chunk, from, to) -> {
+                int[] positions = counts[chunk];
+                for (int i = from; i < to; ++i) {
+                    int p = positions[inKeys[i] >>> digitShift & RADIX - 1]++;
+                    outKeys[p] = inKeys[i];
+                    outOrder[p] = inOrder[i];
+                }
+            });
+            keysTemp = keys;
+            orderTemp = order;
+            keys = outKeys;
+            order = outOrder;
+        }
+
+        codes = keys;
+        items = new Intersectable[n];
+        for (int i = 0; i < n; ++i)
+            items[i] = unsorted[order[i]];
+    }
+
+    /**
+     * Builds a hierarchy of geometries by their Morton codes
+     *
+     * @param geometries  the bounded geometries
+     * @param maxLeafSize maximal amount of geometries in a leaf
+     * @return the single geometry if there is only one, otherwise the root node of
+     *         the hierarchy
+     */
+    static Intersectable build(List<Intersectable> geometries, int maxLeafSize) {
+        LBVHBuilder builder = new LBVHBuilder(geometries, maxLeafSize);
+        return ForkJoinPool.commonPool().invoke(builder.new Node(0, builder.items.length));
+    }
+
+    /**
+     * Runs a work over chunks of geometries, in parallel if there are enough
+     * geometries
+     *
+     * @param n    the amount of the geometries
+     * @param work the work of a chunk
+     */
+    private static void parallel(int n, ChunkWork work) {
+        if (n < PARALLEL_THRESHOLD) {
+            work.run(0, 0, n);
+            return;
+        }
+        List<ForkJoinTask<?>> tasks = new ArrayList<>();
+        for (int start = 0, chunk = 0; start < n; start += CHUNK_SIZE, ++chunk) {
+            int from = start, index = chunk, to = Math.min(start + CHUNK_SIZE, n);
+            tasks.add(ForkJoinTask.adapt(() -> work.run(index, from, to)));
+        }
+        ForkJoinTask.invokeAll(tasks);
+    }
+
+    /**
+     * Task building the node of a range of the sorted geometries
+     */
+    private final class Node extends RecursiveTask<Intersectable> {
+        /** Serialization version of the node task */
+        private static final long serialVersionUID = 1L;
+
+        /** The first geometry of the node */
+        private final int from;
+        /** The end of the geometries of the node (exclusive) */
+        private final int to;
+
+        /**
+         * Creates a task building a node
+         *
+         * @param from the first geometry of the node
+         * @param to   the end of the geometries of the node (exclusive)
+         */
+        Node(int from, int to) {
+            this.from = from;
+            this.to = to;
+        }
+
+        /**
+         * Builds the node
+         *
+         * @return the single geometry if there is only one, otherwise the node
+         */
+        @Override
+        protected Intersectable compute() {
+            int n = to - from;
+            if (n == 1)
+                return items[from];
+            if (n <= maxLeafSize)
+                return new Geometries(Arrays.asList(items).subList(from, to));
+
+            int split = split();
+            if (n < PARALLEL_THRESHOLD)
+                return new Geometries(new Node(from, split).compute(), new Node(split, to).compute());
+            Node left = new Node(from, split);
+            left.fork();
+            Intersectable right = new Node(split, to).compute();
+            return new Geometries(left.join(), right);
+        }
+
+        /**
+         * Finds where the highest bit of the codes of the node changes
+         *
+         * @return the index of the first geometry of the second child
+         */
+        private int split() {
+            int first = codes[from];
+            int last = codes[to - 1];
+            // all the codes are equal - split the range in half
+            if (first == last)
+                return (from + to) >>> 1;
+
+            int prefix = Integer.numberOfLeadingZeros(first ^ last);
+            // binary search of the last code with a longer common prefix with the first
+            int lo = from, hi = to - 1;
+            while (hi - lo > 1) {
+                int mid = (lo + hi) >>> 1;
+                if (Integer.numberOfLeadingZeros(first ^ codes[mid]) > prefix)
+                    lo = mid;
+                else
+                    hi = mid;
+            }
+            return hi;
+        }
+    }
+}
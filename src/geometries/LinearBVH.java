@@ -0,0 +1,706 @@
+package geometries;
+
+import java.nio.DoubleBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+import primitives.Double3;
+import primitives.Point;
+import primitives.Ray;
+
+/**
+ * Bounding Volume Hierarchy compiled into flat arrays of primitive values.<br/>
+ * The nodes are stored in depth-first order, so the first child of a node is
+ * always the next node and only the offset of the second child is kept. The
+ * hierarchy is traversed by a loop over an explicit stack instead of recursive
+ * calls through nested {@link Geometries} objects.<br/>
+ * In single precision (see {@link Intersectable#createSinglePrecision(boolean)})
+ * the bounds are kept as floats, rounded outwards so a node never shrinks
+ * around its primitives, in half of the memory.
+ *
+ * @author Moy Georgi & Efrat Aharoni
+ */
+final class LinearBVH extends Intersectable {
+    /** Amount of doubles per node in the bounds array */
+    private static final int BOUNDS_SIZE = 6;
+    /** Amount of integers per node in the nodes array */
+    private static final int NODE_SIZE = 2;
+
+    /**
+     * Bounds of the nodes - minX, maxX, minY, maxY, minZ, maxZ of every node in
+     * depth-first order, null in single precision or while the bounds are mapped
+     */
+    private double[] bounds;
+    /** Bounds of the nodes in single precision, null in double precision */
+    private final float[] floatBounds;
+    /**
+     * Bounds of the nodes in a file mapped into memory (see {@link BVHCache}),
+     * used in place until a refit copies them into {@link #bounds}, null otherwise
+     */
+    private DoubleBuffer mappedBounds = null;
+    /**
+     * Nodes data - for a leaf: index of its first primitive and the amount of its
+     * primitives, for an inner node: index of its second child and zero
+     */
+    private final int[] nodes;
+    /** The primitives of the leaves, ordered by the leaves */
+    private final Intersectable[] primitives;
+    /** Depth of the hierarchy - the size of the traversal stack */
+    private final int depth;
+    /** Parent of every node, -1 for the root */
+    private final int[] parents;
+    /** Leaf of every primitive, for refitting the leaves of moved geometries */
+    private final Map<Intersectable, Integer> leaves = new IdentityHashMap<>();
+    /**
+     * Sum of the surface areas of the inner nodes and of the surface areas of the
+     * leaves times the amount of their primitives
+     */
+    private double areaSum = 0;
+
+    /** Bounds of the nodes during the compilation */
+    private final List<double[]> boundsList = new ArrayList<>();
+    /** Nodes data during the compilation */
+    private final List<int[]> nodesList = new ArrayList<>();
+    /** Primitives during the compilation */
+    private final List<Intersectable> primitivesList = new ArrayList<>();
+
+    /**
+     * Compiles a hierarchy of geometries into flat arrays. Every bounded
+     * {@link Geometries} in the hierarchy becomes a node and every other
+     * geometry becomes a primitive of a leaf
+     *
+     * @param geometries the top level geometries of the hierarchy
+     */
+    LinearBVH(List<Intersectable> geometries) {
+        depth = compile(geometries, 1);
+
+        int size = nodesList.size();
+        double[] compiled = new double[size * BOUNDS_SIZE];
+        nodes = new int[size * NODE_SIZE];
+        for (int i = 0; i < size; ++i) {
+            System.arraycopy(boundsList.get(i), 0, compiled, i * BOUNDS_SIZE, BOUNDS_SIZE);
+            System.arraycopy(nodesList.get(i), 0, nodes, i * NODE_SIZE, NODE_SIZE);
+        }
+        bounds = singlePrecision ? null : compiled;
+        floatBounds = singlePrecision ? toFloats(compiled) : null;
+        primitives = primitivesList.toArray(new Intersectable[0]);
+        boundsList.clear();
+        nodesList.clear();
+        primitivesList.clear();
+        parents = index();
+    }
+
+    /**
+     * Creates a hierarchy from its compiled data, loaded from a {@link BVHCache}.
+     * In double precision the bounds are read in place from the buffer (e.g. a
+     * view of a file mapped into memory) and are copied only by the first refit
+     *
+     * @param bounds     the bounds of the nodes
+     * @param nodes      the nodes data
+     * @param primitives the primitives of the leaves
+     * @param depth      the depth of the hierarchy
+     */
+    LinearBVH(DoubleBuffer bounds, int[] nodes, Intersectable[] primitives, int depth) {
+        if (singlePrecision) {
+            double[] copy = new double[bounds.limit()];
+            bounds.get(0, copy);
+            floatBounds = toFloats(copy);
+        } else {
+            floatBounds = null;
+            mappedBounds = bounds;
+        }
+        this.bounds = null;
+        this.nodes = nodes;
+        this.primitives = primitives;
+        this.depth = depth;
+        parents = index();
+    }
+
+    /**
+     * Finds the leaves of the primitives and sums the areas of the nodes
+     *
+     * @return the parent of every node
+     */
+    private int[] index() {
+        int size = nodes.length / NODE_SIZE;
+        int[] result = new int[size];
+        result[0] = -1;
+        for (int node = 0; node < size; ++node) {
+            int n = node * NODE_SIZE;
+            if (nodes[n + 1] == 0) {
+                result[node + 1] = node;
+                result[nodes[n]] = node;
+            } else
+                for (int i = nodes[n], end = i + nodes[n + 1]; i < end; ++i)
+                    leaves.put(primitives[i], node);
+            areaSum += weightedArea(node);
+        }
+        return result;
+    }
+
+    /**
+     * Returns the bounds of the nodes, a copy widened to doubles in single
+     * precision or copied out of the mapped file
+     *
+     * @return minX, maxX, minY, maxY, minZ, maxZ of every node in depth-first order
+     */
+    double[] bounds() {
+        if (bounds != null)
+            return bounds;
+        if (mappedBounds != null) {
+            double[] result = new double[mappedBounds.limit()];
+            mappedBounds.get(0, result);
+            return result;
+        }
+        double[] result = new double[floatBounds.length];
+        for (int i = 0; i < result.length; ++i)
+            result[i] = floatBounds[i];
+        return result;
+    }
+
+    /**
+     * Returns a bound of a node
+     *
+     * @param i the index of the bound in the bounds array
+     * @return the bound
+     */
+    private double bound(int i) {
+        if (bounds != null)
+            return bounds[i];
+        return floatBounds != null ? floatBounds[i] : mappedBounds.get(i);
+    }
+
+    /**
+     * Sets a bound of a node, in single precision rounded outwards
+     *
+     * @param i     the index of the bound in the bounds array - even for a
+     *              minimum, odd for a maximum
+     * @param value the bound
+     */
+    private void setBound(int i, double value) {
+        // the mapping of the file is read only
+        if (mappedBounds != null) {
+            bounds = bounds();
+            mappedBounds = null;
+        }
+        if (bounds != null)
+            bounds[i] = value;
+        else
+            floatBounds[i] = toFloat(value, i % 2 == 1);
+    }
+
+    /**
+     * Converts bounds to single precision, the minimums rounded down and the
+     * maximums rounded up
+     *
+     * @param bounds the bounds - minimum and maximum along every axis
+     * @return the bounds in single precision
+     */
+    private static float[] toFloats(double[] bounds) {
+        float[] result = new float[bounds.length];
+        for (int i = 0; i < bounds.length; ++i)
+            result[i] = toFloat(bounds[i], i % 2 == 1);
+        return result;
+    }
+
+    /**
+     * Rounds a double to a float which is not on the inner side of it
+     *
+     * @param value the value
+     * @param up    whether to round up (for a maximum) or down (for a minimum)
+     * @return the nearest float not below the value if rounded up, not above it
+     *         otherwise
+     */
+    private static float toFloat(double value, boolean up) {
+        float result = (float) value;
+        if (up && result < value)
+            return Math.nextUp(result);
+        if (!up && result > value)
+            return Math.nextDown(result);
+        return result;
+    }
+
+    /**
+     * Returns the nodes data
+     *
+     * @return for a leaf: index of its first primitive and the amount of its
+     *         primitives, for an inner node: index of its second child and zero
+     */
+    int[] nodes() {
+        return nodes;
+    }
+
+    /**
+     * Returns the depth of the hierarchy
+     *
+     * @return the depth
+     */
+    int depth() {
+        return depth;
+    }
+
+    /**
+     * Returns the primitives of the leaves
+     *
+     * @return the primitives, ordered by the leaves
+     */
+    Intersectable[] primitives() {
+        return primitives;
+    }
+
+    /**
+     * Calculates the surface area of a node, times the amount of its primitives
+     * for a leaf
+     *
+     * @param node the node index
+     * @return the weighted surface area
+     */
+    private double weightedArea(int node) {
+        int o = node * BOUNDS_SIZE;
+        double x = bound(o + 1) - bound(o);
+        double y = bound(o + 3) - bound(o + 2);
+        double z = bound(o + 5) - bound(o + 4);
+        int count = nodes[node * NODE_SIZE + 1];
+        return 2 * (x * y + y * z + z * x) * (count == 0 ? 1 : count);
+    }
+
+    /**
+     * Calculates the SAH cost of the hierarchy relative to its bounds, with unit
+     * costs of traversal and intersection. It grows as moved geometries make the
+     * nodes overlap
+     *
+     * @return the cost of the hierarchy
+     */
+    double cost() {
+        int count = nodes[1];
+        double rootArea = weightedArea(0) / (count == 0 ? 1 : count);
+        return rootArea == 0 ? 0 : areaSum / rootArea;
+    }
+
+    /**
+     * Checks whether a geometry is a primitive of a leaf of the hierarchy
+     *
+     * @param geometry the geometry
+     * @return true if the geometry is in a leaf
+     */
+    boolean contains(Intersectable geometry) {
+        return leaves.containsKey(geometry);
+    }
+
+    /**
+     * Recalculates the bounds of the leaves of moved geometries and of all their
+     * ancestors. The boxes of the geometries must be already updated
+     *
+     * @param moved the moved geometries
+     */
+    void refit(Intersectable... moved) {
+        for (var g : moved) {
+            Integer leaf = leaves.get(g);
+            if (leaf == null)
+                continue;
+            for (int node = leaf; node >= 0; node = parents[node])
+                refitNode(node);
+        }
+    }
+
+    /**
+     * Recalculates the bounds of a node from its primitives or from its children
+     *
+     * @param node the node index
+     */
+    private void refitNode(int node) {
+        areaSum -= weightedArea(node);
+        int o = node * BOUNDS_SIZE;
+        int n = node * NODE_SIZE;
+        if (nodes[n + 1] == 0) {
+            int first = (node + 1) * BOUNDS_SIZE;
+            int second = nodes[n] * BOUNDS_SIZE;
+            for (int i = 0; i < BOUNDS_SIZE; i += 2) {
+                setBound(o + i, Math.min(bound(first + i), bound(second + i)));
+                setBound(o + i + 1, Math.max(bound(first + i + 1), bound(second + i + 1)));
+            }
+        } else {
+            Box box = boundsOf(Arrays.asList(primitives).subList(nodes[n], nodes[n] + nodes[n + 1]));
+            setBound(o, box.minX);
+            setBound(o + 1, box.maxX);
+            setBound(o + 2, box.minY);
+            setBound(o + 3, box.maxY);
+            setBound(o + 4, box.minZ);
+            setBound(o + 5, box.maxZ);
+        }
+        areaSum += weightedArea(node);
+    }
+
+    /**
+     * Emits a node and all its descendants in depth-first order
+     *
+     * @param items the children of the node
+     * @param level the depth of the node
+     * @return the depth of the deepest node of the sub-tree
+     */
+    private int compile(List<Intersectable> items, int level) {
+        List<Intersectable> leaf = new ArrayList<>();
+        List<Geometries> inner = new ArrayList<>();
+        for (var item : items)
+            if (item instanceof Geometries g && g.box != null)
+                inner.add(g);
+            else
+                leaf.add(item);
+
+        if (inner.isEmpty())
+            return emitLeaf(leaf, level);
+        if (leaf.isEmpty() && inner.size() == 1)
+            return compile(inner.get(0).children(), level);
+
+        // an inner node has two children - the first child and all the rest
+        int node = emitNode(boundsOf(items));
+        int first = compile(inner.get(0).children(), level + 1);
+        nodesList.get(node)[0] = nodesList.size();
+        List<Intersectable> rest = new ArrayList<>(items.size());
+        rest.addAll(inner.subList(1, inner.size()));
+        rest.addAll(leaf);
+        return Math.max(first, compile(rest, level + 1));
+    }
+
+    /**
+     * Emits a leaf node
+     *
+     * @param leaf  the primitives of the leaf
+     * @param level the depth of the leaf
+     * @return the depth of the leaf
+     */
+    private int emitLeaf(List<Intersectable> leaf, int level) {
+        int node = emitNode(boundsOf(leaf));
+        nodesList.get(node)[0] = primitivesList.size();
+        nodesList.get(node)[1] = leaf.size();
+        primitivesList.addAll(leaf);
+        return level;
+    }
+
+    /**
+     * Emits a node with the given bounds
+     *
+     * @param box the bounds of the node
+     * @return the index of the node
+     */
+    private int emitNode(Box box) {
+        boundsList.add(new double[] { box.minX, box.maxX, box.minY, box.maxY, box.minZ, box.maxZ });
+        nodesList.add(new int[NODE_SIZE]);
+        return nodesList.size() - 1;
+    }
+
+    /**
+     * Calculates the bounds of a list of geometries, a geometry without a box makes
+     * the bounds infinite
+     *
+     * @param items the geometries
+     * @return the bounding box of the geometries
+     */
+    private static Box boundsOf(List<Intersectable> items) {
+        Box result = new Box();
+        for (var item : items) {
+            if (item.box == null)
+                return new Box(Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY, //
+                        Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY, //
+                        Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY);
+            result.extend(item.box);
+        }
+        return result;
+    }
+
+    /**
+     * Finds the distance along a ray where it enters the bounds of a node, by the
+     * slab test over the inverse direction and the sign bits of the ray (see
+     * {@link Box#entry(Ray, double, double)})
+     *
+     * @param node        the node index
+     * @param ray         the ray
+     * @param maxDistance the maximal distance along the ray
+     * @return the entry distance, or positive infinity if the ray misses the node
+     *         within the maximal distance
+     */
+    private double entry(int node, Ray ray, double maxDistance) {
+        int o = node * BOUNDS_SIZE;
+        Point head = ray.getHead();
+        double tNear = 0;
+        double tFar = maxDistance;
+        double t;
+
+        double ox = head.getX();
+        t = (bound(o + ray.signX) - ox) * ray.inverseX;
+        tNear = t > tNear ? t : tNear;
+        t = (bound(o + 1 - ray.signX) - ox) * ray.inverseX;
+        tFar = t < tFar ? t : tFar;
+
+        double oy = head.getY();
+        t = (bound(o + 2 + ray.signY) - oy) * ray.inverseY;
+        tNear = t > tNear ? t : tNear;
+        t = (bound(o + 3 - ray.signY) - oy) * ray.inverseY;
+        tFar = t < tFar ? t : tFar;
+
+        double oz = head.getZ();
+        t = (bound(o + 4 + ray.signZ) - oz) * ray.inverseZ;
+        tNear = t > tNear ? t : tNear;
+        t = (bound(o + 5 - ray.signZ) - oz) * ray.inverseZ;
+        tFar = t < tFar ? t : tFar;
+
+        return tNear <= tFar ? tNear : Double.POSITIVE_INFINITY;
+    }
+
+    @Override
+    protected List<GeoPoint> findGeoIntersectionsHelper(Ray ray, double maxDistance) {
+        return collectGeoIntersections(ray, maxDistance);
+    }
+
+    @Override
+    protected void findGeoIntersectionsHelper(Ray ray, double maxDistance, Consumer<GeoPoint> sink) {
+        int[] stack = new int[depth + 1];
+        int top = 0;
+        stack[top++] = 0;
+        while (top > 0) {
+            int node = stack[--top];
+            if (entry(node, ray, maxDistance) == Double.POSITIVE_INFINITY)
+                continue;
+
+            int n = node * NODE_SIZE;
+            int count = nodes[n + 1];
+            if (count == 0) { // inner node
+                stack[top++] = nodes[n];
+                stack[top++] = node + 1;
+                continue;
+            }
+
+            for (int i = nodes[n], end = i + count; i < end; ++i)
+                primitives[i].findGeoIntersections(ray, maxDistance, sink);
+        }
+    }
+
+    @Override
+    protected GeoPoint findClosestIntersectionHelper(Ray ray, double maxDistance) {
+        GeoPoint closest = null;
+        // the nodes to visit and the distances where the ray enters them
+        int[] stack = new int[depth + 1];
+        double[] entries = new double[depth + 1];
+        int top = 0;
+        double rootEntry = entry(0, ray, maxDistance);
+        if (rootEntry == Double.POSITIVE_INFINITY)
+            return null;
+        stack[top] = 0;
+        entries[top++] = rootEntry;
+        while (top > 0) {
+            int node = stack[--top];
+            // a closer point may have been found since the node was pushed
+            if (entries[top] >= maxDistance)
+                continue;
+
+            int n = node * NODE_SIZE;
+            int count = nodes[n + 1];
+            if (count == 0) { // inner node - push the farther child first
+                int first = node + 1;
+                int second = nodes[n];
+                double firstEntry = entry(first, ray, maxDistance);
+                double secondEntry = entry(second, ray, maxDistance);
+                if (firstEntry > secondEntry) {
+                    int node1 = first;
+                    first = second;
+                    second = node1;
+                    double entry1 = firstEntry;
+                    firstEntry = secondEntry;
+                    secondEntry = entry1;
+                }
+                if (secondEntry < maxDistance) {
+                    stack[top] = second;
+                    entries[top++] = secondEntry;
+                }
+                if (firstEntry < maxDistance) {
+                    stack[top] = first;
+                    entries[top++] = firstEntry;
+                }
+                continue;
+            }
+
+            for (int i = nodes[n], end = i + count; i < end; ++i) {
+                GeoPoint gp = primitives[i].findClosestIntersection(ray, maxDistance);
+                if (gp != null) {
+                    closest = gp;
+                    maxDistance = gp.getDistance();
+                }
+            }
+        }
+        return closest;
+    }
+
+    /**
+     * Traverses the hierarchy once for a packet of rays. A node is culled for the
+     * whole packet by interval arithmetic - the ranges of the heads and of the
+     * inverse directions of the rays bound the distances where any ray of the
+     * packet may enter and leave the node. A node that passes is checked from the
+     * first ray which still hits it, the rays before it are skipped in the whole
+     * sub-tree, and a leaf is intersected by every remaining ray that hits it.
+     * A packet whose directions differ in sign along an axis (or are parallel to
+     * an axis) can't be bounded so, and its rays are traced one by one
+     *
+     * @param rays the rays of the packet
+     * @return the closest point of every ray, null for a ray without
+     *         intersections
+     */
+    @Override
+    public GeoPoint[] findClosestIntersections(Ray[] rays) {
+        int n = rays.length;
+        // ranges of the heads and of the inverse directions of the packet
+        double[] range = { Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY,
+                Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY };
+        double[] inverse = range.clone();
+        for (Ray ray : rays) {
+            Point head = ray.getHead();
+            include(range, 0, head.getX());
+            include(range, 2, head.getY());
+            include(range, 4, head.getZ());
+            include(inverse, 0, ray.inverseX);
+            include(inverse, 2, ray.inverseY);
+            include(inverse, 4, ray.inverseZ);
+        }
+        for (int axis = 0; axis < BOUNDS_SIZE; axis += 2)
+            if (Double.isInfinite(inverse[axis]) || Double.isInfinite(inverse[axis + 1])
+                    || inverse[axis] < 0 && inverse[axis + 1] > 0)
+                return super.findClosestIntersections(rays);
+
+        GeoPoint[] closest = new GeoPoint[n];
+        double[] maxDistances = new double[n];
+        Arrays.fill(maxDistances, Double.POSITIVE_INFINITY);
+        double packetMax = Double.POSITIVE_INFINITY;
+        // the nodes to visit and the first ray of the packet which may hit them
+        int[] stack = new int[depth + 1];
+        int[] firsts = new int[depth + 1];
+        int top = 0;
+        stack[top] = 0;
+        firsts[top++] = 0;
+        while (top > 0) {
+            int node = stack[--top];
+            int first = firsts[top];
+            if (packetMisses(node, range, inverse, packetMax))
+                continue;
+            while (first < n && entry(node, rays[first], maxDistances[first]) == Double.POSITIVE_INFINITY)
+                ++first;
+            if (first == n)
+                continue;
+
+            int nd = node * NODE_SIZE;
+            int count = nodes[nd + 1];
+            if (count == 0) { // inner node - push the farther child for the first ray first
+                int near = node + 1;
+                int far = nodes[nd];
+                if (entry(near, rays[first], maxDistances[first])
+                        > entry(far, rays[first], maxDistances[first])) {
+                    far = near;
+                    near = nodes[nd];
+                }
+                stack[top] = far;
+                firsts[top++] = first;
+                stack[top] = near;
+                firsts[top++] = first;
+                continue;
+            }
+
+            for (int r = first; r < n; ++r) {
+                if (entry(node, rays[r], maxDistances[r]) == Double.POSITIVE_INFINITY)
+                    continue;
+                for (int i = nodes[nd], end = i + count; i < end; ++i) {
+                    GeoPoint gp = primitives[i].findClosestIntersection(rays[r], maxDistances[r]);
+                    if (gp != null) {
+                        closest[r] = gp;
+                        maxDistances[r] = gp.getDistance();
+                    }
+                }
+            }
+            packetMax = 0;
+            for (double max : maxDistances)
+                packetMax = Math.max(packetMax, max);
+        }
+        return closest;
+    }
+
+    /**
+     * Extends a range of values along an axis to include a value
+     *
+     * @param range the ranges - minimum and maximum of every axis
+     * @param o     the offset of the axis in the ranges
+     * @param value the value
+     */
+    private static void include(double[] range, int o, double value) {
+        if (value < range[o])
+            range[o] = value;
+        if (value > range[o + 1])
+            range[o + 1] = value;
+    }
+
+    /**
+     * Checks by interval arithmetic whether all the rays of a packet miss the
+     * bounds of a node. The inverse directions of the packet must have the same
+     * sign along every axis
+     *
+     * @param node        the node index
+     * @param heads       the ranges of the heads of the rays along the axes
+     * @param inverse     the ranges of the inverse directions along the axes
+     * @param maxDistance the maximal distance of all the rays
+     * @return true if no ray of the packet may hit the node
+     */
+    private boolean packetMisses(int node, double[] heads, double[] inverse, double maxDistance) {
+        int o = node * BOUNDS_SIZE;
+        double tNear = 0;
+        double tFar = maxDistance;
+        for (int axis = 0; axis < BOUNDS_SIZE; axis += 2) {
+            // a ray enters through the near plane and leaves through the far one
+            boolean positive = inverse[axis] > 0;
+            double nearPlane = bound(o + (positive ? axis : axis + 1));
+            double farPlane = bound(o + (positive ? axis + 1 : axis));
+            tNear = Math.max(tNear, Math.min( //
+                    Math.min((nearPlane - heads[axis]) * inverse[axis], (nearPlane - heads[axis]) * inverse[axis + 1]),
+                    Math.min((nearPlane - heads[axis + 1]) * inverse[axis],
+                            (nearPlane - heads[axis + 1]) * inverse[axis + 1])));
+            tFar = Math.min(tFar, Math.max( //
+                    Math.max((farPlane - heads[axis]) * inverse[axis], (farPlane - heads[axis]) * inverse[axis + 1]),
+                    Math.max((farPlane - heads[axis + 1]) * inverse[axis],
+                            (farPlane - heads[axis + 1]) * inverse[axis + 1])));
+            if (tNear > tFar)
+                return true;
+        }
+        return false;
+    }
+
+    @Override
+    protected Double3 findTransparencyHelper(Ray ray, double maxDistance, double minK) {
+        Double3 ktr = Double3.ONE;
+        int[] stack = new int[depth + 1];
+        int top = 0;
+        stack[top++] = 0;
+        while (top > 0) {
+            int node = stack[--top];
+            if (entry(node, ray, maxDistance) == Double.POSITIVE_INFINITY)
+                continue;
+
+            int n = node * NODE_SIZE;
+            int count = nodes[n + 1];
+            if (count == 0) { // inner node
+                stack[top++] = nodes[n];
+                stack[top++] = node + 1;
+                continue;
+            }
+
+            for (int i = nodes[n], end = i + count; i < end; ++i) {
+                Double3 kt = primitives[i].findTransparency(ray, maxDistance, minK);
+                if (kt == Double3.ONE)
+                    continue;
+                ktr = ktr.product(kt);
+                // stop at the first opaque geometry
+                if (ktr.lowerThan(minK))
+                    return Double3.ZERO;
+            }
+        }
+        return ktr;
+    }
+}
@@ -0,0 +1,53 @@
+package geometries;
+
+import java.util.Arrays;
+
+/**
+ * Stamps of the geometries of an acceleration structure which were already
+ * tested by the current ray of a thread, so a geometry referenced from several
+ * cells is tested once per ray
+ *
+ * @author Moy Georgi & Efrat Aharoni
+ */
+final class Mailbox {
+    /** The ray that tested every geometry last */
+    private final int[] stamps;
+    /** The current ray */
+    private int ray = 0;
+
+    /**
+     * Creates the stamps for the geometries of an acceleration structure
+     *
+     * @param size the amount of the geometries
+     */
+    Mailbox(int size) {
+        stamps = new int[size];
+    }
+
+    /**
+     * Starts a new ray
+     *
+     * @return the stamp of the new ray
+     */
+    int start() {
+        if (++ray == 0) { // the counter wrapped around - reset the stamps
+            Arrays.fill(stamps, 0);
+            ray = 1;
+        }
+        return ray;
+    }
+
+    /**
+     * Marks a geometry as tested by a ray
+     *
+     * @param item  the index of the geometry
+     * @param stamp the stamp of the ray
+     * @return true if the geometry wasn't tested by the ray before
+     */
+    boolean mark(int item, int stamp) {
+        if (stamps[item] == stamp)
+            return false;
+        stamps[item] = stamp;
+        return true;
+    }
+}
@@ -2,10 +2,12 @@ package geometries;
 
 import primitives.Point;
 import primitives.Ray;
+import primitives.Vec3;
 import primitives.Vector;
 import primitives.Util;
 
 import java.util.List;
+import java.util.function.Consumer;
 
 import static primitives.Util.*;
 
@@ -60,35 +62,20 @@ public class Plane extends Geometry {
 
     @Override
     public List<GeoPoint> findGeoIntersectionsHelper(Ray ray, double maxDistance) {
+        return collectGeoIntersections(ray, maxDistance);
+    }
+
+    @Override
+    protected void findGeoIntersectionsHelper(Ray ray, double maxDistance, Consumer<GeoPoint> sink) {
         Point rayHead = ray.getHead();
         if (p.equals(ray.getHead()))
-            return null;
+            return;
         Vector v = ray.getDirection();
         double nv = normal.dotProduct(v);
         if (isZero(nv))
-            return null;
-        double t = alignZero((normal.dotProduct((p.subtract(ray.getHead())))) / (nv));
-        return t <= 0 || Util.alignZero(t - maxDistance) >= 0 ? null : List.of(new GeoPoint(this, ray.getPoint(t)));
-    }
-
-    @Override
-    public List<GeoPoint> findGeoIntersectionsHelper(Ray ray) {
-        // get ray point and vector
-        Point pray = ray.getHead();
-        Vector v = ray.getDirection();
-
-        // check if the ray is parallel to the plane
-        if (isZero(normal.dotProduct(v))) // if dotProduct = 0
-            return null;
-
-        try {
-            double t = alignZero((normal.dotProduct(p.subtract(pray))) / (normal.dotProduct(v)));
-            // if the the ray starts on the plane or doesn't cross the plane - return null
-            return t <= 0 ? null : List.of(new GeoPoint(this, ray.getPoint(t)));
-
-        } catch (IllegalArgumentException ex) {
-            // if p.subtract(p0ray) is vector zero, if p0ray=p0
-            return null;
-        }
+            return;
+        double t = alignZero(new Vec3().subtract(p, rayHead).dot(normal) / (nv));
+        if (t > 0 && Util.alignZero(t - maxDistance) < 0)
+            sink.accept(new GeoPoint(this, ray, t));
     }
 }
@@ -1,12 +1,14 @@
 package geometries;
 
 import java.util.List;
+import java.util.function.Consumer;
 
 import static primitives.Util.alignZero;
 import static primitives.Util.isZero;
 
 import primitives.Point;
 import primitives.Ray;
+import primitives.Vec3;
 import primitives.Vector;
 
 /**
@@ -16,11 +18,20 @@ import primitives.Vector;
  */
 public class Polygon extends Geometry {
    /** List of polygon's vertices */
-   protected final List<Point> vertices;
+   protected List<Point> vertices;
    /** Associated plane in which the polygon lays */
-   protected final Plane       plane;
+   protected Plane       plane;
    /** The size of the polygon - the amount of the vertices in the polygon */
    private final int           size;
+   /**
+    * Planes of the edges - for every edge the unit normal inside the plane of the
+    * polygon, pointing into the polygon (x, y, z), and its dot product with the
+    * first vertex of the edge. A point of the plane is inside the polygon if its
+    * distance from all the edge planes is positive
+    */
+   private double[]            edgePlanes;
+   /** Amount of doubles per edge in the edge planes array */
+   private static final int    EDGE_SIZE = 4;
 
    /**
     * Polygon constructor based on vertices list. The list must be ordered by edge
@@ -55,6 +66,7 @@ public class Polygon extends Geometry {
       // polygon with this plane.
       // The plane holds the invariant normal (orthogonal unit) vector to the polygon
       plane         = new Plane(vertices[0], vertices[1], vertices[2]);
+      edgePlanes    = edgePlanes(vertices, plane.getNormal());
       if (size == 3) return; // no need for more tests for a Triangle
 
       Vector  n        = plane.getNormal();
@@ -83,42 +95,105 @@ public class Polygon extends Geometry {
       }
    }
 
+   /**
+    * Moves the polygon by an offset. The geometries containing the polygon must
+    * be refitted by {@link Geometries#refit(Intersectable...)}
+    * @param  offset the offset of all the vertices
+    * @return        the polygon itself
+    */
+   public Polygon move(Vector offset) {
+      Point[] moved = new Point[size];
+      for (int i = 0; i < size; ++i)
+         moved[i] = vertices.get(i).add(offset);
+      replaceVertices(moved);
+      return this;
+   }
+
+   /**
+    * Replaces the vertices of the polygon, the new vertices must keep the polygon
+    * valid
+    * @param vertices the new vertices
+    */
+   protected void replaceVertices(Point... vertices) {
+      plane         = new Plane(vertices[0], vertices[1], vertices[2]);
+      edgePlanes    = edgePlanes(vertices, plane.getNormal());
+      this.vertices = List.of(vertices);
+      if (cbr)
+         createBox();
+   }
+
+   /**
+    * Calculates the planes of the edges of a polygon. The normal of the plane of
+    * the polygon is the cross product of its first two edges, so the cross product
+    * of the normal with every edge of the convex polygon points into it
+    * @param  vertices the vertices of the polygon
+    * @param  normal   the normal of the plane of the polygon
+    * @return          the edge planes - the inner unit normal and its dot product
+    *                  with the first vertex of every edge
+    */
+   private static double[] edgePlanes(Point[] vertices, Vector normal) {
+      double[] result = new double[vertices.length * EDGE_SIZE];
+      for (int i = 0; i < vertices.length; ++i) {
+         Point   from = vertices[i];
+         Vector  edge = vertices[(i + 1) % vertices.length].subtract(from);
+         Vector  m    = normal.crossProduct(edge).normalize();
+         int     o    = i * EDGE_SIZE;
+         result[o]     = m.getX();
+         result[o + 1] = m.getY();
+         result[o + 2] = m.getZ();
+         result[o + 3] = result[o] * from.getX() + result[o + 1] * from.getY() + result[o + 2] * from.getZ();
+      }
+      return result;
+   }
+
    @Override
    public Vector getNormal(Point point) { return plane.getNormal(); }
 
    @Override
    public List<GeoPoint> findGeoIntersectionsHelper(Ray ray, double maxDistance) {
-      return null;
+      GeoPoint gp = intersect(ray, maxDistance);
+      return gp == null ? null : List.of(gp);
+   }
+
+   @Override
+   protected void findGeoIntersectionsHelper(Ray ray, double maxDistance, Consumer<GeoPoint> sink) {
+      GeoPoint gp = intersect(ray, maxDistance);
+      if (gp != null)
+         sink.accept(gp);
    }
 
    @Override
-   public List<GeoPoint> findGeoIntersectionsHelper(Ray ray) {
-      List<GeoPoint> intersections = plane.findGeoIntersections(ray);
-      if (intersections == null)
+   protected GeoPoint findClosestIntersectionHelper(Ray ray, double maxDistance) {
+      return intersect(ray, maxDistance);
+   }
+
+   /**
+    * Intersects the polygon on its precomputed data - the distance along the ray
+    * to the plane of the polygon, then the distances of the point from the edge
+    * planes. A point on an edge or a vertex is not an intersection
+    * @param  ray         the ray
+    * @param  maxDistance the maximal distance from the ray head
+    * @return             the intersection, null if there is none
+    */
+   private GeoPoint intersect(Ray ray, double maxDistance) {
+      Vector normal = plane.normal;
+      Vector v      = ray.getDirection();
+      double nv     = normal.dotProduct(v);
+      if (isZero(nv))
+         return null; // the ray is parallel to the plane
+
+      // the same distance as the plane of the polygon finds
+      Point  p0 = ray.getHead();
+      double t  = alignZero(new Vec3().subtract(plane.p, p0).dot(normal) / nv);
+      if (t <= 0 || alignZero(t - maxDistance) >= 0)
          return null;
 
-      Point p0 = ray.getHead();
-      Vector v = ray.getDirection();
-
-      Vector v1 = vertices.get(1).subtract(p0);
-      Vector v2 = vertices.get(0).subtract(p0);
-      double sign = v.dotProduct(v1.crossProduct(v2));
-      if (isZero(sign))
-         return null;// ray contain in the plane of v1,v2
-      boolean positive = sign > 0;
-
-      for (int i = vertices.size() - 1; i > 0; --i) {
-         v1 = v2;
-         v2 = vertices.get(i).subtract(p0);
-         sign = alignZero(v.dotProduct(v1.crossProduct(v2)));
-         if (sign == 0)
-            return null;
-         if (positive != (sign > 0))
+      // the coordinates of the point as the ray calculates them, without the point
+      double x = p0.getX() + v.getX() * t, y = p0.getY() + v.getY() * t, z = p0.getZ() + v.getZ() * t;
+      for (int o = 0; o < edgePlanes.length; o += EDGE_SIZE)
+         if (alignZero(edgePlanes[o] * x + edgePlanes[o + 1] * y + edgePlanes[o + 2] * z - edgePlanes[o + 3]) <= 0)
             return null;
-      }
-      for (GeoPoint geo : intersections)
-         geo.geometry = this;
-      return intersections;
+      return new GeoPoint(this, ray, t);
    }
 
    /**
@@ -0,0 +1,467 @@
+package geometries;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Builder of a Bounding Volume Hierarchy with spatial splits (SBVH). Every node
+ * is split by the cheapest of two kinds of splits by the Surface Area
+ * Heuristic:
+ * <ul>
+ * <li>an object split - the geometries are divided by the centers of their
+ * boxes, like {@link Geometries#createBVH()}</li>
+ * <li>a spatial split - the space is divided by a plane, and a geometry
+ * crossing the plane is referenced from both sides, each side bounding only
+ * the part of the geometry clipped to it</li>
+ * </ul>
+ * Spatial splits are tried only where the children of the object split overlap
+ * by more than the overlap budget (a fraction of the surface area of the whole
+ * scene), and the total amount of references is limited, so large polygons
+ * stop overlapping every node without the tree growing much.
+ *
+ * @author Moy Georgi & Efrat Aharoni
+ */
+final class SBVHBuilder {
+    /** Number of bins per axis of both kinds of splits */
+    private static final int BINS = 16;
+    /** Maximal ratio of the amount of references to the amount of geometries */
+    private static final double MAX_DUPLICATION = 2;
+    /** Maximal depth of the tree */
+    private static final int MAX_DEPTH = 64;
+
+    /**
+     * Reference to a geometry or to a part of it
+     */
+    private static final class Reference {
+        /** The geometry */
+        private final Intersectable geometry;
+        /** Bounds of the referenced part - minX, maxX, minY, maxY, minZ, maxZ */
+        private final double[] bounds;
+        /** The cell of the part, null if the geometry wasn't split */
+        private final double[] cell;
+
+        /**
+         * Creates a reference
+         *
+         * @param geometry the geometry
+         * @param bounds   bounds of the referenced part
+         * @param cell     the cell of the part, null if the geometry wasn't split
+         */
+        Reference(Intersectable geometry, double[] bounds, double[] cell) {
+            this.geometry = geometry;
+            this.bounds = bounds;
+            this.cell = cell;
+        }
+
+        /**
+         * Returns the center of the referenced part along an axis
+         *
+         * @param axis the axis
+         * @return the center
+         */
+        double center(int axis) {
+            return (bounds[2 * axis] + bounds[2 * axis + 1]) / 2;
+        }
+    }
+
+    /** Maximal amount of geometries in a leaf */
+    private final int maxLeafSize;
+    /** SAH cost of traversing a node */
+    private final double traversalCost;
+    /** SAH cost of intersecting a single geometry */
+    private final double intersectionCost;
+    /** Overlap of children from which spatial splits are tried, as surface area */
+    private final double minOverlap;
+    /** Maximal amount of references */
+    private final int maxReferences;
+    /** Current amount of references */
+    private int references;
+
+    /**
+     * Creates a builder
+     *
+     * @param count            the amount of the geometries
+     * @param rootArea         the surface area of the bounds of all the
+     *                         geometries
+     * @param maxLeafSize      maximal amount of geometries in a leaf
+     * @param traversalCost    SAH cost of traversing a node
+     * @param intersectionCost SAH cost of intersecting a single geometry
+     * @param overlapBudget    fraction of the surface area of all the geometries
+     *                         from which spatial splits are tried
+     */
+    private SBVHBuilder(int count, double rootArea, int maxLeafSize, double traversalCost, double intersectionCost,
+                        double overlapBudget) {
+        this.maxLeafSize = maxLeafSize;
+        this.traversalCost = traversalCost;
+        this.intersectionCost = intersectionCost;
+        minOverlap = overlapBudget * rootArea;
+        maxReferences = (int) (count * MAX_DUPLICATION);
+        references = count;
+    }
+
+    /**
+     * Builds a hierarchy with spatial splits
+     *
+     * @param geometries       the bounded geometries
+     * @param maxLeafSize      maximal amount of geometries in a leaf
+     * @param traversalCost    SAH cost of traversing a node
+     * @param intersectionCost SAH cost of intersecting a single geometry
+     * @param overlapBudget    fraction of the surface area of all the geometries
+     *                         from which spatial splits are tried
+     * @return the single geometry if there is only one, otherwise the root node of
+     *         the hierarchy
+     */
+    static Intersectable build(List<Intersectable> geometries, int maxLeafSize, double traversalCost,
+                               double intersectionCost, double overlapBudget) {
+        List<Reference> refs = new ArrayList<>(geometries.size());
+        double[] all = empty();
+        for (var g : geometries) {
+            Intersectable.Box b = g.box;
+            double[] bounds = { b.minX, b.maxX, b.minY, b.maxY, b.minZ, b.maxZ };
+            refs.add(new Reference(g, bounds, null));
+            extend(all, bounds);
+        }
+        return new SBVHBuilder(refs.size(), area(all), maxLeafSize, traversalCost, intersectionCost, overlapBudget)
+                .build(refs, 0);
+    }
+
+    /**
+     * Creates empty bounds
+     *
+     * @return the bounds
+     */
+    private static double[] empty() {
+        return new double[] { Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY,
+                Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY };
+    }
+
+    /**
+     * Extends bounds to contain other bounds
+     *
+     * @param bounds the bounds to extend
+     * @param other  the other bounds
+     */
+    private static void extend(double[] bounds, double[] other) {
+        for (int i = 0; i < 6; i += 2) {
+            bounds[i] = Math.min(bounds[i], other[i]);
+            bounds[i + 1] = Math.max(bounds[i + 1], other[i + 1]);
+        }
+    }
+
+    /**
+     * Calculates the surface area of bounds
+     *
+     * @param b the bounds
+     * @return the surface area, 0 for empty bounds
+     */
+    private static double area(double[] b) {
+        double x = b[1] - b[0], y = b[3] - b[2], z = b[5] - b[4];
+        if (x < 0 || y < 0 || z < 0)
+            return 0;
+        return 2 * (x * y + y * z + z * x);
+    }
+
+    /**
+     * Builds a sub-tree
+     *
+     * @param refs  the references of the sub-tree
+     * @param depth the depth of the sub-tree root
+     * @return the single geometry if there is only one reference, otherwise the
+     *         root node of the sub-tree
+     */
+    private Intersectable build(List<Reference> refs, int depth) {
+        int n = refs.size();
+        if (n == 1)
+            return leafItem(refs.get(0));
+
+        double[] bounds = empty();
+        double[] centers = empty();
+        for (var r : refs) {
+            extend(bounds, r.bounds);
+            for (int axis = 0; axis < 3; ++axis) {
+                double c = r.center(axis);
+                centers[2 * axis] = Math.min(centers[2 * axis], c);
+                centers[2 * axis + 1] = Math.max(centers[2 * axis + 1], c);
+            }
+        }
+        double parentArea = area(bounds);
+
+        // the best object split
+        double objectCost = Double.POSITIVE_INFINITY;
+        int objectAxis = -1, objectBin = 0;
+        double overlap = 0;
+        for (int axis = 0; axis < 3; ++axis) {
+            double extent = centers[2 * axis + 1] - centers[2 * axis];
+            if (extent <= 0)
+                continue;
+            int[] counts = new int[BINS];
+            double[][] bins = new double[BINS][];
+            for (int i = 0; i < BINS; ++i)
+                bins[i] = empty();
+            for (var r : refs) {
+                int bin = binOf(r.center(axis), centers[2 * axis], extent);
+                ++counts[bin];
+                extend(bins[bin], r.bounds);
+            }
+            double[][] right = new double[BINS][];
+            int[] rightCounts = new int[BINS];
+            double[] acc = empty();
+            int count = 0;
+            for (int i = BINS - 1; i > 0; --i) {
+                extend(acc, bins[i]);
+                count += counts[i];
+                right[i] = acc.clone();
+                rightCounts[i] = count;
+            }
+            double[] left = empty();
+            count = 0;
+            for (int i = 0; i < BINS - 1; ++i) {
+                extend(left, bins[i]);
+                count += counts[i];
+                if (count == 0 || rightCounts[i + 1] == 0)
+                    continue;
+                double cost = traversalCost + intersectionCost
+                        * (area(left) * count + area(right[i + 1]) * rightCounts[i + 1]) / parentArea;
+                if (cost < objectCost) {
+                    objectCost = cost;
+                    objectAxis = axis;
+                    objectBin = i;
+                    double[] both = { Math.max(left[0], right[i + 1][0]), Math.min(left[1], right[i + 1][1]),
+                            Math.max(left[2], right[i + 1][2]), Math.min(left[3], right[i + 1][3]),
+                            Math.max(left[4], right[i + 1][4]), Math.min(left[5], right[i + 1][5]) };
+                    overlap = area(both);
+                }
+            }
+        }
+
+        // the best spatial split, if the children of the object split overlap too
+        // much and the references budget isn't over
+        double spatialCost = Double.POSITIVE_INFINITY;
+        int spatialAxis = -1;
+        double spatialPlane = 0;
+        if ((objectAxis < 0 || overlap > minOverlap) && references < maxReferences && depth < MAX_DEPTH)
+            for (int axis = 0; axis < 3; ++axis) {
+                double lo = bounds[2 * axis], width = (bounds[2 * axis + 1] - lo) / BINS;
+                if (width <= 0)
+                    continue;
+                int[] entries = new int[BINS];
+                int[] exits = new int[BINS];
+                double[][] bins = new double[BINS][];
+                for (int i = 0; i < BINS; ++i)
+                    bins[i] = empty();
+                for (var r : refs) {
+                    int first = Math.min(BINS - 1, Math.max(0, (int) ((r.bounds[2 * axis] - lo) / width)));
+                    int last = Math.min(BINS - 1, Math.max(first, (int) ((r.bounds[2 * axis + 1] - lo) / width)));
+                    ++entries[first];
+                    ++exits[last];
+                    for (int i = first; i <= last; ++i) {
+                        double[] part = first == last ? r.bounds
+                                : clip(r, axis, lo + i * width, i == last ? bounds[2 * axis + 1] : lo + (i + 1) * width);
+                        if (part != null)
+                            extend(bins[i], part);
+                    }
+                }
+                double[][] right = new double[BINS][];
+                int[] rightCounts = new int[BINS];
+                double[] acc = empty();
+                int count = 0;
+                for (int i = BINS - 1; i > 0; --i) {
+                    extend(acc, bins[i]);
+                    count += exits[i];
+                    right[i] = acc.clone();
+                    rightCounts[i] = count;
+                }
+                double[] left = empty();
+                count = 0;
+                for (int i = 0; i < BINS - 1; ++i) {
+                    extend(left, bins[i]);
+                    count += entries[i];
+                    int rightCount = rightCounts[i + 1];
+                    // a split that doesn't reduce any side doesn't end
+                    if (count == 0 || rightCount == 0 || count == n && rightCount == n)
+                        continue;
+                    double cost = traversalCost + intersectionCost
+                            * (area(left) * count + area(right[i + 1]) * rightCount) / parentArea;
+                    if (cost < spatialCost) {
+                        spatialCost = cost;
+                        spatialAxis = axis;
+                        spatialPlane = lo + (i + 1) * width;
+                    }
+                }
+            }
+
+        double bestCost = Math.min(objectCost, spatialCost);
+        // a leaf is cheaper than any split
+        if (n <= maxLeafSize && bestCost >= intersectionCost * n || depth >= MAX_DEPTH)
+            return leaf(refs);
+
+        List<Reference> left = new ArrayList<>();
+        List<Reference> right = new ArrayList<>();
+        if (spatialCost < objectCost)
+            splitSpatial(refs, spatialAxis, spatialPlane, left, right);
+        else if (objectAxis >= 0) {
+            double extent = centers[2 * objectAxis + 1] - centers[2 * objectAxis];
+            for (var r : refs)
+                (binOf(r.center(objectAxis), centers[2 * objectAxis], extent) <= objectBin ? left : right).add(r);
+        } else {
+            // all the centers are at the same point - split the list in half
+            left.addAll(refs.subList(0, n / 2));
+            right.addAll(refs.subList(n / 2, n));
+        }
+        return new Geometries(build(left, depth + 1), build(right, depth + 1));
+    }
+
+    /**
+     * Divides references by a plane, a reference crossing the plane is split
+     * into a reference to each side
+     *
+     * @param refs  the references
+     * @param axis  the axis of the plane
+     * @param plane the position of the plane
+     * @param left  gets the references below the plane
+     * @param right gets the references above the plane
+     */
+    private void splitSpatial(List<Reference> refs, int axis, double plane, List<Reference> left,
+                              List<Reference> right) {
+        for (var r : refs) {
+            if (r.bounds[2 * axis + 1] <= plane)
+                left.add(r);
+            else if (r.bounds[2 * axis] >= plane)
+                right.add(r);
+            else {
+                double[] below = clip(r, axis, Double.NEGATIVE_INFINITY, plane);
+                double[] above = clip(r, axis, plane, Double.POSITIVE_INFINITY);
+                if (below == null)
+                    right.add(new Reference(r.geometry, above, r.cell));
+                else if (above == null)
+                    left.add(new Reference(r.geometry, below, r.cell));
+                else {
+                    double[] cell = r.cell != null ? r.cell
+                            : new double[] { Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY,
+                                    Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY, //
+                                    Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY };
+                    double[] belowCell = cell.clone();
+                    belowCell[2 * axis + 1] = Math.min(cell[2 * axis + 1], plane);
+                    double[] aboveCell = cell.clone();
+                    aboveCell[2 * axis] = Math.max(cell[2 * axis], plane);
+                    left.add(new Reference(r.geometry, below, belowCell));
+                    right.add(new Reference(r.geometry, above, aboveCell));
+                    ++references;
+                }
+            }
+        }
+    }
+
+    /**
+     * Clips a reference to a slab. A polygon is clipped exactly, other geometries
+     * are clipped by their bounds
+     *
+     * @param r    the reference
+     * @param axis the axis of the slab
+     * @param min  the minimum of the slab
+     * @param max  the maximum of the slab
+     * @return the bounds of the clipped part, null if nothing is left
+     */
+    private static double[] clip(Reference r, int axis, double min, double max) {
+        double[] region = r.bounds.clone();
+        region[2 * axis] = Math.max(region[2 * axis], min);
+        region[2 * axis + 1] = Math.min(region[2 * axis + 1], max);
+        if (region[2 * axis] > region[2 * axis + 1])
+            return null;
+        if (!(r.geometry instanceof Polygon polygon))
+            return region;
+
+        List<double[]> points = new ArrayList<>();
+        for (var v : polygon.vertices)
+            points.add(new double[] { v.getX(), v.getY(), v.getZ() });
+        for (int a = 0; a < 3 && !points.isEmpty(); ++a) {
+            points = clip(points, a, region[2 * a], true);
+            points = clip(points, a, region[2 * a + 1], false);
+        }
+        if (points.isEmpty())
+            return null;
+        double[] result = empty();
+        for (var p : points)
+            for (int a = 0; a < 3; ++a) {
+                result[2 * a] = Math.min(result[2 * a], p[a]);
+                result[2 * a + 1] = Math.max(result[2 * a + 1], p[a]);
+            }
+        // rounding of the clipped points mustn't grow the bounds out of the region
+        for (int i = 0; i < 6; i += 2) {
+            result[i] = Math.max(result[i], region[i]);
+            result[i + 1] = Math.min(result[i + 1], region[i + 1]);
+        }
+        return result;
+    }
+
+    /**
+     * Clips a polygon by a plane perpendicular to an axis (Sutherland-Hodgman)
+     *
+     * @param points the vertices of the polygon
+     * @param axis   the axis
+     * @param value  the position of the plane
+     * @param above  whether the part above the plane is kept
+     * @return the vertices of the clipped polygon
+     */
+    private static List<double[]> clip(List<double[]> points, int axis, double value, boolean above) {
+        List<double[]> result = new ArrayList<>();
+        int n = points.size();
+        for (int i = 0; i < n; ++i) {
+            double[] p = points.get(i);
+            double[] q = points.get((i + 1) % n);
+            boolean pIn = above ? p[axis] >= value : p[axis] <= value;
+            boolean qIn = above ? q[axis] >= value : q[axis] <= value;
+            if (pIn)
+                result.add(p);
+            if (pIn != qIn) {
+                double t = (value - p[axis]) / (q[axis] - p[axis]);
+                double[] x = new double[3];
+                for (int a = 0; a < 3; ++a)
+                    x[a] = p[a] + t * (q[a] - p[a]);
+                x[axis] = value;
+                result.add(x);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Finds the bin of a center
+     *
+     * @param center the center along the split axis
+     * @param min    the minimal center along the axis
+     * @param extent the extent of the centers along the axis
+     * @return the bin index
+     */
+    private static int binOf(double center, double min, double extent) {
+        int bin = (int) (BINS * (center - min) / extent);
+        return bin < BINS ? bin : BINS - 1;
+    }
+
+    /**
+     * Creates a leaf
+     *
+     * @param refs the references of the leaf
+     * @return the leaf node
+     */
+    private static Intersectable leaf(List<Reference> refs) {
+        List<Intersectable> items = new ArrayList<>(refs.size());
+        for (var r : refs)
+            items.add(leafItem(r));
+        return items.size() == 1 ? items.get(0) : new Geometries(items);
+    }
+
+    /**
+     * Creates the geometry of a reference in a leaf
+     *
+     * @param r the reference
+     * @return the geometry itself if it wasn't split, otherwise a reference to the
+     *         part of the geometry in the cell
+     */
+    private static Intersectable leafItem(Reference r) {
+        if (r.cell == null)
+            return r.geometry;
+        double[] b = r.bounds;
+        return new ClippedReference(r.geometry, new Intersectable.Box(b[0], b[1], b[2], b[3], b[4], b[5]), r.cell);
+    }
+}
@@ -2,10 +2,12 @@ package geometries;
 
 import primitives.Point;
 import java.util.List;
+import java.util.function.Consumer;
 import java.lang.Math;
 import static primitives.Util.*;
 import primitives.Ray;
 import primitives.Util;
+import primitives.Vec3;
 import primitives.Vector;
 
 
@@ -13,11 +15,14 @@ public class Sphere extends RadialGeometry {
     /**
      * center point of the sphere
      */
-    final private Point center;
+    private Point center;
 
     @Override
     public Vector getNormal(Point point) {
-        return point.subtract(center).normalize();
+        Vec3 normal = new Vec3().subtract(point, center);
+        if (normal.isZeroVector())
+            throw new IllegalArgumentException("The center of the sphere has no normal");
+        return normal.normalize().toVector();
     }
 
 //    /**
@@ -39,6 +44,17 @@ public class Sphere extends RadialGeometry {
      */
     public Sphere(Point p, double r) {
         super(r);
+        setCenter(p);
+    }
+
+    /**
+     * Moves the sphere to a new center. The geometries containing the sphere must
+     * be refitted by {@link Geometries#refit(Intersectable...)}
+     *
+     * @param p the new center of the sphere
+     * @return the sphere itself
+     */
+    public Sphere setCenter(Point p) {
         center = p;
         // if CBR improvement is on
         if (cbr)
@@ -46,6 +62,7 @@ public class Sphere extends RadialGeometry {
             this.box = new Box(center.getX() - radius, center.getX() + radius, //
                     center.getY() - radius, center.getY() + radius, //
                     center.getZ() - radius, center.getZ() + radius);
+        return this;
     }
 
     public Point getCenter() {
@@ -60,73 +77,37 @@ public class Sphere extends RadialGeometry {
 
     @Override
     public List<GeoPoint> findGeoIntersectionsHelper(Ray ray, double maxDistance) {
-        Point rayHead=ray.getHead();
-        if (center.equals(rayHead))
-            return List.of(new GeoPoint(this, ray.getPoint(radius)));
+        return collectGeoIntersections(ray, maxDistance);
+    }
 
+    @Override
+    protected void findGeoIntersectionsHelper(Ray ray, double maxDistance, Consumer<GeoPoint> sink) {
+        Point rayHead=ray.getHead();
         // if the ray starts at the center of the sphere
-        double tm = 0;
-        double d = 0;
-        double dSquared;
-        Vector rayDirection=ray.getDirection();
-        Vector l = center.subtract(rayHead);
-        tm = l.dotProduct(rayDirection);
-        d =Math.sqrt(Math.abs(l.lengthSquared() - tm * tm)); // d = (|L|^2 - tm^2)^0.5
+        if (center.equals(rayHead)) {
+            if (Util.alignZero(radius - maxDistance) < 0)
+                sink.accept(new GeoPoint(this, ray, radius));
+            return;
+        }
+
+        Vec3 l = new Vec3().subtract(center, rayHead);
+        double tm = l.dot(ray.getDirection());
+        double d = Math.sqrt(Math.abs(l.lengthSquared() - tm * tm)); // d = (|L|^2 - tm^2)^0.5
         if (alignZero(d-radius)>=0) // d > radius->if the ray doesn't intersect the sphere
-            return null;
+            return;
 
         // computing the distance from the ray's start point to the intersection points
         double th = Math.sqrt(radius * radius - d * d);
         double t1 = alignZero(tm - th);
         double t2 = alignZero(tm + th);
         if (t2 <= 0 || Util.alignZero(t1 - maxDistance) >= 0)
-            return null;
-        if (Util.alignZero(t2 - maxDistance) >= 0)
-            return t1 > 0 ? List.of(new GeoPoint(this, ray.getPoint(t1))) : null;
-        return t1 > 0
-                ? List.of(new GeoPoint(this, ray.getPoint(t1)), new GeoPoint(this, ray.getPoint(t2)))
-                : List.of(new GeoPoint(this, ray.getPoint(t2)));
-
+            return;
+        if (t1 > 0)
+            sink.accept(new GeoPoint(this, ray, t1));
+        if (Util.alignZero(t2 - maxDistance) < 0)
+            sink.accept(new GeoPoint(this, ray, t2));
     }
 
-    @Override
-    public List<GeoPoint> findGeoIntersectionsHelper(Ray ray) {
-        // get ray point and vector
-        Point p0 = ray.getHead();
-        Vector v = ray.getDirection();
-
-        // vector between p0 start and sphere center-O
-        Vector u = null;
-        try {
-            u = center.subtract(p0);
-        } catch (Exception ex)// p0=center
-        {
-            // return p0 + r*v
-            return List.of(new GeoPoint(this, ray.getPoint(radius)));
-        }
-
-        double tm = v.dotProduct(u);
-
-        // get the distance between the ray and the sphere center
-        double d2 = alignZero(u.lengthSquared() - tm * tm);
-
-        // the ray tangent the sphere
-        double delta2 = alignZero(radiusSquared - d2);
-        if (delta2 <= 0) // if d=radius
-            return null;
-
-        // the ray crosses the sphere in two places
-        double th = Math.sqrt(delta2);
-        // get the distance to the two points
-        double t2 = alignZero(tm + th);
-        if (t2 <= 0)
-            return null;
-
-        double t1 = alignZero(tm - th);
-        return t1 <= 0 //
-                ? List.of(new GeoPoint(this, ray.getPoint(t2))) // P2
-                : List.of(new GeoPoint(this, ray.getPoint(t1)), new GeoPoint(this, ray.getPoint(t2))); // P1 , P2
-    }
 }
 
 //
@@ -8,10 +8,6 @@
  */
 package geometries;
 import primitives.Point;
-import primitives.Ray;
-import primitives.Vector;
-import static primitives.Util.*;
-import java.util.List;
 
 public class Triangle extends Polygon {
     /**
@@ -25,31 +21,18 @@ public class Triangle extends Polygon {
         super(p1, p2, p3);
     }
 
-    @Override
-    public List<GeoPoint> findGeoIntersectionsHelper(Ray ray, double maxDistance) {
-        List<GeoPoint> intersections=plane.findGeoIntersections(ray,maxDistance);
-        if(intersections==null)
-            return null;
-        intersections = List.of(new GeoPoint(this, intersections.get(0).point));
-        Point rayHead=ray.getHead();
-        Vector rayDiraction=ray.getDirection();
-        Vector v1= vertices.get(0).subtract(rayHead);
-        Vector v2= vertices.get(1).subtract(rayHead);
-        Vector v3= vertices.get(2).subtract(rayHead);
-        Vector n1=(v1.crossProduct(v2)).normalize();
-        Vector n2=(v2.crossProduct(v3)).normalize();
-        Vector n3=(v3.crossProduct(v1)).normalize();
-        double vn1=alignZero(rayDiraction.dotProduct(n1));
-        double vn2=alignZero(rayDiraction.dotProduct(n2));
-        double vn3=alignZero(rayDiraction.dotProduct(n3));
-
-        if(isZero(vn1)||isZero(vn2)||isZero(vn3))
-            return null;
-        if((vn1>0&&vn2>0&&vn3>0)||(vn1<0&&vn2<0&&vn3<0))
-            return intersections;
-        return null;
+    /**
+     * Moves the vertices of the triangle. The geometries containing the triangle
+     * must be refitted by {@link Geometries#refit(Intersectable...)}
+     *
+     * @param p1 new first point of the triangle
+     * @param p2 new second point of the triangle
+     * @param p3 new third point of the triangle
+     * @return the triangle itself
+     * @throws IllegalArgumentException if the points are on the same line
+     */
+    public Triangle setVertices(Point p1, Point p2, Point p3) {
+        replaceVertices(p1, p2, p3);
+        return this;
     }
 }
-
-
-
@@ -0,0 +1,277 @@
+package geometries;
+
+import static primitives.Util.alignZero;
+import static primitives.Util.isZero;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Consumer;
+
+import primitives.Point;
+import primitives.Ray;
+import primitives.Vector;
+
+/**
+ * Mesh of triangles sharing their vertices. The coordinates of the vertices are
+ * kept in one array of doubles (x, y, z of every vertex) and the faces in an
+ * index buffer (3 vertex indices of every face), so a vertex shared by several
+ * faces is stored once and a face costs 3 integers instead of the points, the
+ * plane and the lists of a {@link Triangle}. The faces are intersected by the
+ * Möller–Trumbore algorithm directly on the arrays.<br/>
+ * All the faces share the emission and the material of the mesh. When CBR is
+ * on, every face is a bounded leaf of its own - see {@link #faces()} - and the
+ * mesh keeps a hierarchy of its faces.<br/>
+ * In single precision (see {@link Intersectable#createSinglePrecision(boolean)})
+ * the vertices are stored as floats, the faces are the triangles of the rounded
+ * vertices
+ *
+ * @author Moy Georgi & Efrat Aharoni
+ */
+public class TriangleMesh extends Geometry {
+    /**
+     * Coordinates of the vertices - x, y, z of every vertex, null in single
+     * precision
+     */
+    private final double[] vertices;
+    /** Coordinates of the vertices in single precision, null in double precision */
+    private final float[] floatVertices;
+    /** Vertex indices of the faces - 3 indices of every face */
+    private final int[] faces;
+    /** The faces as bounded leaves, empty if CBR is off */
+    private final List<Intersectable> leaves;
+    /** Hierarchy of the faces, null if CBR is off */
+    private final Geometries hierarchy;
+
+    /**
+     * Face of a mesh as a leaf of a hierarchy. It holds only the mesh, the index
+     * of the face and its box
+     */
+    private static final class Face extends Intersectable {
+        /** The mesh */
+        private final TriangleMesh mesh;
+        /** The index of the face in the mesh */
+        private final int index;
+
+        /**
+         * Creates the leaf of a face
+         *
+         * @param mesh  the mesh
+         * @param index the index of the face
+         */
+        Face(TriangleMesh mesh, int index) {
+            this.mesh = mesh;
+            this.index = index;
+            box = new Box();
+            for (int i = 0; i < 3; ++i) {
+                int v = mesh.faces[3 * index + i] * 3;
+                double x = mesh.vertex(v), y = mesh.vertex(v + 1), z = mesh.vertex(v + 2);
+                box.extend(new Box(x, x, y, y, z, z));
+            }
+        }
+
+        @Override
+        protected List<GeoPoint> findGeoIntersectionsHelper(Ray ray, double maxDistance) {
+            GeoPoint gp = mesh.intersect(index, ray, maxDistance);
+            return gp == null ? null : List.of(gp);
+        }
+
+        @Override
+        protected void findGeoIntersectionsHelper(Ray ray, double maxDistance, Consumer<GeoPoint> sink) {
+            GeoPoint gp = mesh.intersect(index, ray, maxDistance);
+            if (gp != null)
+                sink.accept(gp);
+        }
+
+        @Override
+        protected GeoPoint findClosestIntersectionHelper(Ray ray, double maxDistance) {
+            return mesh.intersect(index, ray, maxDistance);
+        }
+    }
+
+    /**
+     * Creates a mesh of triangles
+     *
+     * @param vertices the coordinates of the vertices - x, y, z of every vertex
+     * @param faces    the vertex indices of the faces - 3 indices of every face
+     * @throws IllegalArgumentException if the arrays are not made of triads, there
+     *                                  are no faces, or a face refers to a
+     *                                  missing vertex
+     */
+    public TriangleMesh(double[] vertices, int[] faces) {
+        if (vertices.length % 3 != 0)
+            throw new IllegalArgumentException("Vertices must be triads of coordinates");
+        if (faces.length == 0 || faces.length % 3 != 0)
+            throw new IllegalArgumentException("Faces must be triads of vertex indices");
+        int count = vertices.length / 3;
+        for (int index : faces)
+            if (index < 0 || index >= count)
+                throw new IllegalArgumentException("A face refers to a missing vertex");
+        if (singlePrecision) {
+            floatVertices = new float[vertices.length];
+            for (int i = 0; i < vertices.length; ++i)
+                floatVertices[i] = (float) vertices[i];
+            this.vertices = null;
+        } else {
+            floatVertices = null;
+            this.vertices = vertices;
+        }
+        this.faces = faces;
+
+        // if CBR improvement is on
+        if (!cbr) {
+            leaves = Collections.emptyList();
+            hierarchy = null;
+            return;
+        }
+        List<Intersectable> list = new ArrayList<>(faces.length / 3);
+        for (int face = 0; face < faces.length / 3; ++face)
+            list.add(new Face(this, face));
+        leaves = Collections.unmodifiableList(list);
+        hierarchy = new Geometries(leaves);
+        hierarchy.createBVH();
+        box = hierarchy.box;
+    }
+
+    /**
+     * Returns the faces of the mesh as bounded leaves, e.g. in order to put them
+     * in the hierarchy of the scene instead of the whole mesh. The intersections
+     * of the faces belong to the mesh
+     *
+     * @return the faces, empty if CBR is off
+     */
+    public List<Intersectable> faces() {
+        return leaves;
+    }
+
+    /**
+     * Returns the amount of the faces
+     *
+     * @return the amount of the faces
+     */
+    public int size() {
+        return faces.length / 3;
+    }
+
+    /**
+     * Returns a coordinate of a vertex
+     *
+     * @param i the index of the coordinate in the vertices array
+     * @return the coordinate
+     */
+    private double vertex(int i) {
+        return vertices != null ? vertices[i] : floatVertices[i];
+    }
+
+    /**
+     * Intersects a face by the Möller–Trumbore algorithm. The edges of the face
+     * are included, so a ray between neighbouring faces doesn't pass through the
+     * mesh
+     *
+     * @param face        the index of the face
+     * @param ray         the ray
+     * @param maxDistance the maximal distance from the ray head
+     * @return the intersection, with the normal of the face, or null if there is
+     *         none
+     */
+    private GeoPoint intersect(int face, Ray ray, double maxDistance) {
+        int a = faces[3 * face] * 3, b = faces[3 * face + 1] * 3, c = faces[3 * face + 2] * 3;
+        double ax = vertex(a), ay = vertex(a + 1), az = vertex(a + 2);
+        double e1x = vertex(b) - ax, e1y = vertex(b + 1) - ay, e1z = vertex(b + 2) - az;
+        double e2x = vertex(c) - ax, e2y = vertex(c + 1) - ay, e2z = vertex(c + 2) - az;
+
+        Vector dir = ray.getDirection();
+        double dx = dir.getX(), dy = dir.getY(), dz = dir.getZ();
+        // p = d x e2
+        double px = dy * e2z - dz * e2y, py = dz * e2x - dx * e2z, pz = dx * e2y - dy * e2x;
+        double det = e1x * px + e1y * py + e1z * pz;
+        // the ray is parallel to the face
+        if (isZero(det))
+            return null;
+        double inv = 1 / det;
+
+        Point head = ray.getHead();
+        double sx = head.getX() - ax, sy = head.getY() - ay, sz = head.getZ() - az;
+        double u = (sx * px + sy * py + sz * pz) * inv;
+        if (u < 0 || u > 1)
+            return null;
+        // q = s x e1
+        double qx = sy * e1z - sz * e1y, qy = sz * e1x - sx * e1z, qz = sx * e1y - sy * e1x;
+        double v = (dx * qx + dy * qy + dz * qz) * inv;
+        if (v < 0 || u + v > 1)
+            return null;
+        double t = alignZero((e2x * qx + e2y * qy + e2z * qz) * inv);
+        if (t <= 0 || alignZero(t - maxDistance) >= 0)
+            return null;
+
+        // n = e1 x e2
+        Vector normal = new Vector(e1y * e2z - e1z * e2y, e1z * e2x - e1x * e2z, e1x * e2y - e1y * e2x).normalize();
+        return new GeoPoint(this, ray, t, normal);
+    }
+
+    /**
+     * Returns the normal of the first face containing a point. The intersections
+     * of the mesh carry the normals of their faces, so it isn't used for them
+     *
+     * @param point the point on the mesh
+     * @return the normal of the face
+     * @throws IllegalArgumentException if the point is not on the mesh
+     */
+    @Override
+    public Vector getNormal(Point point) {
+        for (int face = 0; face < faces.length / 3; ++face) {
+            int a = faces[3 * face] * 3, b = faces[3 * face + 1] * 3, c = faces[3 * face + 2] * 3;
+            Point pa = new Point(vertex(a), vertex(a + 1), vertex(a + 2));
+            Vector e1 = new Point(vertex(b), vertex(b + 1), vertex(b + 2)).subtract(pa);
+            Vector e2 = new Point(vertex(c), vertex(c + 1), vertex(c + 2)).subtract(pa);
+            Vector normal = e1.crossProduct(e2).normalize();
+            if (point.equals(pa))
+                return normal;
+            // the point is in the plane of the face and inside its edges
+            Vector w = point.subtract(pa);
+            if (!isZero(w.dotProduct(normal)))
+                continue;
+            double d11 = e1.dotProduct(e1), d12 = e1.dotProduct(e2), d22 = e2.dotProduct(e2);
+            double dw1 = w.dotProduct(e1), dw2 = w.dotProduct(e2);
+            double denominator = d11 * d22 - d12 * d12;
+            double u = alignZero((d22 * dw1 - d12 * dw2) / denominator);
+            double v = alignZero((d11 * dw2 - d12 * dw1) / denominator);
+            if (u >= 0 && v >= 0 && alignZero(u + v - 1) <= 0)
+                return normal;
+        }
+        throw new IllegalArgumentException("The point is not on the mesh");
+    }
+
+    @Override
+    protected List<GeoPoint> findGeoIntersectionsHelper(Ray ray, double maxDistance) {
+        return collectGeoIntersections(ray, maxDistance);
+    }
+
+    @Override
+    protected void findGeoIntersectionsHelper(Ray ray, double maxDistance, Consumer<GeoPoint> sink) {
+        if (hierarchy != null) {
+            hierarchy.findGeoIntersections(ray, maxDistance, sink);
+            return;
+        }
+        for (int face = 0; face < faces.length / 3; ++face) {
+            GeoPoint gp = intersect(face, ray, maxDistance);
+            if (gp != null)
+                sink.accept(gp);
+        }
+    }
+
+    @Override
+    protected GeoPoint findClosestIntersectionHelper(Ray ray, double maxDistance) {
+        if (hierarchy != null)
+            return hierarchy.findClosestIntersection(ray, maxDistance);
+        GeoPoint closest = null;
+        for (int face = 0; face < faces.length / 3; ++face) {
+            GeoPoint gp = intersect(face, ray, maxDistance);
+            if (gp != null) {
+                closest = gp;
+                maxDistance = gp.getDistance();
+            }
+        }
+        return closest;
+    }
+}
@@ -2,9 +2,14 @@ package geometries;
 
 import primitives.Ray;
 import primitives.Point;
+import primitives.Vec3;
 import primitives.Vector;
 
+import static primitives.Util.alignZero;
+import static primitives.Util.isZero;
+
 import java.util.List;
+import java.util.function.Consumer;
 
 /**
  * class Tube is a class representing a tube
@@ -46,14 +51,71 @@ public class Tube extends RadialGeometry {
     }
 
     @Override
-    public List<GeoPoint> findGeoIntersectionsHelper(Ray ray) {
-        // TODO Auto-generated method stub
-        return null;
+    public List<GeoPoint> findGeoIntersectionsHelper(Ray ray, double maxDistance) {
+        return collectGeoIntersections(ray, maxDistance);
     }
 
     @Override
-    public List<GeoPoint> findGeoIntersectionsHelper(Ray ray, double maxDistance) {
-        return null;
+    protected void findGeoIntersectionsHelper(Ray ray, double maxDistance, Consumer<GeoPoint> sink) {
+        findSideIntersections(ray, maxDistance, Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY, sink);
+    }
+
+    /**
+     * Passes the intersections of a ray with the side of the tube, which are
+     * closer than a maximal distance, to a sink. Only the points whose projection
+     * on the axis is strictly between two distances from the axis head are
+     * passed, so a cylinder uses it for its side.<br/>
+     * The ray and the axis are decomposed into the components along the axis and
+     * orthogonal to it, and the orthogonal components give the quadratic equation
+     * of the distance along the ray
+     *
+     * @param ray         the ray
+     * @param maxDistance the maximal distance from the ray head
+     * @param from        the lowest distance along the axis
+     * @param to          the highest distance along the axis
+     * @param sink        the sink of the intersections
+     */
+    protected void findSideIntersections(Ray ray, double maxDistance, double from, double to,
+                                         Consumer<GeoPoint> sink) {
+        Vector va = axisRay.getDirection();
+        Vector v = ray.getDirection();
+        double vva = v.dotProduct(va);
+        Vec3 dp = new Vec3().subtract(ray.getHead(), axisRay.getHead());
+        double dpva = dp.dot(va);
+
+        // the components orthogonal to the axis of the direction and of the head
+        Vec3 u = new Vec3().set(v.getX() - vva * va.getX(), v.getY() - vva * va.getY(), v.getZ() - vva * va.getZ());
+        Vec3 w = new Vec3().set(dp.x - dpva * va.getX(), dp.y - dpva * va.getY(), dp.z - dpva * va.getZ());
+        double a = u.lengthSquared();
+        // the ray is parallel to the axis
+        if (isZero(a))
+            return;
+        double b = u.dot(w); // half of the linear coefficient
+        double c = w.lengthSquared() - radiusSquared;
+        double discriminant = alignZero(b * b - a * c);
+        // the ray misses or is tangent to the tube
+        if (discriminant <= 0)
+            return;
+
+        double th = Math.sqrt(discriminant);
+        double t1 = alignZero((-b - th) / a);
+        double t2 = alignZero((-b + th) / a);
+        if (t1 > 0 && alignZero(t1 - maxDistance) < 0 && between(dpva + t1 * vva, from, to))
+            sink.accept(new GeoPoint(this, ray, t1));
+        if (t2 > 0 && alignZero(t2 - maxDistance) < 0 && between(dpva + t2 * vva, from, to))
+            sink.accept(new GeoPoint(this, ray, t2));
+    }
+
+    /**
+     * Checks whether a distance along the axis is strictly between two distances
+     *
+     * @param axial the distance along the axis
+     * @param from  the lowest distance
+     * @param to    the highest distance
+     * @return true if the distance is between them
+     */
+    private static boolean between(double axial, double from, double to) {
+        return alignZero(axial - from) > 0 && alignZero(axial - to) < 0;
     }
 }
 
@@ -0,0 +1,335 @@
+package geometries;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Consumer;
+
+import primitives.Double3;
+import primitives.Point;
+import primitives.Ray;
+
+/**
+ * Bounding Volume Hierarchy with 4 children per node (QBVH), collapsed from a
+ * compiled binary hierarchy.<br/>
+ * The bounds of the 4 children of a node are kept together, every bound in 4
+ * consecutive lanes (structure of arrays), so a ray is tested against all the
+ * children of a node at once from adjacent memory. A ray visits about half of
+ * the nodes it visits in the binary hierarchy.
+ *
+ * @author Moy Georgi & Efrat Aharoni
+ */
+final class WideBVH extends Intersectable {
+    /** Amount of children of a node */
+    private static final int WIDTH = 4;
+    /** Amount of doubles per node in the bounds array - 6 bounds of 4 lanes */
+    private static final int BOUNDS_SIZE = 6 * WIDTH;
+
+    /**
+     * Bounds of the children of the nodes - for every node the minX of the 4
+     * children, then their maxX, minY, maxY, minZ and maxZ
+     */
+    private double[] bounds = new double[16 * BOUNDS_SIZE];
+    /**
+     * Child of every lane - the index of the child node for an inner child, or the
+     * index of the first primitive for a leaf
+     */
+    private int[] children = new int[16 * WIDTH];
+    /**
+     * Amount of primitives of every lane - 0 for an inner child, -1 for an empty
+     * lane
+     */
+    private int[] counts = new int[16 * WIDTH];
+    /** Amount of nodes */
+    private int nodeCount = 0;
+    /** The primitives of the leaves, ordered by the leaves */
+    private final Intersectable[] primitives;
+    /** Depth of the hierarchy */
+    private final int depth;
+
+    /**
+     * Collapses a compiled binary hierarchy - every node takes the children of its
+     * largest inner children until it has 4 children
+     *
+     * @param bvh the binary hierarchy
+     */
+    WideBVH(LinearBVH bvh) {
+        primitives = bvh.primitives();
+        double[] binaryBounds = bvh.bounds();
+        int[] binaryNodes = bvh.nodes();
+        if (binaryNodes[1] == 0)
+            depth = collapse(binaryBounds, binaryNodes, 0, 1);
+        else { // the root is a leaf
+            int node = addNode();
+            setLane(binaryBounds, node, 0, 0);
+            children[node * WIDTH] = binaryNodes[0];
+            counts[node * WIDTH] = binaryNodes[1];
+            depth = 1;
+        }
+        bounds = Arrays.copyOf(bounds, nodeCount * BOUNDS_SIZE);
+        children = Arrays.copyOf(children, nodeCount * WIDTH);
+        counts = Arrays.copyOf(counts, nodeCount * WIDTH);
+    }
+
+    /**
+     * Adds a node with empty lanes
+     *
+     * @return the index of the node
+     */
+    private int addNode() {
+        if ((nodeCount + 1) * WIDTH > counts.length) {
+            bounds = Arrays.copyOf(bounds, bounds.length * 2);
+            children = Arrays.copyOf(children, children.length * 2);
+            counts = Arrays.copyOf(counts, counts.length * 2);
+        }
+        Arrays.fill(counts, nodeCount * WIDTH, (nodeCount + 1) * WIDTH, -1);
+        return nodeCount++;
+    }
+
+    /**
+     * Copies the bounds of a binary node into a lane of a node
+     *
+     * @param binaryBounds the bounds of the binary nodes
+     * @param node         the node
+     * @param lane         the lane
+     * @param binaryNode   the binary node
+     */
+    private void setLane(double[] binaryBounds, int node, int lane, int binaryNode) {
+        for (int i = 0; i < 6; ++i)
+            bounds[node * BOUNDS_SIZE + i * WIDTH + lane] = binaryBounds[binaryNode * 6 + i];
+    }
+
+    /**
+     * Collapses an inner binary node and all its descendants
+     *
+     * @param binaryBounds the bounds of the binary nodes
+     * @param binaryNodes  the binary nodes
+     * @param binaryNode   the inner binary node
+     * @param level        the depth of the node
+     * @return the depth of the deepest node of the sub-tree
+     */
+    private int collapse(double[] binaryBounds, int[] binaryNodes, int binaryNode, int level) {
+        int[] lanes = new int[WIDTH];
+        lanes[0] = binaryNode + 1;
+        lanes[1] = binaryNodes[binaryNode * 2];
+        int n = 2;
+        while (n < WIDTH) {
+            // open the inner child with the largest surface area
+            int best = -1;
+            double bestArea = -1;
+            for (int i = 0; i < n; ++i) {
+                int c = lanes[i];
+                if (binaryNodes[c * 2 + 1] != 0)
+                    continue;
+                int o = c * 6;
+                double x = binaryBounds[o + 1] - binaryBounds[o];
+                double y = binaryBounds[o + 3] - binaryBounds[o + 2];
+                double z = binaryBounds[o + 5] - binaryBounds[o + 4];
+                double area = x * y + y * z + z * x;
+                if (area > bestArea) {
+                    bestArea = area;
+                    best = i;
+                }
+            }
+            if (best < 0)
+                break;
+            int c = lanes[best];
+            lanes[best] = c + 1;
+            lanes[n++] = binaryNodes[c * 2];
+        }
+
+        int node = addNode();
+        int result = level;
+        for (int lane = 0; lane < n; ++lane) {
+            int c = lanes[lane];
+            setLane(binaryBounds, node, lane, c);
+            int count = binaryNodes[c * 2 + 1];
+            if (count == 0) {
+                int child = nodeCount;
+                result = Math.max(result, collapse(binaryBounds, binaryNodes, c, level + 1));
+                children[node * WIDTH + lane] = child;
+            } else
+                children[node * WIDTH + lane] = binaryNodes[c * 2];
+            counts[node * WIDTH + lane] = count;
+        }
+        return result;
+    }
+
+    /**
+     * Tests a ray against all the children of a node. Every lane runs the slab
+     * test of {@link Box#entry(Ray, double, double)} - the sign bits of the ray
+     * pick the near and the far lanes of every slab and the inverse direction
+     * gives the distances, so the lanes are tested without any branch
+     *
+     * @param node        the node
+     * @param ray         the ray
+     * @param maxDistance the maximal distance along the ray
+     * @param near        gets the distances where the ray enters the children
+     * @return bit mask of the children the ray passes through
+     */
+    private int intersect(int node, Ray ray, double maxDistance, double[] near) {
+        int b = node * BOUNDS_SIZE;
+        int nearX = b + ray.signX * WIDTH, farX = b + (1 - ray.signX) * WIDTH;
+        int nearY = b + (2 + ray.signY) * WIDTH, farY = b + (3 - ray.signY) * WIDTH;
+        int nearZ = b + (4 + ray.signZ) * WIDTH, farZ = b + (5 - ray.signZ) * WIDTH;
+        Point head = ray.getHead();
+        double ox = head.getX();
+        double oy = head.getY();
+        double oz = head.getZ();
+        int mask = 0;
+        // the empty lanes are the last ones
+        for (int lane = 0; lane < WIDTH && counts[node * WIDTH + lane] >= 0; ++lane) {
+            double tNear = 0;
+            double tFar = maxDistance;
+            double t;
+
+            t = (bounds[nearX + lane] - ox) * ray.inverseX;
+            tNear = t > tNear ? t : tNear;
+            t = (bounds[farX + lane] - ox) * ray.inverseX;
+            tFar = t < tFar ? t : tFar;
+
+            t = (bounds[nearY + lane] - oy) * ray.inverseY;
+            tNear = t > tNear ? t : tNear;
+            t = (bounds[farY + lane] - oy) * ray.inverseY;
+            tFar = t < tFar ? t : tFar;
+
+            t = (bounds[nearZ + lane] - oz) * ray.inverseZ;
+            tNear = t > tNear ? t : tNear;
+            t = (bounds[farZ + lane] - oz) * ray.inverseZ;
+            tFar = t < tFar ? t : tFar;
+
+            near[lane] = tNear;
+            mask |= (tNear <= tFar ? 1 : 0) << lane;
+        }
+        return mask;
+    }
+
+    @Override
+    protected GeoPoint findClosestIntersectionHelper(Ray ray, double maxDistance) {
+        double[] near = new double[WIDTH];
+        int[] order = new int[WIDTH];
+
+        GeoPoint closest = null;
+        // the nodes to visit and the distances where the ray enters them
+        int[] stack = new int[depth * (WIDTH - 1) + 1];
+        double[] entries = new double[stack.length];
+        int top = 0;
+        stack[top] = 0;
+        entries[top++] = 0;
+        while (top > 0) {
+            int node = stack[--top];
+            // a closer point may have been found since the node was pushed
+            if (entries[top] >= maxDistance)
+                continue;
+
+            int mask = intersect(node, ray, maxDistance, near);
+            // order the children by their entry distances
+            int hits = 0;
+            for (int lane = 0; lane < WIDTH; ++lane)
+                if ((mask & 1 << lane) != 0) {
+                    int i = hits++;
+                    for (; i > 0 && near[order[i - 1]] > near[lane]; --i)
+                        order[i] = order[i - 1];
+                    order[i] = lane;
+                }
+
+            // the leaves from the nearest, then push the inner children from the
+            // farthest
+            for (int i = 0; i < hits; ++i) {
+                int lane = order[i];
+                int count = counts[node * WIDTH + lane];
+                if (count == 0 || near[lane] >= maxDistance)
+                    continue;
+                for (int p = children[node * WIDTH + lane], end = p + count; p < end; ++p) {
+                    GeoPoint gp = primitives[p].findClosestIntersection(ray, maxDistance);
+                    if (gp != null) {
+                        closest = gp;
+                        maxDistance = gp.getDistance();
+                    }
+                }
+            }
+            for (int i = hits - 1; i >= 0; --i) {
+                int lane = order[i];
+                if (counts[node * WIDTH + lane] != 0 || near[lane] >= maxDistance)
+                    continue;
+                stack[top] = children[node * WIDTH + lane];
+                entries[top++] = near[lane];
+            }
+        }
+        return closest;
+    }
+
+    @Override
+    protected Double3 findTransparencyHelper(Ray ray, double maxDistance, double minK) {
+        double[] near = new double[WIDTH];
+
+        Double3 ktr = Double3.ONE;
+        int[] stack = new int[depth * (WIDTH - 1) + 1];
+        int top = 0;
+        stack[top++] = 0;
+        while (top > 0) {
+            int node = stack[--top];
+            int mask = intersect(node, ray, maxDistance, near);
+            for (int lane = 0; lane < WIDTH; ++lane) {
+                if ((mask & 1 << lane) == 0)
+                    continue;
+                int count = counts[node * WIDTH + lane];
+                int child = children[node * WIDTH + lane];
+                if (count == 0) {
+                    stack[top++] = child;
+                    continue;
+                }
+                for (int p = child, end = p + count; p < end; ++p) {
+                    Double3 kt = primitives[p].findTransparency(ray, maxDistance, minK);
+                    if (kt == Double3.ONE)
+                        continue;
+                    ktr = ktr.product(kt);
+                    // stop at the first opaque geometry
+                    if (ktr.lowerThan(minK))
+                        return Double3.ZERO;
+                }
+            }
+        }
+        return ktr;
+    }
+
+    @Override
+    protected List<GeoPoint> findGeoIntersectionsHelper(Ray ray, double maxDistance) {
+        return collectGeoIntersections(ray, maxDistance);
+    }
+
+    @Override
+    protected void findGeoIntersectionsHelper(Ray ray, double maxDistance, Consumer<GeoPoint> sink) {
+        traverse(ray, maxDistance, sink);
+    }
+
+    /**
+     * Passes the intersections of all the leaves the ray passes through to a sink
+     *
+     * @param ray         the ray
+     * @param maxDistance the maximal distance along the ray
+     * @param sink        the sink of the intersections
+     */
+    private void traverse(Ray ray, double maxDistance, Consumer<GeoPoint> sink) {
+        double[] near = new double[WIDTH];
+
+        int[] stack = new int[depth * (WIDTH - 1) + 1];
+        int top = 0;
+        stack[top++] = 0;
+        while (top > 0) {
+            int node = stack[--top];
+            int mask = intersect(node, ray, maxDistance, near);
+            for (int lane = 0; lane < WIDTH; ++lane) {
+                if ((mask & 1 << lane) == 0)
+                    continue;
+                int count = counts[node * WIDTH + lane];
+                int child = children[node * WIDTH + lane];
+                if (count == 0) {
+                    stack[top++] = child;
+                    continue;
+                }
+                for (int p = child, end = p + count; p < end; ++p)
+                    primitives[p].findGeoIntersections(ray, maxDistance, sink);
+            }
+        }
+    }
+}
@@ -2,6 +2,7 @@ package lighting;
 
 import primitives.Color;
 import primitives.Point;
+import primitives.Vec3;
 import primitives.Vector;
 
 /**
@@ -90,7 +91,7 @@ public class PointLight extends Light implements LightSource {
         {
             return null;
         }
-        return p.subtract(position).normalize();
+        return new Vec3().subtract(p, position).normalize().toVector();
     }
 
     @Override
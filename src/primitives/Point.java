@@ -110,6 +110,6 @@ public class Point {
      * @return the z coordinate
      */
     public double getZ() {
-        return xyz.d2;
+        return xyz.d3;
     }
 }
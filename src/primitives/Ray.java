@@ -21,12 +21,80 @@ public class Ray {
      * The direction vector of the ray, normalized to unit length.
      */
     final public Vector direction;
+    /**
+     * Inverse of the x of the direction, infinite if the ray is parallel to the
+     * x axis
+     */
+    final public double inverseX;
+    /** Inverse of the y of the direction */
+    final public double inverseY;
+    /** Inverse of the z of the direction */
+    final public double inverseZ;
+    /**
+     * Sign of the x of the direction - 1 if it is negative (including -0), 0
+     * otherwise. It is the index of the bound (0 for the minimum, 1 for the
+     * maximum) where the ray enters a slab along the x axis
+     */
+    final public int signX;
+    /** Sign of the y of the direction */
+    final public int signY;
+    /** Sign of the z of the direction */
+    final public int signZ;
     private static final double DELTA = 0.1;
+    /**
+     * Offset of the head of a secondary ray in units of the float precision of
+     * its point, in the adaptive mode
+     */
+    private static final int DELTA_ULPS = 4096;
+    /** Whether the offset of the head of a secondary ray is adaptive */
+    private static boolean adaptiveDelta = false;
+
+    /**
+     * Sets the offset of the heads of the secondary rays. The fixed offset is
+     * {@value #DELTA}, the adaptive one is a fixed amount of float units in the
+     * last place of the largest coordinate of the point, so it follows the error
+     * of geometry stored in single precision instead of the size of the scene
+     *
+     * @param adaptive true for the adaptive offset
+     */
+    public static void setAdaptiveDelta(boolean adaptive) {
+        adaptiveDelta = adaptive;
+    }
+
+    /**
+     * Returns the offset of the head of a secondary ray from its point
+     *
+     * @param p the point
+     * @return the offset
+     */
+    private static double delta(Point p) {
+        if (!adaptiveDelta)
+            return DELTA;
+        double magnitude = Math.max(1, Math.max(Math.abs(p.xyz.d1), Math.max(Math.abs(p.xyz.d2), Math.abs(p.xyz.d3))));
+        return Math.ulp((float) magnitude) * DELTA_ULPS;
+    }
 
     public Ray(Point p, Vector v, Vector normalToP) {
-        direction = v.normalize();
+        this(offset(p, v, normalToP), v);
+    }
+
+    /**
+     * Offsets the head of a secondary ray from the surface, to the side of the
+     * surface the ray goes to
+     *
+     * @param p         the point on the surface
+     * @param v         the direction of the ray
+     * @param normalToP the normal of the surface at the point
+     * @return the head of the ray
+     */
+    private static Point offset(Point p, Vector v, Vector normalToP) {
         double nv = v.dotProduct(normalToP);
-        head = Util.isZero(nv) ? p : p.add(normalToP.scale(Util.alignZero(nv) < 0 ? -DELTA : DELTA));
+        if (Util.isZero(nv))
+            return p;
+        // p + delta * n without the intermediate vectors
+        double delta = Util.alignZero(nv) < 0 ? -delta(p) : delta(p);
+        return new Point(p.xyz.d1 + normalToP.xyz.d1 * delta, p.xyz.d2 + normalToP.xyz.d2 * delta,
+                p.xyz.d3 + normalToP.xyz.d3 * delta);
     }
 
     /**
@@ -38,6 +106,13 @@ public class Ray {
     public Ray(Point head, Vector direction) {
         this.head = head;
         this.direction = direction.normalize();
+        inverseX = 1 / this.direction.xyz.d1;
+        inverseY = 1 / this.direction.xyz.d2;
+        inverseZ = 1 / this.direction.xyz.d3;
+        // the inverse keeps the sign of -0
+        signX = inverseX < 0 ? 1 : 0;
+        signY = inverseY < 0 ? 1 : 0;
+        signZ = inverseZ < 0 ? 1 : 0;
     }
 
     public Vector getDirection() {
@@ -49,7 +124,9 @@ public class Ray {
     }
 
     public Point getPoint(double t) {
-        return isZero(t) ? head : head.add(direction.scale(t));
+        return isZero(t) ? head
+                : new Point(head.xyz.d1 + direction.xyz.d1 * t, head.xyz.d2 + direction.xyz.d2 * t,
+                        head.xyz.d3 + direction.xyz.d3 * t);
     }
 
     @Override
@@ -75,28 +152,35 @@ public class Ray {
      * @return the closest point to the head of the ray, or null if the list is empty.
      */
     public Point findClosestPoint(List<Point> points){
-        return points == null||points.size()==0 ? null
-                : findClosestGeoPoint(points.stream()
-                .map(p -> new GeoPoint(null, p)).toList()).point;
+        if (points == null || points.isEmpty())
+            return null;
+        Point closestPoint = points.get(0);
+        double minimumDistanceSquared = closestPoint.distanceSquared(head);
+        for (Point point : points) {
+            double distanceSquared = point.distanceSquared(head);
+            if (distanceSquared < minimumDistanceSquared) {
+                minimumDistanceSquared = distanceSquared;
+                closestPoint = point;
+            }
+        }
+        return closestPoint;
     }
 
-
-
+    /**
+     * Finds and returns the closest point to the head of the ray from a list of
+     * points found along the ray, by their distances from the head.
+     *
+     * @param geoPoints the list of points to search.
+     * @return the closest point to the head of the ray, or null if the list is empty.
+     */
     public GeoPoint findClosestGeoPoint(List<GeoPoint> geoPoints)
     {
         if (geoPoints.isEmpty())
             return null;
         GeoPoint closestPoint=geoPoints.get(0);
-        double minimumDistanceSquared=closestPoint.point.distanceSquared(head);
-        double distanceSquared;
-        for(GeoPoint geoPoint:geoPoints){
-            distanceSquared=geoPoint.point.distanceSquared(head);
-            if(distanceSquared<minimumDistanceSquared){
-                minimumDistanceSquared=distanceSquared;
+        for(GeoPoint geoPoint:geoPoints)
+            if(geoPoint.getDistance()<closestPoint.getDistance())
                 closestPoint=geoPoint;
-            }
-        }
         return closestPoint;
     }
 }
-
@@ -0,0 +1,155 @@
+/**
+ * Class representing an affine transformation in 3D space.
+ *
+ * A transformation is a 3x3 linear part followed by a translation. It is
+ * immutable, transformations are combined into new transformations.
+ *
+ * @author Efrat and Moy
+ */
+package primitives;
+
+import static primitives.Util.isZero;
+
+public class Transform {
+    /** The identity transformation */
+    public static final Transform IDENTITY = new Transform(1, 0, 0, 0, 0, 1, 0, 0, 0, 0, 1, 0);
+
+    /**
+     * Rows of the transformation - the 3 coefficients of the linear part and the
+     * translation of every coordinate
+     */
+    private final double[] m;
+
+    /**
+     * Constructs a transformation from its rows
+     *
+     * @param m the rows of the transformation, 4 values per coordinate
+     */
+    private Transform(double... m) {
+        this.m = m;
+    }
+
+    /**
+     * Creates a translation
+     *
+     * @param offset the offset of the translation
+     * @return the translation
+     */
+    public static Transform translation(Vector offset) {
+        return new Transform(1, 0, 0, offset.getX(), 0, 1, 0, offset.getY(), 0, 0, 1, offset.getZ());
+    }
+
+    /**
+     * Creates a scaling along the axes
+     *
+     * @param x scale along x
+     * @param y scale along y
+     * @param z scale along z
+     * @return the scaling
+     * @throws IllegalArgumentException if one of the scales is zero
+     */
+    public static Transform scaling(double x, double y, double z) {
+        if (isZero(x) || isZero(y) || isZero(z))
+            throw new IllegalArgumentException("Scale can't be zero");
+        return new Transform(x, 0, 0, 0, 0, y, 0, 0, 0, 0, z, 0);
+    }
+
+    /**
+     * Creates a rotation around an axis through the origin
+     *
+     * @param axis  the axis of the rotation
+     * @param angle the angle of the rotation in degrees, counterclockwise when
+     *              looking against the axis
+     * @return the rotation
+     */
+    public static Transform rotation(Vector axis, double angle) {
+        Vector u = axis.normalize();
+        double x = u.getX(), y = u.getY(), z = u.getZ();
+        double rad = Math.toRadians(angle);
+        double c = Math.cos(rad), s = Math.sin(rad), t = 1 - c;
+        return new Transform( //
+                t * x * x + c, t * x * y - s * z, t * x * z + s * y, 0, //
+                t * x * y + s * z, t * y * y + c, t * y * z - s * x, 0, //
+                t * x * z - s * y, t * y * z + s * x, t * z * z + c, 0);
+    }
+
+    /**
+     * Combines this transformation with another one applied after it
+     *
+     * @param next the transformation applied after this one
+     * @return the combined transformation
+     */
+    public Transform then(Transform next) {
+        double[] a = next.m;
+        double[] r = new double[12];
+        for (int row = 0; row < 3; ++row) {
+            for (int col = 0; col < 4; ++col)
+                r[4 * row + col] = a[4 * row] * m[col] + a[4 * row + 1] * m[4 + col] + a[4 * row + 2] * m[8 + col];
+            r[4 * row + 3] += a[4 * row + 3];
+        }
+        return new Transform(r);
+    }
+
+    /**
+     * Calculates the inverse transformation
+     *
+     * @return the inverse transformation
+     * @throws IllegalArgumentException if the transformation is not invertible
+     */
+    public Transform inverse() {
+        double a = m[0], b = m[1], c = m[2];
+        double d = m[4], e = m[5], f = m[6];
+        double g = m[8], h = m[9], i = m[10];
+        double det = a * (e * i - f * h) - b * (d * i - f * g) + c * (d * h - e * g);
+        if (isZero(det))
+            throw new IllegalArgumentException("The transformation is not invertible");
+        double[] r = { //
+                (e * i - f * h) / det, (c * h - b * i) / det, (b * f - c * e) / det, 0, //
+                (f * g - d * i) / det, (a * i - c * g) / det, (c * d - a * f) / det, 0, //
+                (d * h - e * g) / det, (b * g - a * h) / det, (a * e - b * d) / det, 0 };
+        for (int row = 0; row < 3; ++row)
+            r[4 * row + 3] = -(r[4 * row] * m[3] + r[4 * row + 1] * m[7] + r[4 * row + 2] * m[11]);
+        return new Transform(r);
+    }
+
+    /**
+     * Transforms a point
+     *
+     * @param p the point
+     * @return the transformed point
+     */
+    public Point apply(Point p) {
+        double x = p.getX(), y = p.getY(), z = p.getZ();
+        return new Point(m[0] * x + m[1] * y + m[2] * z + m[3], //
+                m[4] * x + m[5] * y + m[6] * z + m[7], //
+                m[8] * x + m[9] * y + m[10] * z + m[11]);
+    }
+
+    /**
+     * Transforms a vector - only the linear part of the transformation applies
+     *
+     * @param v the vector
+     * @return the transformed vector
+     */
+    public Vector apply(Vector v) {
+        double x = v.getX(), y = v.getY(), z = v.getZ();
+        return new Vector(m[0] * x + m[1] * y + m[2] * z, //
+                m[4] * x + m[5] * y + m[6] * z, //
+                m[8] * x + m[9] * y + m[10] * z);
+    }
+
+    /**
+     * Transforms a vector by the transpose of the linear part of the
+     * transformation. A normal is transformed by the transpose of the inverse
+     * transformation
+     *
+     * @param v the vector
+     * @return the transformed vector
+     */
+    public Vector applyTransposed(Vector v) {
+        double x = v.getX(), y = v.getY(), z = v.getZ();
+        return new Vector(m[0] * x + m[4] * y + m[8] * z, //
+                m[1] * x + m[5] * y + m[9] * z, //
+                m[2] * x + m[6] * y + m[10] * z);
+    }
+}
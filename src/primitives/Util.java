@@ -53,6 +53,18 @@ public final class Util {
       return Math.random() * (max - min) + min;
    }
 
+   /** Spreads the lowest 10 bits of a number to every third bit, so three
+    * spread coordinates interleave into a Morton code of 30 bits
+    * @param  v the number
+    * @return   the spread bits */
+   public static int spreadBits(int v) {
+      v = (v * 0x00010001) & 0xFF0000FF;
+      v = (v * 0x00000101) & 0x0F00F00F;
+      v = (v * 0x00000011) & 0xC30C30C3;
+      v = (v * 0x00000005) & 0x49249249;
+      return v;
+   }
+
 
 
 }
@@ -0,0 +1,140 @@
+package primitives;
+
+import static primitives.Util.isZero;
+
+/**
+ * Mutable triad of doubles for the hot paths of the rendering - the
+ * intersections and the shading. Unlike {@link Point} and {@link Vector} it
+ * doesn't allocate a new object on every operation and doesn't check for the
+ * zero vector, so a few local scratch objects replace the chain of immutable
+ * results of an expression (and the JIT usually keeps them in registers). The
+ * operations calculate exactly the same values as the matching operations of
+ * {@link Point} and {@link Vector}.<br/>
+ * The immutable classes stay the API of the scene construction, a scratch
+ * object must not escape the method that uses it
+ *
+ * @author Moy Georgi & Efrat Aharoni
+ */
+public final class Vec3 {
+    /** X coordinate */
+    public double x;
+    /** Y coordinate */
+    public double y;
+    /** Z coordinate */
+    public double z;
+
+    /**
+     * Creates a zero triad
+     */
+    public Vec3() {
+    }
+
+    /**
+     * Sets the coordinates
+     *
+     * @param x the x coordinate
+     * @param y the y coordinate
+     * @param z the z coordinate
+     * @return the triad itself
+     */
+    public Vec3 set(double x, double y, double z) {
+        this.x = x;
+        this.y = y;
+        this.z = z;
+        return this;
+    }
+
+    /**
+     * Sets the coordinates to those of a point or a vector
+     *
+     * @param p the point
+     * @return the triad itself
+     */
+    public Vec3 set(Point p) {
+        return set(p.xyz.d1, p.xyz.d2, p.xyz.d3);
+    }
+
+    /**
+     * Sets the triad to the difference of two points, like
+     * {@link Point#subtract(Point)}
+     *
+     * @param p1 the first point
+     * @param p2 the subtracted point
+     * @return the triad itself
+     */
+    public Vec3 subtract(Point p1, Point p2) {
+        return set(p1.xyz.d1 - p2.xyz.d1, p1.xyz.d2 - p2.xyz.d2, p1.xyz.d3 - p2.xyz.d3);
+    }
+
+    /**
+     * Sets the triad to the cross product of two triads, like
+     * {@link Vector#crossProduct(Vector)}. The result may be one of the operands
+     *
+     * @param a the left operand
+     * @param b the right operand
+     * @return the triad itself
+     */
+    public Vec3 cross(Vec3 a, Vec3 b) {
+        return set(a.y * b.z - a.z * b.y, a.z * b.x - a.x * b.z, a.x * b.y - a.y * b.x);
+    }
+
+    /**
+     * Normalizes the triad, like {@link Vector#normalize()}
+     *
+     * @return the triad itself
+     */
+    public Vec3 normalize() {
+        double len = Math.sqrt(lengthSquared());
+        return set(x / len, y / len, z / len);
+    }
+
+    /**
+     * Calculates the dot product with a vector, like
+     * {@link Vector#dotProduct(Vector)} called on the vector
+     *
+     * @param v the vector
+     * @return the dot product
+     */
+    public double dot(Vector v) {
+        return x * v.xyz.d1 + y * v.xyz.d2 + z * v.xyz.d3;
+    }
+
+    /**
+     * Calculates the dot product with another triad
+     *
+     * @param v the other triad
+     * @return the dot product
+     */
+    public double dot(Vec3 v) {
+        return x * v.x + y * v.y + z * v.z;
+    }
+
+    /**
+     * Calculates the squared length
+     *
+     * @return the squared length
+     */
+    public double lengthSquared() {
+        return x * x + y * y + z * z;
+    }
+
+    /**
+     * Checks whether the triad is [almost] zero, i.e. whether it can't be turned
+     * into a {@link Vector}
+     *
+     * @return true if all the coordinates are almost zero
+     */
+    public boolean isZeroVector() {
+        return isZero(x) && isZero(y) && isZero(z);
+    }
+
+    /**
+     * Creates an immutable vector of the triad
+     *
+     * @return the vector
+     * @throws IllegalArgumentException if the triad is the zero vector
+     */
+    public Vector toVector() {
+        return new Vector(x, y, z);
+    }
+}
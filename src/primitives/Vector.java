@@ -16,13 +16,13 @@ public class  Vector extends Point {
 
     public Vector(double x,double y,double z){
         super(x,y,z);
-        if(Double3.ZERO.equals(this.xyz))
+        if(isZero(x) && isZero(y) && isZero(z))
             throw  new IllegalArgumentException("x,y,z can't be 0");
     }
 
     public Vector(Double3 xyz) {
         super(xyz);
-        if(Double3.ZERO.equals(xyz))
+        if(isZero(xyz.d1) && isZero(xyz.d2) && isZero(xyz.d3))
             throw  new IllegalArgumentException("can't be (0,0,0)");
     }
 
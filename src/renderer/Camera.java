@@ -473,13 +473,13 @@
 //    }
 //}
 package renderer;
-import java.util.LinkedList;
-import renderer.PixelManager.Pixel;
 import primitives.Color;
 import primitives.Point;
 import primitives.Vector;
 import primitives.Ray;
 import java.util.MissingResourceException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 import static primitives.Util.alignZero;
 import static primitives.Util.isZero;
 
@@ -513,6 +513,10 @@ public class Camera implements Cloneable {
     private double printInterval = 0;
     /** The pixelManager */
     private PixelManager pixelManager;
+    /** Size of the side of a tile of pixels traced as one packet, 1 - no packets */
+    private int packetSize = 1;
+    /** Size of the side of a tile of pixels scheduled as one task of a thread */
+    private int tileSize = 16;
 
     /**
      * empty constructor
@@ -618,12 +622,34 @@ public class Camera implements Cloneable {
      */
     private void castRay(int nX, int nY, int col, int row) {
         imageWriter.writePixel(col, row, rayTrace.traceRay(constructRay(nX, nY, col, row)));
-        pixelManager.pixelDone();
     }
 
 
     /**
-     * Renders the image by casting rays
+     * Cast the rays of a tile of pixels from camera as one packet and color the
+     * pixels
+     *
+     * @param nX  resolution on X axis (number of pixels in row)
+     * @param nY  resolution on Y axis (number of pixels in column)
+     * @param col column number of the top left pixel of the tile
+     * @param row row number of the top left pixel of the tile
+     */
+    private void castTile(int nX, int nY, int col, int row) {
+        int width = Math.min(packetSize, nX - col);
+        int height = Math.min(packetSize, nY - row);
+        Ray[] rays = new Ray[width * height];
+        for (int i = 0; i < height; ++i)
+            for (int j = 0; j < width; ++j)
+                rays[i * width + j] = constructRay(nX, nY, col + j, row + i);
+        Color[] colors = rayTrace.traceRays(rays);
+        for (int i = 0; i < height; ++i)
+            for (int j = 0; j < width; ++j)
+                imageWriter.writePixel(col + j, row + i, colors[i * width + j]);
+    }
+
+    /**
+     * Renders the image by casting rays, tile by tile. With multi-threading the
+     * tiles are rendered by the tasks of a fork-join pool of the threads
      *
      * @throws MissingResourceException if any required field is null
      */
@@ -634,36 +660,94 @@ public class Camera implements Cloneable {
 
         int nX = imageWriter.getNx();
         int nY = imageWriter.getNy();
-        pixelManager = new PixelManager(nY, nX, printInterval);
-        if (threadsCount == 0)// without multi threading improvement
-            for (int i = 0; i < nY; i++)
-                for (int j = 0; j < nX; j++)
-                    // imageWriter.writePixel(j, i, castRay(nX, nY, j, i));
-                    castRay(nX, nY, j, i);
+        // a tile holds whole packets
+        int size = (tileSize + packetSize - 1) / packetSize * packetSize;
+        pixelManager = new PixelManager(nY, nX, printInterval, size);
+        int tiles = pixelManager.tiles();
+        if (threadsCount == 0) // without multi threading improvement
+            for (int tile = 0; tile < tiles; ++tile)
+                renderTile(nX, nY, tile);
         else { // multi threading
-            var threads = new LinkedList<Thread>(); // list of threads
-            while (threadsCount-- > 0) // add appropriate number of threads
-                threads.add(new Thread(() -> { // add a thread with its code
-                    Pixel pixel; // current pixel(row,col)
-                    // allocate pixel(row,col) in loop until there are no more pixels
-                    while ((pixel = pixelManager.nextPixel()) != null)
-                        // cast ray through pixel (and color it – inside castRay)
-                        castRay(nX, nY, pixel.col(), pixel.row());
-                }));
-            // start all the threads
-            for (var thread : threads)
-                thread.start();
-            // wait until all the threads have finished
-            for (var thread : threads)
-                try {
-                    thread.join();
-                } catch (InterruptedException ignore) {
-                }
+            ForkJoinPool pool = new ForkJoinPool(threadsCount);
+            try {
+                pool.invoke(new TileTask(nX, nY, 0, tiles));
+            } finally {
+                pool.shutdown();
+            }
         }
         return this;
     }
 
+    /**
+     * Renders a tile of pixels - pixel by pixel, or packet by packet if the
+     * packets are on
+     *
+     * @param nX   resolution on X axis (number of pixels in row)
+     * @param nY   resolution on Y axis (number of pixels in column)
+     * @param tile the number of the tile
+     */
+    private void renderTile(int nX, int nY, int tile) {
+        int col = pixelManager.tileCol(tile);
+        int row = pixelManager.tileRow(tile);
+        int width = pixelManager.tileWidth(tile);
+        int height = pixelManager.tileHeight(tile);
+        if (packetSize > 1)
+            for (int i = 0; i < height; i += packetSize)
+                for (int j = 0; j < width; j += packetSize)
+                    castTile(nX, nY, col + j, row + i);
+        else
+            for (int i = 0; i < height; ++i)
+                for (int j = 0; j < width; ++j)
+                    castRay(nX, nY, col + j, row + i);
+        pixelManager.tileDone(tile);
+    }
+
+    /**
+     * Task rendering a range of tiles. The range is split in halves down to
+     * single tiles, so the idle threads of the pool steal the halves that the
+     * busy threads haven't reached yet - the tiles of a complex part of the image
+     * don't hold up the rest of the threads
+     */
+    private final class TileTask extends RecursiveAction {
+        /** Serialization version of the tile task */
+        private static final long serialVersionUID = 1L;
+
+        /** Resolution on X axis */
+        private final int nX;
+        /** Resolution on Y axis */
+        private final int nY;
+        /** The first tile of the range */
+        private final int from;
+        /** The tile after the range */
+        private final int to;
+
+        /**
+         * Creates a task rendering a range of tiles
+         *
+         * @param nX   resolution on X axis (number of pixels in row)
+         * @param nY   resolution on Y axis (number of pixels in column)
+         * @param from the first tile of the range
+         * @param to   the tile after the range
+         */
+        TileTask(int nX, int nY, int from, int to) {
+            this.nX = nX;
+            this.nY = nY;
+            this.from = from;
+            this.to = to;
+        }
 
+        @Override
+        protected void compute() {
+            // an empty range (an image without pixels) has nothing to split
+            if (to - from <= 1) {
+                if (to > from)
+                    renderTile(nX, nY, from);
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new TileTask(nX, nY, from, middle), new TileTask(nX, nY, middle, to));
+        }
+    }
 
     /* @param interval The interval between grid lines.
      * @param color    The color of the grid lines.
@@ -797,6 +881,42 @@ public class Camera implements Cloneable {
             return this;
         }
 
+        /**
+         *
+         * Sets the size of the square tiles of pixels whose primary rays are traced
+         * together as one packet, e.g. 4 or 8. The packet traverses the acceleration
+         * structure of the scene once, so the neighbouring rays share the nodes they
+         * visit. 1 traces every ray on its own
+         *
+         * @param size the size of the side of a tile in pixels
+         * @return The Camera object itself (for method chaining)
+         * @throws IllegalArgumentException if the size is not positive
+         */
+        public Builder setPacketSize(int size) {
+            if (size < 1)
+                throw new IllegalArgumentException("packet size must be positive");
+            camera.packetSize = size;
+            return this;
+        }
+
+        /**
+         *
+         * Sets the size of the square tiles of pixels the threads render as one
+         * task, 16 by default. Smaller tiles balance the threads better, larger
+         * tiles schedule less tasks. With packets the tile is rounded up to whole
+         * packets
+         *
+         * @param size the size of the side of a tile in pixels
+         * @return The Camera object itself (for method chaining)
+         * @throws IllegalArgumentException if the size is not positive
+         */
+        public Builder setTileSize(int size) {
+            if (size < 1)
+                throw new IllegalArgumentException("tile size must be positive");
+            camera.tileSize = size;
+            return this;
+        }
+
         /**
          *
          * Sets the debug print interval for the Camera.
@@ -1,93 +1,102 @@
 package renderer;
 
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
 /** PixelManager is a helper class. It is used for multi-threading in the
  * renderer and
  * for follow up its progress.<br/>
- * A Camera uses one pixel manager object and several Pixel objects - one in
- * each thread.*/
+ * The image is divided into square tiles, numbered row by row of tiles. The
+ * threads of the renderer get the tiles from the tasks of a fork-join pool (see
+ * {@link Camera#renderImage()}), so the pixel manager holds no lock - it only
+ * maps a tile number to its pixels and counts the rendered pixels once per
+ * tile. */
 class PixelManager {
-    /** Immutable class for object containing allocated pixel (with its row and
-     * column numbers) */
-    record Pixel(int col, int row) {
-    }
-
     /** Maximum rows of pixels */
-    private int                 maxRows       = 0;
+    private final int           maxRows;
     /** Maximum columns of pixels */
-    private int                 maxCols       = 0;
+    private final int           maxCols;
+    /** Size of the side of a tile in pixels */
+    private final int           tileSize;
+    /** Amount of tiles in a row of tiles */
+    private final int           tilesX;
     /** Total amount of pixels in the generated image */
-    private long                totalPixels   = 0l;
+    private final long          totalPixels;
 
-    /** Currently processed row of pixels */
-    private volatile int        cRow          = 0;
-    /** Currently processed column of pixels */
-    private volatile int        cCol          = -1;
     /** Amount of pixels that have been processed */
-    private volatile long       pixels        = 0l;
-    /** Last printed progress update percentage */
-    private volatile int        lastPrinted   = 0;
+    private final LongAdder     pixels        = new LongAdder();
+    /** Last printed progress update percentage (in tenths of a percent) */
+    private final AtomicInteger lastPrinted   = new AtomicInteger();
 
     /** Flag of debug printing of progress percentage */
-    private boolean             print         = false;
+    private final boolean       print;
     /** Progress percentage printing interval */
-    private long                printInterval = 100l;
+    private final long          printInterval;
     /** Printing format */
     private static final String PRINT_FORMAT  = "%5.1f%%\r";
-    /** Mutual exclusion object for synchronizing next pixel allocation between
-     * threads */
-    private Object              mutexNext     = new Object();
-    /** Mutual exclusion object for printing progress percentage in console window
-     * by different threads */
-    private Object              mutexPixels   = new Object();
 
     /** Initialize pixel manager data for multi-threading
      * @param maxRows  the amount of pixel rows
      * @param maxCols  the amount of pixel columns
      * @param interval print time interval in seconds, 0 if printing is not
-     *                 required */
-    PixelManager(int maxRows, int maxCols, double interval) {
+     *                 required
+     * @param tileSize the size of the side of a tile in pixels */
+    PixelManager(int maxRows, int maxCols, double interval, int tileSize) {
         this.maxRows  = maxRows;
         this.maxCols  = maxCols;
+        this.tileSize = tileSize;
+        tilesX        = (maxCols + tileSize - 1) / tileSize;
         totalPixels   = (long) maxRows * maxCols;
         printInterval = (int) (interval * 10);
         if (print = printInterval != 0) System.out.printf(PRINT_FORMAT, 0d);
     }
 
-    /** Function for thread-safe manipulating of main follow up Pixel object - this
-     * function is critical section for all the threads, and the pixel manager data
-     * is the shared data of this critical section.<br/>
-     * The function provides next available pixel number each call.
-     * @return true if next pixel is allocated, false if there are no more pixels */
-    Pixel nextPixel() {
-        synchronized (mutexNext) {
-            if (cRow == maxRows) return null;
+    /** Returns the amount of the tiles of the image
+     * @return the amount of the tiles */
+    int tiles() {
+        return tilesX * ((maxRows + tileSize - 1) / tileSize);
+    }
 
-            ++cCol;
-            if (cCol < maxCols)
-                return new Pixel(cRow, cCol);
+    /** Returns the column of the top left pixel of a tile
+     * @param  tile the number of the tile
+     * @return      the column of the pixel */
+    int tileCol(int tile) {
+        return tile % tilesX * tileSize;
+    }
+
+    /** Returns the row of the top left pixel of a tile
+     * @param  tile the number of the tile
+     * @return      the row of the pixel */
+    int tileRow(int tile) {
+        return tile / tilesX * tileSize;
+    }
+
+    /** Returns the width of a tile - the tiles of the last column may be cut by
+     * the image border
+     * @param  tile the number of the tile
+     * @return      the width in pixels */
+    int tileWidth(int tile) {
+        return Math.min(tileSize, maxCols - tileCol(tile));
+    }
 
-            cCol = 0;
-            ++cRow;
-            if (cRow < maxRows)
-                return new Pixel(cRow, cCol);
-        }
-        return null;
+    /** Returns the height of a tile - the tiles of the last row may be cut by the
+     * image border
+     * @param  tile the number of the tile
+     * @return      the height in pixels */
+    int tileHeight(int tile) {
+        return Math.min(tileSize, maxRows - tileRow(tile));
     }
 
-    /** Finish pixel processing by updating and printing of progress percentage */
-    void pixelDone() {
-        boolean flag       = false;
-        int     percentage = 0;
-        synchronized (mutexPixels) {
-            ++pixels;
-            if (print) {
-                percentage = (int) (1000l * pixels / totalPixels);
-                if (percentage - lastPrinted >= printInterval) {
-                    lastPrinted = percentage;
-                    flag        = true;
-                }
-            }
-            if (flag) System.out.printf(PRINT_FORMAT, percentage / 10d);
-        }
+    /** Finish tile processing by updating and printing of progress percentage.
+     * The counter is a {@link LongAdder}, so the threads don't contend on it,
+     * and only the thread that moves the printed percentage forward prints it
+     * @param tile the number of the tile */
+    void tileDone(int tile) {
+        pixels.add((long) tileWidth(tile) * tileHeight(tile));
+        if (!print) return;
+        int percentage = (int) (1000l * pixels.sum() / totalPixels);
+        int last       = lastPrinted.get();
+        if (percentage - last >= printInterval && lastPrinted.compareAndSet(last, percentage))
+            System.out.printf(PRINT_FORMAT, percentage / 10d);
     }
-}
\ No newline at end of file
+}
@@ -24,4 +24,18 @@ public abstract class RayTracerBase {
      * @return color of the closest intersection point on the ray
      */
     public abstract Color traceRay(Ray ray);
+
+    /**
+     * Receives a packet of coherent rays (e.g. the rays of a tile of pixels) and
+     * returns the color of the nearest intersection point on every ray.
+     *
+     * @param rays the rays of the packet
+     * @return color of the closest intersection point on every ray
+     */
+    public Color[] traceRays(Ray[] rays) {
+        Color[] colors = new Color[rays.length];
+        for (int i = 0; i < rays.length; ++i)
+            colors[i] = traceRay(rays[i]);
+        return colors;
+    }
 }
@@ -3,15 +3,19 @@ package renderer;
 import lighting.LightSource;
 import primitives.*;
 import scene.Scene;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import geometries.Intersectable.GeoPoint;
 import static primitives.Util.alignZero;
 import static primitives.Util.isZero;
+import static primitives.Util.spreadBits;
 import primitives.Color;
 import primitives.Double3;
 import primitives.Material;
 import primitives.Point;
 import primitives.Ray;
+import primitives.Vec3;
 import primitives.Vector;
 
 /**
@@ -37,6 +41,14 @@ public class SimpleRayTracer extends  RayTracerBase {
 
     private boolean softShadows = false;
     private int gridResolution = 1;
+    /** Whether the secondary rays of a packet are queued, sorted and traced by levels */
+    private boolean sortSecondaryRays = false;
+    /** Amount of sorted secondary rays traced together */
+    private static final int SECONDARY_PACKET_SIZE = 16;
+    /** Bits of the cell of a secondary ray head per axis in its sort key */
+    private static final int CELL_BITS = 10;
+    /** Bits of the index of a secondary ray in its sort key */
+    private static final int INDEX_BITS = 30;
 
     private int nXY = 22;
     private double distanceGrid = 1;
@@ -55,26 +67,11 @@ public class SimpleRayTracer extends  RayTracerBase {
                         (j - gridResolution / 2.0) * radius / gridResolution,
                         0
                 ));
-                Vector lightDirection = randomPoint.subtract(geopoint.point).normalize();
-                Ray lightRay = new Ray(geopoint.point, lightDirection, n);
-                double lightDistance = light.getDistance(geopoint.point);
-
-                var intersections = this.scene.geometries.findGeoIntersections(lightRay);
-                if (intersections == null) {
-                    ktr = ktr.add(Double3.ONE);
-                    continue;
-                }
-                Double3 ktrLocal = Double3.ONE;
-                for (GeoPoint gp : intersections) {
-                    if (alignZero(gp.point.distance(geopoint.point) - lightDistance) <= 0) {
-                        ktrLocal = ktrLocal.product(gp.geometry.getMaterial().kT);
-                        if (ktrLocal.lowerThan(MIN_CALC_COLOR_K)) {
-                            ktrLocal = Double3.ZERO;
-                            break;
-                        }
-                    }
-                }
-                ktr = ktr.add(ktrLocal);
+                Vector lightDirection = randomPoint.subtract(geopoint.getPoint()).normalize();
+                Ray lightRay = new Ray(geopoint.getPoint(), lightDirection, n);
+                double lightDistance = light.getDistance(geopoint.getPoint());
+
+                ktr = ktr.add(scene.geometries.findTransparency(lightRay, lightDistance, MIN_CALC_COLOR_K));
             }
         }
         return ktr.scale(1.0 / rays);
@@ -90,6 +87,163 @@ public class SimpleRayTracer extends  RayTracerBase {
         //findGeoIntersections
     }
 
+    /**
+     * Traces a packet of primary rays - the closest points of all the rays are
+     * found by a single traversal of the geometries, then every point is colored
+     * on its own
+     *
+     * @param rays the rays of the packet
+     * @return color of the closest intersection point on every ray
+     */
+    @Override
+    public Color[] traceRays(Ray[] rays) {
+        if (sortSecondaryRays)
+            return traceWavefront(rays);
+        GeoPoint[] points = scene.geometries.findClosestIntersections(rays);
+        Color[] colors = new Color[rays.length];
+        for (int i = 0; i < rays.length; ++i)
+            colors[i] = points[i] == null ? scene.background : calcColor(points[i], rays[i]);
+        return colors;
+    }
+
+    /**
+     * A ray queued for tracing by levels, with the pixel it contributes to
+     *
+     * @param pixel the index of the ray of the packet the ray descends from
+     * @param ray   the ray
+     * @param k     the product of the coefficients along the path of the ray
+     * @param gp    the closest point of the ray, null until it is traced
+     */
+    private record QueuedRay(int pixel, Ray ray, Double3 k, GeoPoint gp) {
+    }
+
+    /**
+     * Traces a packet of primary rays by levels instead of recursively. The
+     * secondary rays of every level - reflected and refracted - are queued,
+     * sorted by the cell of their heads and by the octant of their directions,
+     * and traced together in small packets, so neighbouring rays of a batch visit
+     * the same nodes of the acceleration structure. Every hit point adds its
+     * local effects, scaled by the coefficients along its path, to its pixel
+     *
+     * @param rays the primary rays of the packet
+     * @return color of every ray
+     */
+    private Color[] traceWavefront(Ray[] rays) {
+        Color[] colors = new Color[rays.length];
+        GeoPoint[] points = scene.geometries.findClosestIntersections(rays);
+        List<QueuedRay> queue = new ArrayList<>();
+        for (int i = 0; i < rays.length; ++i)
+            if (points[i] == null)
+                colors[i] = scene.background;
+            else {
+                colors[i] = scene.ambientLight.getIntensity();
+                queue.add(new QueuedRay(i, rays[i], Double3.ONE, points[i]));
+            }
+
+        for (int level = MAX_CALC_COLOR_LEVEL; !queue.isEmpty(); --level) {
+            List<QueuedRay> next = new ArrayList<>();
+            for (QueuedRay q : queue) {
+                colors[q.pixel] = colors[q.pixel].add(calcLocalEffects(q.gp, q.ray, q.k).scale(q.k));
+                if (level > 1) {
+                    Material material = q.gp.geometry.getMaterial();
+                    queueSecondaryRay(next, q, constructRefractedRay(q.gp, q.ray), material.kT);
+                    queueSecondaryRay(next, q, constructReflectedRay(q.gp, q.ray), material.kR);
+                }
+            }
+            queue = traceSorted(next);
+        }
+        return colors;
+    }
+
+    /**
+     * Queues a secondary ray unless its contribution is negligible
+     *
+     * @param queue  the queue of the next level
+     * @param parent the ray the secondary ray was constructed from
+     * @param ray    the secondary ray
+     * @param kX     the reflection or transparency coefficient
+     */
+    private void queueSecondaryRay(List<QueuedRay> queue, QueuedRay parent, Ray ray, Double3 kX) {
+        Double3 k = kX.product(parent.k);
+        if (!k.lowerThan(MIN_CALC_COLOR_K))
+            queue.add(new QueuedRay(parent.pixel, ray, k, null));
+    }
+
+    /**
+     * Sorts queued rays by Morton codes of the cells of their heads, prefixed by
+     * the octants of their directions, and traces them in small packets
+     *
+     * @param queue the queued rays
+     * @return the rays that hit a geometry, with their closest points
+     */
+    private List<QueuedRay> traceSorted(List<QueuedRay> queue) {
+        int n = queue.size();
+        Ray[] queued = new Ray[n];
+        for (int i = 0; i < n; ++i)
+            queued[i] = queue.get(i).ray;
+        int[] order = sortOrder(queued);
+
+        List<QueuedRay> hits = new ArrayList<>(n);
+        for (int from = 0; from < n; from += SECONDARY_PACKET_SIZE) {
+            int size = Math.min(SECONDARY_PACKET_SIZE, n - from);
+            QueuedRay[] batch = new QueuedRay[size];
+            Ray[] rays = new Ray[size];
+            for (int i = 0; i < size; ++i) {
+                batch[i] = queue.get(order[from + i]);
+                rays[i] = batch[i].ray;
+            }
+            GeoPoint[] points = scene.geometries.findClosestIntersections(rays);
+            for (int i = 0; i < size; ++i)
+                if (points[i] != null)
+                    hits.add(new QueuedRay(batch[i].pixel, rays[i], batch[i].k, points[i]));
+        }
+        return hits;
+    }
+
+    /**
+     * Orders rays for tracing - by the octants of their directions, then by Morton
+     * codes of the cells of their heads in the bounds of all the heads, then by
+     * their indices
+     *
+     * @param rays the rays
+     * @return the indices of the rays in the order of tracing
+     */
+    static int[] sortOrder(Ray[] rays) {
+        int n = rays.length;
+        double[] min = { Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY };
+        double[] max = { Double.NEGATIVE_INFINITY, Double.NEGATIVE_INFINITY, Double.NEGATIVE_INFINITY };
+        for (Ray ray : rays) {
+            Point head = ray.getHead();
+            double[] xyz = { head.getX(), head.getY(), head.getZ() };
+            for (int axis = 0; axis < 3; ++axis) {
+                min[axis] = Math.min(min[axis], xyz[axis]);
+                max[axis] = Math.max(max[axis], xyz[axis]);
+            }
+        }
+        double[] scale = new double[3];
+        for (int axis = 0; axis < 3; ++axis)
+            scale[axis] = max[axis] > min[axis] ? ((1 << CELL_BITS) - 1) / (max[axis] - min[axis]) : 0;
+
+        // sort key above the index of the ray - 3 + 3 * CELL_BITS + INDEX_BITS bits,
+        // clear of the sign bit so the signed order of the keys is their order
+        long[] keys = new long[n];
+        for (int i = 0; i < n; ++i) {
+            Point head = rays[i].getHead();
+            Vector dir = rays[i].getDirection();
+            long octant = (dir.getX() < 0 ? 4 : 0) | (dir.getY() < 0 ? 2 : 0) | (dir.getZ() < 0 ? 1 : 0);
+            long cell = spreadBits((int) ((head.getX() - min[0]) * scale[0])) << 2
+                    | spreadBits((int) ((head.getY() - min[1]) * scale[1])) << 1
+                    | spreadBits((int) ((head.getZ() - min[2]) * scale[2]));
+            keys[i] = (octant << 3 * CELL_BITS | cell) << INDEX_BITS | i;
+        }
+        Arrays.sort(keys);
+
+        int[] order = new int[n];
+        for (int i = 0; i < n; ++i)
+            order[i] = (int) (keys[i] & (1L << INDEX_BITS) - 1);
+        return order;
+    }
+
     /**
      * Calculates the color at a given point.
      * In this simple implementation, it returns the ambient light intensity of the scene.
@@ -118,13 +272,17 @@ public class SimpleRayTracer extends  RayTracerBase {
     }
 
     private Ray constructReflectedRay(GeoPoint gp, Ray ray) {
-        Vector normal=gp.geometry.getNormal(gp.point);
-        return new Ray( gp.point, ray.getDirection().subtract(normal.scale(2*ray.getDirection().dotProduct(normal))), normal);
+        Vector normal=gp.getNormal();
+        Vector v=ray.getDirection();
+        // r = v - 2(v.n)n on primitive doubles, only the result is allocated
+        double vn2=2*v.dotProduct(normal);
+        Vec3 r=new Vec3().set(normal);
+        return new Ray( gp.getPoint(), r.set(v.getX()-r.x*vn2, v.getY()-r.y*vn2, v.getZ()-r.z*vn2).toVector(), normal);
     }
 
     private Ray constructRefractedRay(GeoPoint gp, Ray ray) {
-        Vector normal=gp.geometry.getNormal(gp.point);
-        return new Ray( gp.point, ray.getDirection(), normal);
+        Vector normal=gp.getNormal();
+        return new Ray( gp.getPoint(), ray.getDirection(), normal);
     }
 
     private Color calcGlobalEffect( Ray ray,Double3 kX, int level, Double3 k) {
@@ -144,7 +302,7 @@ public class SimpleRayTracer extends  RayTracerBase {
 
     private Color calcLocalEffects(GeoPoint gp, Ray ray,Double3 k){
         Color color = gp.geometry.getEmission();
-        Vector n=gp.geometry.getNormal(gp.point);
+        Vector n=gp.getNormal();
         Vector v=ray.getDirection();
         double nv= Util.alignZero(n.dotProduct(v));
         if (nv==0)
@@ -152,13 +310,12 @@ public class SimpleRayTracer extends  RayTracerBase {
         Material material=gp.geometry.getMaterial();
         for(LightSource lightSource:scene.lights){
 
-            Vector l=lightSource.getL(gp.point);
+            Vector l=lightSource.getL(gp.getPoint());
             double nl=Util.alignZero(n.dotProduct(l));
             if(Util.alignZero(nl*nv)>0){
-                Double3 ktr = transperency(gp, lightSource, l, n,nl);
-                ktr = softShadows ? softShadows(gp, lightSource, l, n) : transperency(gp, lightSource, l, n,nl);
+                Double3 ktr = softShadows ? softShadows(gp, lightSource, l, n) : transperency(gp, lightSource, l, n,nl);
                 if (!(ktr.product(k).lowerThan(MIN_CALC_COLOR_K))) {
-                    Color il = lightSource.getIntensity(gp.point).scale(ktr);
+                    Color il = lightSource.getIntensity(gp.getPoint()).scale(ktr);
                     color = color.add(il.scale(calcDiffusive(material, nl)), il.scale(calcSpecular(material, n, l, nl, v)));
                 }
             }
@@ -200,8 +357,11 @@ public class SimpleRayTracer extends  RayTracerBase {
     }
 
     private Double3 calcSpecular(Material material, Vector normal, Vector lightDir, double cosAngle, Vector rayDir) {
-        Vector r = lightDir.subtract(normal.scale(2 * cosAngle));
-        double coefficient = -rayDir.dotProduct(r);
+        // r = l - 2(n.l)n on primitive doubles
+        double nl2 = 2 * cosAngle;
+        Vec3 r = new Vec3().set(lightDir.getX() - normal.getX() * nl2, lightDir.getY() - normal.getY() * nl2,
+                lightDir.getZ() - normal.getZ() * nl2);
+        double coefficient = -r.dot(rayDir);
         coefficient = Util.alignZero(coefficient) > 0 ? coefficient : 0;
         return material.kS.scale(Math.pow(coefficient, material.nShininess));
     }
@@ -209,28 +369,14 @@ public class SimpleRayTracer extends  RayTracerBase {
     private boolean unshaded(GeoPoint gp,LightSource light, Vector l, Vector n,double nl){
         Vector lightDirection=l.scale(-1);
         Vector deltaVector=n.scale(Util.alignZero(nl)<0?DELTA:-DELTA);
-        Point point=gp.point.add(deltaVector);
+        Point point=gp.getPoint().add(deltaVector);
         Ray lightRay=new Ray(point,lightDirection);
-        GeoPoint intersectionPoint=scene.geometries.findClosestIntersection(lightRay);
-        if(intersectionPoint==null)
-            return true;
-        if(intersectionPoint.point.distance(point)<light.getDistance(point))
-            return false;
-        return true;
+        return scene.geometries.findClosestIntersection(lightRay, light.getDistance(point)) == null;
 
     }
     private Double3 transperency(GeoPoint gp,LightSource light, Vector l, Vector n,double nl){
-        Ray lightRay = new Ray( gp.point, l.scale(-1),n);
-        List<GeoPoint> intersections = scene.geometries.findGeoIntersections(lightRay, light.getDistance(gp.point));
-        //  GeoPoint intersectionPoint=scene.geometries.findClosestIntersection(lightRay);
-
-        Double3 ktr = Double3.ONE;
-        if (intersections == null)
-            return ktr;
-        for (GeoPoint intersection : intersections)
-            if(intersection.point.distance(gp.point)<light.getDistance(gp.point))
-                ktr = ktr.product(intersection.geometry.getMaterial().kT);
-        return ktr;
+        Ray lightRay = new Ray( gp.getPoint(), l.scale(-1),n);
+        return scene.geometries.findTransparency(lightRay, light.getDistance(gp.getPoint()), MIN_CALC_COLOR_K);
     }
 
     private List<Ray> constructTransparencyRays(Point p, Vector v, Vector n, double gd) {
@@ -257,6 +403,20 @@ public class SimpleRayTracer extends  RayTracerBase {
         return this;
     }
 
+    /**
+     * Sets whether the secondary rays of a packet of primary rays (see
+     * {@link Camera.Builder#setPacketSize(int)}) are traced by levels - queued
+     * per packet, sorted by the cells of their heads and the octants of their
+     * directions, and traced together
+     *
+     * @param sortSecondaryRays true to sort the secondary rays
+     * @return the SimpleRayTracer object itself (for method chaining)
+     */
+    public SimpleRayTracer setSortSecondaryRays(boolean sortSecondaryRays) {
+        this.sortSecondaryRays = sortSecondaryRays;
+        return this;
+    }
+
     public SimpleRayTracer setGridResolution(int grid) {
         this.gridResolution = grid;
         return this;
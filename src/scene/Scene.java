@@ -1,5 +1,6 @@
 package scene;
 
+import java.nio.file.Path;
 import java.util.LinkedList;
 import java.util.List;
 import geometries.Geometries;
@@ -26,6 +27,7 @@ public class Scene {
     public Scene(String name) {
         this.name = name;
         Intersectable.createCBR(false);
+        Intersectable.createSinglePrecision(false);
     }
 
     /**
@@ -82,6 +84,17 @@ public class Scene {
         return this;
     }
 
+    /**
+     * Sets single precision storage of the bulk geometry data for creating the
+     * scene, for large meshes
+     *
+     * @return the Scene object itself (for method chaining)
+     */
+    public Scene setSinglePrecision() {
+        Intersectable.createSinglePrecision(true);
+        return this;
+    }
+
     /**
      * Creates Bounding Volume Hierarchy in the scene
      *
@@ -92,6 +105,65 @@ public class Scene {
         return this;
     }
 
+    /**
+     * Creates Bounding Volume Hierarchy in the scene through a cache on the disk,
+     * a hierarchy of the same geometries is loaded instead of being built
+     *
+     * @param cacheDirectory the directory of the cache
+     * @return the Scene object itself (for method chaining)
+     */
+    public Scene setBVH(Path cacheDirectory) {
+        geometries.createBVH(cacheDirectory);
+        return this;
+    }
+
+    /**
+     * Creates a uniform grid of the geometries in the scene instead of a Bounding
+     * Volume Hierarchy
+     *
+     * @return the Scene object itself (for method chaining)
+     */
+    public Scene setGrid() {
+        geometries.createGrid();
+        return this;
+    }
+
+    /**
+     * Acceleration structures of the geometries in the scene
+     */
+    public enum Acceleration {
+        /** Bounding Volume Hierarchy */
+        BVH,
+        /** Bounding Volume Hierarchy built fast by Morton codes */
+        LBVH,
+        /** Bounding Volume Hierarchy of nodes with 4 children */
+        QBVH,
+        /** Bounding Volume Hierarchy with spatial splits */
+        SBVH,
+        /** Uniform grid */
+        GRID,
+        /** kd-tree */
+        KD_TREE
+    }
+
+    /**
+     * Creates an acceleration structure of the geometries in the scene
+     *
+     * @param acceleration the kind of the structure
+     * @return the Scene object itself (for method chaining)
+     */
+    public Scene setAcceleration(Acceleration acceleration) {
+        switch (acceleration) {
+            case BVH -> geometries.createBVH();
+            case LBVH -> geometries.createLBVH();
+            case QBVH -> geometries.createQBVH();
+            case SBVH -> geometries.createSBVH();
+            case GRID -> geometries.createGrid();
+            case KD_TREE -> geometries.createKdTree();
+        }
+        return this;
+    }
+
     @Override
     public String toString() {
         return "Scene [name=" + name + ", background=" + background + ", ambientLight=" + ambientLight + ", geometries="
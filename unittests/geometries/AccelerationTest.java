@@ -0,0 +1,211 @@
+package geometries;
+
+import java.util.List;
+
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+
+import geometries.Intersectable.GeoPoint;
+import primitives.Double3;
+import primitives.Material;
+import primitives.Point;
+import primitives.Ray;
+import primitives.Vector;
+import scene.Scene;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Conformance tests of all the acceleration structures of
+ * {@link geometries.Geometries} (see {@link scene.Scene.Acceleration}) - every
+ * structure must find the points the flat geometries find. The cases of a
+ * single structure are in its own test class
+ *
+ * @author Moy and Efrat
+ */
+class AccelerationTest {
+
+    /**
+     * Builds 10x10 unit spheres of kT 0.5 in the plane z=0, 3 units apart, and a
+     * plane x=-10 behind them, in an acceleration structure
+     *
+     * @param acceleration the kind of the structure
+     * @return the geometries
+     */
+    private static Geometries createGeometries(Scene.Acceleration acceleration) {
+        Scene scene = new Scene("Acceleration").setCBR();
+        for (int i = 0; i < 10; ++i)
+            for (int j = 0; j < 10; ++j)
+                scene.geometries.add(new Sphere(new Point(i * 3, j * 3, 0), 1) //
+                        .setMaterial(new Material().setKT(0.5)));
+        scene.geometries.add(new Plane(new Point(-10, 0, 0), new Vector(1, 0, 0)));
+        scene.setAcceleration(acceleration);
+        return scene.geometries;
+    }
+
+    /**
+     * Builds 10x10 unit spheres in the plane z=0, 3 units apart, and a big sphere
+     * in their middle, which is cut by the partitions of the structures - by the
+     * split planes of a kd-tree, by many cells of a grid and overlaps many nodes
+     * of a hierarchy
+     *
+     * @return the geometries, the sphere of center (3i, 3j, 0) at index i*10+j and
+     *         the big sphere at index 100
+     */
+    static Intersectable[] createScene() {
+        Intersectable[] geometries = new Intersectable[101];
+        for (int i = 0; i < 10; ++i)
+            for (int j = 0; j < 10; ++j)
+                geometries[i * 10 + j] = new Sphere(new Point(i * 3, j * 3, 0), 1);
+        geometries[100] = new Sphere(new Point(13.5, 13.5, 0), 4);
+        return geometries;
+    }
+
+    /**
+     * Checks that a ray finds in a structure exactly the intersections it finds in
+     * a flat list of the same geometries
+     *
+     * @param flat      the flat list of the geometries
+     * @param structure the structure of the geometries
+     * @param ray       the ray
+     */
+    static void assertSameAsFlat(Geometries flat, Intersectable structure, Ray ray) {
+        List<GeoPoint> expected = flat.findGeoIntersections(ray);
+        List<GeoPoint> actual = structure.findGeoIntersections(ray);
+        assertEquals(expected == null ? 0 : expected.size(), actual == null ? 0 : actual.size(),
+                "Different number of points");
+        assertEquals(flat.findClosestIntersection(ray), structure.findClosestIntersection(ray),
+                "Different closest point");
+    }
+
+    /**
+     * Test method for {@link geometries.Geometries#findIntersections(primitives.Ray)}.
+     *
+     * @param acceleration the kind of the structure
+     */
+    @ParameterizedTest
+    @EnumSource(Scene.Acceleration.class)
+    void testFindIntersections(Scene.Acceleration acceleration) {
+        Intersectable.createCBR(true);
+        try {
+            Geometries geometries = createGeometries(acceleration);
+            // ============ Equivalence Partitions Tests ==============
+            // TC01: Ray crosses a whole row of spheres, every sphere once
+            assertEquals(20, geometries.findIntersections(new Ray(new Point(-5, 12, 0), new Vector(1, 0, 0))).size(),
+                    "Wrong number of points");
+            // TC02: Ray misses the structure
+            assertNull(geometries.findIntersections(new Ray(new Point(-5, -5, 10), new Vector(0, -1, 1))),
+                    "There shouldn't be any intersections");
+
+            // =============== Boundary Values Tests ==================
+            // TC11: Ray starts inside the structure
+            assertEquals(2, geometries.findIntersections(new Ray(new Point(6, 9, 5), new Vector(0, 0, -1))).size(),
+                    "Wrong number of points");
+        } finally {
+            Intersectable.createCBR(false);
+        }
+    }
+
+    /**
+     * Test method for
+     * {@link geometries.Intersectable#findClosestIntersection(primitives.Ray)}.
+     *
+     * @param acceleration the kind of the structure
+     */
+    @ParameterizedTest
+    @EnumSource(Scene.Acceleration.class)
+    void testFindClosestIntersection(Scene.Acceleration acceleration) {
+        Intersectable.createCBR(true);
+        try {
+            Geometries geometries = createGeometries(acceleration);
+            // ============ Equivalence Partitions Tests ==============
+            // TC01: The closest point is on the first sphere along the ray
+            assertEquals(new Point(28, 12, 0),
+                    geometries.findClosestIntersection(new Ray(new Point(40, 12, 0), new Vector(-1, 0, 0))).getPoint(),
+                    "Wrong closest point");
+            // TC02: Ray misses all the geometries
+            assertNull(geometries.findClosestIntersection(new Ray(new Point(-5, 1.5, 0), new Vector(1, 0, 0))),
+                    "There shouldn't be any intersection");
+
+            // =============== Boundary Values Tests ==================
+            // TC11: Geometry without a box behind all the spheres
+            assertEquals(new Point(-10, 1.5, 0),
+                    geometries.findClosestIntersection(new Ray(new Point(40, 1.5, 0), new Vector(-1, 0, 0))).getPoint(),
+                    "Wrong closest point");
+            // TC12: The spheres are before the geometry without a box
+            assertEquals(new Point(28, 0, 0),
+                    geometries.findClosestIntersection(new Ray(new Point(40, 0, 0), new Vector(-1, 0, 0))).getPoint(),
+                    "Wrong closest point");
+        } finally {
+            Intersectable.createCBR(false);
+        }
+    }
+
+    /**
+     * Test method for
+     * {@link geometries.Intersectable#findTransparency(primitives.Ray, double, double)}.
+     *
+     * @param acceleration the kind of the structure
+     */
+    @ParameterizedTest
+    @EnumSource(Scene.Acceleration.class)
+    void testFindTransparency(Scene.Acceleration acceleration) {
+        Intersectable.createCBR(true);
+        try {
+            Geometries geometries = createGeometries(acceleration);
+            Ray ray = new Ray(new Point(-5, 12, 0), new Vector(1, 0, 0));
+            // ============ Equivalence Partitions Tests ==============
+            // TC01: Two spheres before the maximal distance - 4 points of kT 0.5
+            assertEquals(new Double3(0.0625), geometries.findTransparency(ray, 10, 0.001), "Wrong transparency");
+            // TC02: All the spheres - the transparency drops below the minimum
+            assertEquals(Double3.ZERO, geometries.findTransparency(ray, 100, 0.001), "Wrong transparency");
+        } finally {
+            Intersectable.createCBR(false);
+        }
+    }
+
+    /**
+     * Test method for {@link geometries.Geometries#findIntersections(primitives.Ray)}
+     * and {@link geometries.Intersectable#findClosestIntersection(primitives.Ray)}
+     * of a geometry which is cut by the partitions of the structure.
+     *
+     * @param acceleration the kind of the structure
+     */
+    @ParameterizedTest
+    @EnumSource(Scene.Acceleration.class)
+    void testSameAsFlat(Scene.Acceleration acceleration) {
+        Intersectable.createCBR(true);
+        try {
+            Intersectable[] geometries = createScene();
+            Geometries flat = new Geometries(geometries);
+            Scene scene = new Scene("Acceleration").setCBR().setGeometries(new Geometries(geometries));
+            scene.setAcceleration(acceleration);
+            Geometries structure = scene.geometries;
+
+            // ============ Equivalence Partitions Tests ==============
+            // TC01: Ray starts inside the big sphere - the small sphere in front of it is
+            // the closest
+            Ray ray = new Ray(new Point(13.5, 12, 0), new Vector(1, 0, 0));
+            assertEquals(new Point(14, 12, 0), structure.findClosestIntersection(ray).getPoint(),
+                    "Wrong closest point");
+            assertSameAsFlat(flat, structure, ray);
+            // TC02: Ray starts inside the big sphere - a small sphere of a later part of
+            // the structure is closer than the far side of the big sphere
+            ray = new Ray(new Point(12, 10, 0.5), new Vector(1, 1, 0));
+            assertEquals(geometries[54], structure.findClosestIntersection(ray).geometry, "Wrong closest geometry");
+            assertSameAsFlat(flat, structure, ray);
+            // TC03: Diagonal rays cross the small spheres and the big sphere
+            assertSameAsFlat(flat, structure, new Ray(new Point(-5, -5, 0.5), new Vector(1, 1, 0)));
+            assertSameAsFlat(flat, structure, new Ray(new Point(40, 35, 0.2), new Vector(-1, -0.8, 0.01)));
+
+            // =============== Boundary Values Tests ==================
+            // TC11: Ray starts inside the big sphere and leaves it in another part of
+            // the structure
+            ray = new Ray(new Point(13.5, 13.5, 0), new Vector(1, 0, 0));
+            assertEquals(new Point(17.5, 13.5, 0), structure.findClosestIntersection(ray).getPoint(),
+                    "Wrong closest point");
+            assertSameAsFlat(flat, structure, ray);
+        } finally {
+            Intersectable.createCBR(false);
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package geometries;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.Test;
+
+import geometries.Intersectable.Box;
+import primitives.Point;
+import primitives.Ray;
+import primitives.Vector;
+
+/**
+ * Unit test for the Box class of the bounding volumes
+ *
+ * @author Moy and Efrat
+ */
+class BoxTest {
+    /** The unit cube */
+    private final Box box = new Box(0, 1, 0, 1, 0, 1);
+
+    /**
+     * Test method for
+     * {@link geometries.Intersectable.Box#entry(primitives.Ray, double, double)}.
+     */
+    @Test
+    void testEntry() {
+        Ray ray = new Ray(new Point(-1, 0.5, 0.5), new Vector(1, 0, 0));
+        // ============ Equivalence Partitions Tests ==============
+        // TC01: Ray enters the box within the interval
+        assertEquals(1, box.entry(ray, 0, 10), 1e-12, "Wrong entry distance");
+        // TC02: Interval ends before the box
+        assertEquals(Double.POSITIVE_INFINITY, box.entry(ray, 0, 0.5), "The box is beyond the interval");
+        // TC03: Interval begins after the box
+        assertEquals(Double.POSITIVE_INFINITY, box.entry(ray, 3, 10), "The box is before the interval");
+        // TC04: Interval begins inside the box
+        assertEquals(1.5, box.entry(ray, 1.5, 10), 1e-12, "Wrong entry distance inside the box");
+        // TC05: Ray in a negative direction
+        assertEquals(1, box.entry(new Ray(new Point(0.5, 2, 0.5), new Vector(0, -1, 0)), 0, 10), 1e-12,
+                "Wrong entry distance in a negative direction");
+        // TC06: Ray misses the box
+        assertEquals(Double.POSITIVE_INFINITY, box.entry(new Ray(new Point(-1, 2, 0.5), new Vector(1, 0.5, 0)), 0, 10),
+                "The ray misses the box");
+
+        // =============== Boundary Values Tests ==================
+        // TC11: Ray parallel to a slab, outside it
+        assertEquals(Double.POSITIVE_INFINITY, box.entry(new Ray(new Point(-1, 2, 0.5), new Vector(1, 0, 0)), 0, 10),
+                "The parallel ray misses the box");
+        // TC12: Ray parallel to a slab, on its plane
+        assertEquals(1, box.entry(new Ray(new Point(-1, 1, 0.5), new Vector(1, 0, 0)), 0, 10), 1e-12,
+                "The ray along the face enters the box");
+        // TC13: Interval ends exactly at the entry
+        assertEquals(1, box.entry(ray, 0, 1), 1e-12, "The box touches the end of the interval");
+    }
+}
@@ -4,6 +4,9 @@ import static org.junit.jupiter.api.Assertions.*;
 import org.junit.jupiter.api.Test;
 import primitives.*;
 import geometries.Cylinder;
+import java.util.List;
+
+import geometries.Intersectable.GeoPoint;
 
 /**
  * Unit test for Cylinder class
@@ -71,4 +74,77 @@ class CylinderTest {
         // ensure the result is right
         assertTrue(result5.equals(new Vector(0, 1, 0)) || result5.equals(new Vector(0, -1, 0)), "getNormal() wrong result");
     }
-}
\ No newline at end of file
+
+    /**
+     * Test method for
+     * {@link geometries.Cylinder#findIntersections(primitives.Ray)} and
+     * {@link geometries.Cylinder#findGeoIntersections(primitives.Ray, double)}.
+     */
+    @Test
+    void testFindIntersections() {
+        Cylinder cyl = new Cylinder(new Ray(new Point(0, 0, 0), new Vector(0, 0, 1)), 1, 2);
+        Vector v100 = new Vector(1, 0, 0);
+        // ============ Equivalence Partitions Tests ==============
+        // TC01: Ray crosses the side twice
+        assertEquals(List.of(new Point(-1, 0, 1), new Point(1, 0, 1)),
+                cyl.findIntersections(new Ray(new Point(-2, 0, 1), v100)), "Wrong points");
+        // TC02: Ray crosses both bases
+        assertEquals(List.of(new Point(0.5, 0, 0), new Point(0.5, 0, 2)),
+                cyl.findIntersections(new Ray(new Point(0.5, 0, -1), new Vector(0, 0, 1))), "Wrong points");
+        // TC03: Ray crosses the side and a base
+        List<GeoPoint> result = cyl.findGeoIntersections(new Ray(new Point(-2, 0, 0.5), new Vector(1, 0, 1)));
+        assertEquals(2, result.size(), "Wrong number of points");
+        assertEquals(new Point(-1, 0, 1.5), result.get(0).getPoint(), "Wrong point on the side");
+        assertEquals(new Point(-0.5, 0, 2), result.get(1).getPoint(), "Wrong point on the base");
+        assertEquals(new Vector(0, 0, 1), result.get(1).getNormal(), "Wrong normal of the base");
+        // TC04: Ray passes beyond the height
+        assertNull(cyl.findIntersections(new Ray(new Point(-2, 0, 3), v100)), "There shouldn't be any intersections");
+        // TC05: Only the first base is closer than the maximal distance
+        assertEquals(List.of(new Point(0.5, 0, 0)),
+                cyl.findGeoIntersections(new Ray(new Point(0.5, 0, -1), new Vector(0, 0, 1)), 2).stream()
+                        .map(GeoPoint::getPoint).toList(),
+                "Wrong point");
+
+        // =============== Boundary Values Tests ==================
+        // TC11: Ray in the plane of a base
+        assertNull(cyl.findIntersections(new Ray(new Point(-2, 0, 2), v100)), "There shouldn't be any intersections");
+        // TC12: Ray through the rims of both bases
+        assertNull(cyl.findIntersections(new Ray(new Point(-2, 0, 3), new Vector(1, 0, -1))),
+                "There shouldn't be any intersections");
+    }
+
+    /**
+     * Test method for the box of {@link geometries.Cylinder}.
+     */
+    @Test
+    void testBox() {
+        Intersectable.createCBR(true);
+        try {
+            Geometries geometries = new Geometries();
+            for (int i = 0; i < 10; ++i)
+                geometries.add(new Cylinder(new Ray(new Point(0, 3 * i, 0), new Vector(1, 0, 0)), 1, 2));
+            geometries.createBVH();
+
+            // ============ Equivalence Partitions Tests ==============
+            // TC01: The hierarchy finds the side of a cylinder
+            assertEquals(List.of(new Point(1, 12, 1)),
+                    geometries.findIntersections(new Ray(new Point(1, 12, 3), new Vector(0, 0, -1))).subList(0, 1),
+                    "Wrong point");
+            // TC02: Ray beyond the end of the cylinders
+            assertNull(geometries.findIntersections(new Ray(new Point(2.5, 12, 3), new Vector(0, 0, -1))),
+                    "There shouldn't be any intersections");
+
+            // =============== Boundary Values Tests ==================
+            // TC11: The box is tight around the tilted cylinder
+            Cylinder tilted = new Cylinder(new Ray(new Point(0, 0, 0), new Vector(0, 3, 4)), 1, 5);
+            assertEquals(-1, tilted.box.minX, 1e-12, "Wrong box");
+            assertEquals(1, tilted.box.maxX, 1e-12, "Wrong box");
+            assertEquals(-0.8, tilted.box.minY, 1e-12, "Wrong box");
+            assertEquals(3.8, tilted.box.maxY, 1e-12, "Wrong box");
+            assertEquals(-0.6, tilted.box.minZ, 1e-12, "Wrong box");
+            assertEquals(4.6, tilted.box.maxZ, 1e-12, "Wrong box");
+        } finally {
+            Intersectable.createCBR(false);
+        }
+    }
+}
@@ -1,6 +1,20 @@
 package geometries;
 
 import org.junit.jupiter.api.Test;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import geometries.Intersectable.GeoPoint;
+import primitives.Double3;
+import primitives.Material;
 import primitives.Point;
 import primitives.Ray;
 import primitives.Vector;
@@ -8,6 +22,20 @@ import static org.junit.jupiter.api.Assertions.*;
 
 class GeometriesTest {
 
+    /**
+     * Creates a square grid of unit spheres in the plane z=0, 3 units apart
+     *
+     * @param size the amount of spheres along a side of the grid
+     * @return the spheres, the sphere of center (3i, 3j, 0) at index i*size+j
+     */
+    private static Sphere[] createSpheres(int size) {
+        Sphere[] spheres = new Sphere[size * size];
+        for (int i = 0; i < size; ++i)
+            for (int j = 0; j < size; ++j)
+                spheres[i * size + j] = new Sphere(new Point(i * 3, j * 3, 0), 1);
+        return spheres;
+    }
+
     /**
      * Test method for {@link geometries.Geometries#findIntersections(primitives.Ray)}.
      */
@@ -38,4 +66,766 @@ class GeometriesTest {
 
         assertEquals(4, geometries.findIntersections(new Ray(new Point(0.5,0,-1), new Vector(0,0,1))).size(), "Wrong number of points");
     }
-}
\ No newline at end of file
+
+    /**
+     * Test method for {@link geometries.Geometries#createBVH()}.
+     */
+    @Test
+    void testCreateBVH() {
+        Intersectable.createCBR(true);
+        try {
+            Sphere[] spheres = createSpheres(10);
+            Geometries flat = new Geometries(spheres);
+            Geometries bvh = new Geometries(spheres);
+            Plane plane = new Plane(new Point(0, 0, -5), new Vector(0, 0, 1));
+            flat.add(plane);
+            bvh.add(plane);
+            bvh.createBVH();
+
+            // ============ Equivalence Partitions Tests ==============
+            // TC01: Ray crosses one sphere and the plane
+            Ray ray = new Ray(new Point(6, 9, 10), new Vector(0, 0, -1));
+            assertEquals(3, bvh.findIntersections(ray).size(), "Wrong number of points");
+            // TC02: Ray crosses a whole row of spheres
+            ray = new Ray(new Point(-5, 12, 0), new Vector(1, 0, 0));
+            assertEquals(20, bvh.findIntersections(ray).size(), "Wrong number of points");
+            assertEquals(flat.findIntersections(ray).size(), bvh.findIntersections(ray).size(),
+                    "BVH and flat geometries found different points");
+            // TC03: Ray misses all the geometries
+            assertNull(bvh.findIntersections(new Ray(new Point(-5, -5, 10), new Vector(0, -1, 1))),
+                    "There shouldn't be any intersections");
+        } finally {
+            Intersectable.createCBR(false);
+        }
+    }
+
+    /**
+     * Test method for {@link geometries.Geometries#createBVH()} on a scene large
+     * enough to be built in parallel.
+     */
+    @Test
+    void testCreateBVHParallel() throws Exception {
+        Intersectable.createCBR(true);
+        try {
+            Sphere[] spheres = createSpheres(100);
+            Geometries bvh = new Geometries(spheres);
+            bvh.createBVH();
+
+            // ============ Equivalence Partitions Tests ==============
+            // TC01: Ray crosses a whole row of spheres
+            Ray ray = new Ray(new Point(-5, 150, 0), new Vector(1, 0, 0));
+            assertEquals(200, bvh.findIntersections(ray).size(), "Wrong number of points");
+            assertEquals(new Point(-1, 150, 0), bvh.findClosestIntersection(ray).getPoint(), "Wrong closest point");
+            // TC02: Ray misses all the spheres
+            assertNull(bvh.findIntersections(new Ray(new Point(-5, 1.5, 0), new Vector(1, 0, 0))),
+                    "There shouldn't be any intersections");
+            // TC03: The tree doesn't depend on the amount of threads or on their timing
+            LinearBVH serial = buildIn(1, spheres);
+            for (int i = 0; i < 5; ++i) {
+                LinearBVH parallel = buildIn(Math.max(2, Runtime.getRuntime().availableProcessors()), spheres);
+                assertArrayEquals(serial.nodes(), parallel.nodes(), "Different nodes");
+                assertArrayEquals(serial.bounds(), parallel.bounds(), "Different bounds");
+                assertArrayEquals(serial.primitives(), parallel.primitives(), "Different primitives");
+            }
+        } finally {
+            Intersectable.createCBR(false);
+        }
+    }
+
+    /**
+     * Builds a hierarchy by {@link Geometries#createBVH()} in a ForkJoin pool
+     *
+     * @param parallelism the amount of threads of the pool
+     * @param geometries  the geometries
+     * @return the compiled hierarchy
+     * @throws Exception if the build fails
+     */
+    private static LinearBVH buildIn(int parallelism, Intersectable[] geometries) throws Exception {
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            Geometries bvh = new Geometries(geometries);
+            pool.submit(() -> bvh.createBVH()).get();
+            return (LinearBVH) bvh.accelerator();
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Finds the amount of primitives of the largest leaf of a compiled hierarchy
+     *
+     * @param bvh the geometries in a hierarchy
+     * @return the amount
+     */
+    private static int largestLeaf(Geometries bvh) {
+        int[] nodes = ((LinearBVH) bvh.accelerator()).nodes();
+        int largest = 0;
+        for (int i = 1; i < nodes.length; i += 2)
+            largest = Math.max(largest, nodes[i]);
+        return largest;
+    }
+
+    /**
+     * Checks that every node of a hierarchy is split in two, or is a leaf of
+     * geometries that aren't nodes
+     *
+     * @param node        the root of the hierarchy
+     * @param maxLeafSize the maximal amount of geometries in a leaf
+     * @return the amount of the geometries in the leaves of the hierarchy
+     */
+    private static int assertSplit(Intersectable node, int maxLeafSize) {
+        if (!(node instanceof Geometries geometries))
+            return 1;
+        List<Intersectable> children = geometries.children();
+        if (children.stream().noneMatch(child -> child instanceof Geometries)) {
+            assertTrue(children.size() <= maxLeafSize, "A leaf is too large");
+            return children.size();
+        }
+        assertEquals(2, children.size(), "A node isn't split in two");
+        return assertSplit(children.get(0), maxLeafSize) + assertSplit(children.get(1), maxLeafSize);
+    }
+
+    /**
+     * Test method for
+     * {@link geometries.Geometries#setBVHParameters(int, double, double)}.
+     */
+    @Test
+    void testSetBVHParameters() {
+        Intersectable.createCBR(true);
+        try {
+            Sphere[] spheres = createSpheres(10);
+            Geometries bvh = new Geometries(spheres);
+
+            // ============ Equivalence Partitions Tests ==============
+            // TC01: Default parameters - small leaves
+            bvh.createBVH();
+            assertTrue(largestLeaf(bvh) <= 4, "A leaf is larger than the default size");
+            // TC02: Expensive traversal - the leaves grow up to the maximal size
+            bvh.setBVHParameters(8, 100, 1).createBVH();
+            assertTrue(largestLeaf(bvh) > 4, "The traversal cost should make the leaves larger");
+            assertTrue(largestLeaf(bvh) <= 8, "A leaf is larger than the maximal size");
+            // TC03: A larger maximal size - larger leaves
+            bvh.setBVHParameters(16, 100, 1).createBVH();
+            assertTrue(largestLeaf(bvh) > 8, "The maximal size should make the leaves larger");
+            assertTrue(largestLeaf(bvh) <= 16, "A leaf is larger than the maximal size");
+            // TC04: Expensive intersection as well - the small leaves are back
+            bvh.setBVHParameters(16, 100, 100).createBVH();
+            assertTrue(largestLeaf(bvh) <= 2, "The intersection cost should split the leaves");
+            // TC05: A geometry straddling the split planes goes to one of the split
+            // children - every node has two children or is a leaf
+            Intersectable[] straddling = AccelerationTest.createScene();
+            Geometries big = new Geometries(straddling).setBVHParameters(2, 1, 1);
+            big.createBVH();
+            assertEquals(straddling.length, assertSplit(big.children().get(0), 2), "Wrong number of geometries");
+
+            // =============== Boundary Values Tests ==================
+            // TC11: Leaves of a single geometry despite an expensive traversal - a node
+            // of two single geometries is compiled to a leaf of two
+            bvh.setBVHParameters(1, 100, 1).createBVH();
+            assertTrue(largestLeaf(bvh) <= 2, "A leaf is larger than the maximal size");
+            // TC12: Leaves without geometries
+            assertThrows(IllegalArgumentException.class, () -> bvh.setBVHParameters(0, 1, 1),
+                    "A leaf size of zero should be rejected");
+            // TC13: Free traversal or intersection
+            assertThrows(IllegalArgumentException.class, () -> bvh.setBVHParameters(4, 0, 1),
+                    "A traversal cost of zero should be rejected");
+            assertThrows(IllegalArgumentException.class, () -> bvh.setBVHParameters(4, 1, 0),
+                    "An intersection cost of zero should be rejected");
+        } finally {
+            Intersectable.createCBR(false);
+        }
+    }
+
+    /**
+     * Test method for {@link geometries.Geometries#createLBVH()}.
+     */
+    @Test
+    void testCreateLBVH() {
+        Intersectable.createCBR(true);
+        try {
+            Geometries small = new Geometries(createSpheres(10));
+            small.add(new Plane(new Point(0, 0, -5), new Vector(0, 0, 1)));
+            small.createLBVH();
+            Geometries large = new Geometries(createSpheres(100));
+            large.createLBVH();
+
+            // ============ Equivalence Partitions Tests ==============
+            // TC01: Ray crosses one sphere and the plane
+            assertEquals(3, small.findIntersections(new Ray(new Point(6, 9, 10), new Vector(0, 0, -1))).size(),
+                    "Wrong number of points");
+            // TC02: Ray crosses a whole row of spheres
+            Ray ray = new Ray(new Point(-5, 12, 0), new Vector(1, 0, 0));
+            assertEquals(20, small.findIntersections(ray).size(), "Wrong number of points");
+            assertEquals(new Point(-1, 12, 0), small.findClosestIntersection(ray).getPoint(), "Wrong closest point");
+            // TC03: Ray crosses a whole row of a scene sorted in parallel
+            ray = new Ray(new Point(-5, 150, 0), new Vector(1, 0, 0));
+            assertEquals(200, large.findIntersections(ray).size(), "Wrong number of points");
+            assertEquals(new Point(-1, 150, 0), large.findClosestIntersection(ray).getPoint(), "Wrong closest point");
+        } finally {
+            Intersectable.createCBR(false);
+        }
+    }
+
+    /**
+     * Test method for {@link geometries.Geometries#createQBVH()}.
+     */
+    @Test
+    void testCreateQBVH() {
+        Intersectable.createCBR(true);
+        try {
+            Sphere[] spheres = createSpheres(10);
+            for (var sphere : spheres)
+                sphere.setMaterial(new Material().setKT(0.5));
+            Geometries qbvh = new Geometries(spheres);
+            qbvh.add(new Plane(new Point(0, 0, -5), new Vector(0, 0, 1)));
+            qbvh.createQBVH();
+
+            // ============ Equivalence Partitions Tests ==============
+            // TC01: Ray crosses one sphere and the plane
+            assertEquals(3, qbvh.findIntersections(new Ray(new Point(6, 9, 10), new Vector(0, 0, -1))).size(),
+                    "Wrong number of points");
+            // TC02: Ray crosses a whole row of spheres
+            Ray ray = new Ray(new Point(-5, 12, 0), new Vector(1, 0, 0));
+            assertEquals(20, qbvh.findIntersections(ray).size(), "Wrong number of points");
+            assertEquals(new Point(-1, 12, 0), qbvh.findClosestIntersection(ray).getPoint(), "Wrong closest point");
+            // TC03: Two spheres before the maximal distance - 4 points of kT 0.5
+            assertEquals(new Double3(0.0625), qbvh.findTransparency(ray, 10, 0.001), "Wrong transparency");
+            // TC04: A moved sphere is found after a refit
+            spheres[0].setCenter(new Point(100, 0, 0));
+            qbvh.refit(spheres[0]);
+            assertEquals(new Point(99, 0, 0),
+                    qbvh.findClosestIntersection(new Ray(new Point(90, 0, 0), new Vector(1, 0, 0))).getPoint(),
+                    "Moved sphere wasn't found");
+
+            // =============== Boundary Values Tests ==================
+            // TC11: Ray parallel to the bounds of the nodes
+            assertEquals(new Point(-1, 3, 0),
+                    qbvh.findClosestIntersection(new Ray(new Point(-5, 3, 0), new Vector(1, 0, 0))).getPoint(),
+                    "Wrong closest point");
+        } finally {
+            Intersectable.createCBR(false);
+        }
+    }
+
+    /**
+     * Test method for {@link geometries.Geometries#createSBVH()}.
+     */
+    @Test
+    void testCreateSBVH() {
+        Intersectable.createCBR(true);
+        try {
+            Geometries sbvh = new Geometries(createSpheres(10));
+            // a large floor and long thin diagonal triangles crossing the whole scene
+            sbvh.add(new Polygon(new Point(-10, -10, -5), new Point(40, -10, -5), new Point(40, 40, -5),
+                    new Point(-10, 40, -5)).setMaterial(new Material().setKT(0.5)));
+            for (int j = 0; j < 10; ++j)
+                sbvh.add(new Triangle(new Point(j * 3 - 20, -10, -3), new Point(j * 3 + 30, 40, -3),
+                        new Point(j * 3 - 20, -9.9, -2)).setMaterial(new Material().setKT(0.5)));
+            Sphere moved = new Sphere(new Point(0, 0, 20), 1);
+            sbvh.add(moved);
+            sbvh.setSBVHOverlapBudget(0).createSBVH();
+
+            // ============ Equivalence Partitions Tests ==============
+            // TC01: Ray crosses one sphere and the floor once
+            Ray down = new Ray(new Point(6, 9, 10), new Vector(0, 0, -1));
+            assertEquals(3, sbvh.findIntersections(down).size(), "Wrong number of points");
+            assertEquals(new Point(6, 9, 1), sbvh.findClosestIntersection(down).getPoint(), "Wrong closest point");
+            // TC02: Ray crosses the floor and a thin triangle far from their corners
+            Ray slanted = new Ray(new Point(7.5, 17.52, 10), new Vector(0, 0, -1));
+            assertEquals(2, sbvh.findIntersections(slanted).size(), "Wrong number of points");
+            // TC03: The floor and the triangle are each counted once - kT 0.5 twice
+            assertEquals(new Double3(0.25), sbvh.findTransparency(slanted, 100, 0.001), "Wrong transparency");
+            // TC04: A moved sphere is found after a refit
+            moved.setCenter(new Point(100, 0, 20));
+            sbvh.refit(moved);
+            assertEquals(new Point(99, 0, 20),
+                    sbvh.findClosestIntersection(new Ray(new Point(90, 0, 20), new Vector(1, 0, 0))).getPoint(),
+                    "Moved sphere wasn't found");
+
+            // =============== Boundary Values Tests ==================
+            // TC11: Ray crosses the floor on the middle of the scene, where it is split
+            Ray middle = new Ray(new Point(16.5, 15.75, 10), new Vector(0, 0, -1));
+            assertEquals(new Point(16.5, 15.75, -5), sbvh.findClosestIntersection(middle).getPoint(), "Wrong closest point");
+            assertEquals(1, sbvh.findIntersections(middle).size(), "Wrong number of points");
+        } finally {
+            Intersectable.createCBR(false);
+        }
+    }
+
+    /**
+     * Test method for {@link geometries.Geometries#findClosestIntersections(primitives.Ray[])}.
+     */
+    @Test
+    void testFindClosestIntersections() {
+        Intersectable.createCBR(true);
+        try {
+            Geometries bvh = new Geometries(createSpheres(10));
+            bvh.add(new Plane(new Point(0, 0, -5), new Vector(0, 0, 1)));
+            bvh.createBVH();
+
+            // ============ Equivalence Partitions Tests ==============
+            // TC01: A tile of rays from one head - the same points as single rays
+            Point head = new Point(13.5, 13.5, 50);
+            Ray[] tile = new Ray[64];
+            for (int i = 0; i < 8; ++i)
+                for (int j = 0; j < 8; ++j)
+                    tile[i * 8 + j] = new Ray(head, new Vector(i - 3.7, j - 3.7, -5));
+            Intersectable.GeoPoint[] points = bvh.findClosestIntersections(tile);
+            for (int i = 0; i < tile.length; ++i)
+                assertEquals(bvh.findClosestIntersection(tile[i]), points[i], "Wrong closest point of a packet ray");
+            // TC02: Rays in opposite directions are traced one by one
+            Ray[] diverging = { new Ray(new Point(-5, 12, 0), new Vector(1, 0, 0)),
+                    new Ray(new Point(40, 12, 0), new Vector(-1, 0, 0)) };
+            points = bvh.findClosestIntersections(diverging);
+            assertEquals(new Point(-1, 12, 0), points[0].getPoint(), "Wrong closest point");
+            assertEquals(new Point(28, 12, 0), points[1].getPoint(), "Wrong closest point");
+
+            // =============== Boundary Values Tests ==================
+            // TC11: A ray of the packet misses all the geometries
+            Ray[] missing = { new Ray(new Point(-5, 12, 0.5), new Vector(1, 0.0001, 0.0001)),
+                    new Ray(new Point(-5, 12, 0.5), new Vector(1, 0.001, 2)) };
+            points = bvh.findClosestIntersections(missing);
+            assertEquals(bvh.findClosestIntersection(missing[0]), points[0], "Wrong closest point");
+            assertNull(points[1], "There shouldn't be an intersection");
+        } finally {
+            Intersectable.createCBR(false);
+        }
+    }
+
+    /**
+     * Test method for
+     * {@link geometries.Intersectable#findClosestIntersection(primitives.Ray, double)}
+     * of a hierarchy.
+     */
+    @Test
+    void testFindClosestIntersection() {
+        Intersectable.createCBR(true);
+        try {
+            Intersectable[] spheres = AccelerationTest.createScene();
+            Geometries flat = new Geometries(spheres);
+            Geometries bvh = new Geometries(spheres);
+            bvh.createBVH();
+            Ray ray = new Ray(new Point(-5, 12, 0), new Vector(1, 0, 0));
+
+            // ============ Equivalence Partitions Tests ==============
+            // TC01: The closest point is in the nearest subtree
+            assertEquals(new Point(-1, 12, 0), bvh.findClosestIntersection(ray).getPoint(), "Wrong closest point");
+            // TC02: The closest point is in the subtree the hierarchy was built last
+            assertEquals(new Point(28, 12, 0),
+                    bvh.findClosestIntersection(new Ray(new Point(40, 12, 0), new Vector(-1, 0, 0))).getPoint(),
+                    "Wrong closest point");
+            // TC03: Ray starts inside the big sphere, which overlaps the nearer subtrees -
+            // the point of a small sphere of a farther subtree is before its far side
+            Ray inside = new Ray(new Point(12, 10, 0.5), new Vector(1, 1, 0));
+            assertEquals(spheres[54], bvh.findClosestIntersection(inside).geometry, "Wrong closest geometry");
+            assertEquals(flat.findClosestIntersection(inside), bvh.findClosestIntersection(inside),
+                    "BVH and flat geometries found different points");
+            // TC04: The closest point is farther than the maximal distance
+            assertNull(bvh.findClosestIntersection(ray, 3.5), "There shouldn't be any intersection");
+            // TC05: The closest point is closer than the maximal distance, the farther
+            // points aren't returned
+            assertEquals(new Point(-1, 12, 0), bvh.findClosestIntersection(ray, 4.5).getPoint(),
+                    "Wrong closest point");
+
+            // =============== Boundary Values Tests ==================
+            // TC11: Plane without a box behind all the spheres
+            bvh.add(new Plane(new Point(50, 0, 0), new Vector(1, 0, 0)));
+            bvh.createBVH();
+            assertEquals(new Point(-1, 12, 0), bvh.findClosestIntersection(ray).getPoint(), "Wrong closest point");
+            // TC12: Ray misses the spheres and meets the plane without a box
+            assertEquals(new Point(50, 1.5, 0),
+                    bvh.findClosestIntersection(new Ray(new Point(-5, 1.5, 0), new Vector(1, 0, 0))).getPoint(),
+                    "Wrong closest point");
+            // TC13: The plane is beyond the maximal distance
+            assertNull(bvh.findClosestIntersection(new Ray(new Point(-5, 1.5, 0), new Vector(1, 0, 0)), 50),
+                    "There shouldn't be any intersection");
+            // TC14: Plane without a box in front of all the spheres
+            bvh.add(new Plane(new Point(-3, 0, 0), new Vector(1, 0, 0)));
+            bvh.createBVH();
+            assertEquals(new Point(-3, 12, 0), bvh.findClosestIntersection(ray).getPoint(), "Wrong closest point");
+        } finally {
+            Intersectable.createCBR(false);
+        }
+    }
+
+    /**
+     * Builds a hierarchy of a grid of 10x10 unit spheres in the plane z=0, 3 units
+     * apart, whose row y=12 is transparent and counts the spheres of the row asked
+     * for their transparency
+     *
+     * @param kT        the transparency of the row
+     * @param asked     the counter of the asked spheres
+     * @param unbounded geometries without a box to add to the spheres
+     * @return the geometries in a hierarchy
+     */
+    private static Geometries createTransparentRow(double kT, int[] asked, Intersectable... unbounded) {
+        Sphere[] spheres = createSpheres(10);
+        for (int i = 0; i < 10; ++i)
+            spheres[i * 10 + 4] = (Sphere) new Sphere(new Point(i * 3, 12, 0), 1) {
+                @Override
+                protected Double3 findTransparencyHelper(Ray ray, double maxDistance, double minK) {
+                    ++asked[0];
+                    return super.findTransparencyHelper(ray, maxDistance, minK);
+                }
+            }.setMaterial(new Material().setKT(kT));
+        Geometries bvh = new Geometries(spheres);
+        bvh.add(unbounded);
+        bvh.createBVH();
+        return bvh;
+    }
+
+    /**
+     * Test method for
+     * {@link geometries.Intersectable#findTransparency(primitives.Ray, double, double)}
+     * of a hierarchy.
+     */
+    @Test
+    void testFindTransparency() {
+        Intersectable.createCBR(true);
+        try {
+            int[] asked = { 0 };
+            Geometries bvh = createTransparentRow(0.5, asked);
+            Ray ray = new Ray(new Point(-5, 12, 0), new Vector(1, 0, 0));
+
+            // ============ Equivalence Partitions Tests ==============
+            // TC01: Two spheres before the maximal distance - 4 points of kT 0.5, the
+            // spheres beyond the distance aren't asked
+            assertEquals(new Double3(0.0625), bvh.findTransparency(ray, 9.5, 1e-9), "Wrong transparency");
+            assertEquals(2, asked[0], "Wrong number of asked spheres");
+            // TC02: The transparency drops below the minimum at the fifth sphere - the
+            // rest of the row isn't asked
+            asked[0] = 0;
+            assertEquals(Double3.ZERO, bvh.findTransparency(ray, 100, 0.001), "Wrong transparency");
+            assertEquals(5, asked[0], "Wrong number of asked spheres");
+            // TC03: Ray misses all the spheres
+            assertEquals(Double3.ONE, bvh.findTransparency(new Ray(new Point(-5, 1.5, 0), new Vector(1, 0, 0)), 100,
+                    0.001), "Wrong transparency");
+            // TC04: An opaque row - the first asked sphere stops the search
+            bvh = createTransparentRow(0, asked);
+            asked[0] = 0;
+            assertEquals(Double3.ZERO, bvh.findTransparency(ray, 100, 1e-9), "Wrong transparency");
+            assertEquals(1, asked[0], "Wrong number of asked spheres");
+
+            // =============== Boundary Values Tests ==================
+            // TC11: Transparent planes without a box, one before the maximal distance and
+            // one beyond it
+            Material half = new Material().setKT(0.5);
+            bvh = createTransparentRow(0.5, asked, new Plane(new Point(-3, 0, 0), new Vector(1, 0, 0)).setMaterial(half),
+                    new Plane(new Point(20, 0, 0), new Vector(1, 0, 0)).setMaterial(half));
+            assertEquals(new Double3(0.03125), bvh.findTransparency(ray, 9.5, 1e-9), "Wrong transparency");
+            // TC12: An opaque plane without a box before the transparent spheres
+            bvh = createTransparentRow(0.5, asked, new Plane(new Point(-3, 0, 0), new Vector(1, 0, 0)));
+            assertEquals(Double3.ZERO, bvh.findTransparency(ray, 9.5, 1e-9), "Wrong transparency");
+        } finally {
+            Intersectable.createCBR(false);
+        }
+    }
+
+    /**
+     * Test method for {@link geometries.Geometries#createBVH(java.nio.file.Path)}.
+     */
+    @Test
+    void testCreateBVHCache() throws IOException {
+        Intersectable.createCBR(true);
+        Path cache = Files.createTempDirectory("bvh");
+        try {
+            Sphere[] spheres = createSpheres(10);
+            Geometries built = new Geometries(spheres);
+            built.createBVH(cache);
+            Geometries loaded = new Geometries(spheres);
+            loaded.createBVH(cache);
+
+            // ============ Equivalence Partitions Tests ==============
+            // TC01: The built tree is saved once and loaded by the same geometries
+            try (var files = Files.list(cache)) {
+                assertEquals(1, files.count(), "Wrong number of cache files");
+            }
+            Ray ray = new Ray(new Point(-5, 12, 0), new Vector(1, 0, 0));
+            assertEquals(20, loaded.findIntersections(ray).size(), "Wrong number of points");
+            assertEquals(new Point(-1, 12, 0), loaded.findClosestIntersection(ray).getPoint(), "Wrong closest point");
+            // TC02: A moved sphere is found after a refit of the loaded tree
+            spheres[0].setCenter(new Point(100, 0, 0));
+            loaded.refit(spheres[0]);
+            assertEquals(new Point(99, 0, 0),
+                    loaded.findClosestIntersection(new Ray(new Point(90, 0, 0), new Vector(1, 0, 0))).getPoint(),
+                    "Moved sphere wasn't found");
+            // TC03: Other geometries don't load the tree
+            new Geometries(spheres).createBVH(cache);
+            try (var files = Files.list(cache)) {
+                assertEquals(2, files.count(), "Wrong number of cache files");
+            }
+            // TC04: A tree which can't be saved is built anyway
+            Path blocked = Files.createFile(cache.resolve("blocked"));
+            Geometries unsaved = new Geometries(new Sphere(new Point(0, 0, 0), 1), new Sphere(new Point(3, 0, 0), 1),
+                    new Sphere(new Point(6, 0, 0), 1), new Sphere(new Point(9, 0, 0), 1),
+                    new Sphere(new Point(12, 0, 0), 1));
+            assertDoesNotThrow(() -> unsaved.createBVH(blocked), "Failure to save the tree should be ignored");
+            assertEquals(new Point(-1, 0, 0),
+                    unsaved.findClosestIntersection(new Ray(new Point(-5, 0, 0), new Vector(1, 0, 0))).getPoint(),
+                    "Wrong closest point");
+            // TC05: A geometry which isn't in the loaded tree can't be refitted
+            assertThrows(IllegalArgumentException.class,
+                    () -> loaded.refit(new Sphere(new Point(0, 0, 10), 1)),
+                    "Refit of a geometry which isn't in the tree should throw");
+
+            // =============== Boundary Values Tests ==================
+            Sphere[] row = new Sphere[10];
+            for (int i = 0; i < 10; ++i)
+                row[i] = new Sphere(new Point(i * 3, 50, 0), 1);
+            Path rowCache = Files.createDirectory(cache.resolve("row"));
+            new Geometries(row).createBVH(rowCache);
+            Path file;
+            try (var files = Files.list(rowCache)) {
+                file = files.findFirst().orElseThrow();
+            }
+            long size = Files.size(file);
+            Ray rowRay = new Ray(new Point(-5, 50, 0), new Vector(1, 0, 0));
+            // TC11: The tree is read from the file - the root bounds of the file are
+            // moved away from the spheres, so the loaded tree misses them
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+                ByteBuffer root = ByteBuffer.allocate(6 * Double.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+                for (int i = 0; i < 6; ++i)
+                    root.putDouble(1000 + i % 2);
+                channel.write(root.flip(), BVHCache.HEADER_SIZE);
+            }
+            Geometries tampered = new Geometries(row);
+            tampered.createBVH(rowCache);
+            assertNull(tampered.findIntersections(rowRay), "The tree wasn't loaded from the file");
+            // TC12: A truncated file is rebuilt and saved again
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+                channel.truncate(size / 2);
+            }
+            Geometries rebuilt = new Geometries(row);
+            rebuilt.createBVH(rowCache);
+            assertEquals(20, rebuilt.findIntersections(rowRay).size(), "Wrong number of points");
+            assertEquals(size, Files.size(file), "The rebuilt tree wasn't saved");
+        } finally {
+            Intersectable.createCBR(false);
+            try (var files = Files.walk(cache)) {
+                for (var file : files.sorted(Comparator.reverseOrder()).toList())
+                    Files.delete(file);
+            }
+        }
+    }
+
+    /**
+     * Test method for {@link geometries.Geometries#refit(Intersectable...)}.
+     */
+    @Test
+    void testRefit() {
+        Intersectable.createCBR(true);
+        try {
+            Sphere[] spheres = createSpheres(10);
+            Geometries bvh = new Geometries(spheres);
+            Triangle triangle = new Triangle(new Point(0, 0, 5), new Point(2, 0, 5), new Point(0, 2, 5));
+            bvh.add(triangle);
+            bvh.createBVH();
+
+            // ============ Equivalence Partitions Tests ==============
+            // TC01: A sphere moved out of the bounds of the BVH
+            spheres[0].setCenter(new Point(100, 0, 0));
+            bvh.refit(spheres[0]);
+            assertEquals(new Point(99, 0, 0),
+                    bvh.findClosestIntersection(new Ray(new Point(90, 0, 0), new Vector(1, 0, 0))).getPoint(),
+                    "Moved sphere wasn't found");
+            assertNull(bvh.findIntersections(new Ray(new Point(0, 0, -5), new Vector(0, 0, -1))),
+                    "The sphere was found at its old place");
+            // TC02: A triangle with new vertices
+            triangle.setVertices(new Point(50, 50, 5), new Point(52, 50, 5), new Point(50, 52, 5));
+            bvh.refit(triangle);
+            assertEquals(new Point(50.5, 50.5, 5),
+                    bvh.findClosestIntersection(new Ray(new Point(50.5, 50.5, 10), new Vector(0, 0, -1))).getPoint(),
+                    "Moved triangle wasn't found");
+            // TC03: Moves that degrade the BVH rebuild it
+            bvh.setRebuildRatio(1);
+            spheres[99].setCenter(new Point(-100, 0, 0));
+            spheres[98].setCenter(new Point(0, -100, 0));
+            bvh.refit(spheres[99], spheres[98]);
+            assertEquals(new Point(-99, 0, 0),
+                    bvh.findClosestIntersection(new Ray(new Point(-90, 0, 0), new Vector(-1, 0, 0))).getPoint(),
+                    "Moved sphere wasn't found");
+            assertEquals(2, bvh.findIntersections(new Ray(new Point(0, -90, 0), new Vector(0, -1, 0))).size(),
+                    "Wrong number of points");
+
+            // =============== Boundary Values Tests ==================
+            // TC11: A geometry which isn't in the BVH
+            assertThrows(IllegalArgumentException.class, () -> bvh.refit(new Sphere(new Point(0, 0, 0), 1)),
+                    "Refit of a geometry which isn't in the BVH");
+        } finally {
+            Intersectable.createCBR(false);
+        }
+    }
+
+    /**
+     * Test method for
+     * {@link geometries.Intersectable#findGeoIntersections(primitives.Ray, double, java.util.function.Consumer)}.
+     */
+    @Test
+    void testFindGeoIntersectionsSink() {
+        Intersectable.createCBR(true);
+        try {
+            Geometries geometries = new Geometries();
+            for (int i = 0; i < 10; ++i)
+                geometries.add(new Sphere(new Point(i * 3, 0, 0), 1));
+            geometries.add(new Plane(new Point(0, 0, -5), new Vector(0, 0, 1)));
+            geometries.createBVH();
+            Ray ray = new Ray(new Point(-5, 0, 0), new Vector(1, 0, -0.1));
+            HitBuffer hits = new HitBuffer();
+
+            // ============ Equivalence Partitions Tests ==============
+            // TC01: The sink gets the points of the bounded list, the plane included
+            geometries.findGeoIntersections(ray, 60, hits);
+            List<GeoPoint> list = geometries.findGeoIntersections(ray, 60);
+            assertEquals(5, list.size(), "Wrong number of points");
+            assertEquals(list.size(), hits.size(), "Wrong number of points in the sink");
+            for (int i = 0; i < hits.size(); ++i)
+                assertEquals(list.get(i), hits.get(i), "Different points in the sink and in the list");
+            // TC02: Only the points closer than the maximal distance
+            hits.truncate(0);
+            geometries.findGeoIntersections(ray, 7, hits);
+            assertEquals(2, hits.size(), "Wrong number of points closer than the maximal distance");
+
+            // =============== Boundary Values Tests ==================
+            // TC11: The closest point of the sink
+            assertEquals(geometries.findClosestIntersection(ray), hits.closest(0), "Wrong closest point");
+            // TC12: Ray doesn't reach the geometries
+            hits.truncate(0);
+            geometries.findGeoIntersections(ray, 2, hits);
+            assertEquals(0, hits.size(), "There shouldn't be any intersections");
+            assertNull(hits.toList(0), "Empty sink should have no list");
+        } finally {
+            Intersectable.createCBR(false);
+        }
+    }
+
+    /**
+     * Test method for
+     * {@link geometries.Intersectable#findGeoIntersections(primitives.Ray, double)}.
+     */
+    @Test
+    void testFindGeoIntersectionsWithDistance() {
+        Intersectable.createCBR(true);
+        try {
+            Geometries geometries = new Geometries();
+            for (int i = 0; i < 10; ++i)
+                geometries.add(new Sphere(new Point(0, 0, -4 * i), 1));
+            geometries.add(new Plane(new Point(0, 0, -50), new Vector(0, 0, 1)));
+            geometries.createBVH();
+            Ray ray = new Ray(new Point(0, 0, 2), new Vector(0, 0, -1));
+
+            // ============ Equivalence Partitions Tests ==============
+            // TC01: Only the spheres closer than the distance
+            assertEquals(4, geometries.findGeoIntersections(ray, 7.5).size(), "Wrong number of points");
+            // TC02: The unbounded plane is found behind the hierarchy
+            assertEquals(21, geometries.findGeoIntersections(ray, 100).size(), "Wrong number of points");
+            assertEquals(21, geometries.findGeoIntersections(ray).size(), "Wrong number of points");
+
+            // =============== Boundary Values Tests ==================
+            // TC11: The ray enters the box of a sphere beyond the distance
+            Geometries far = new Geometries(new Sphere(new Point(0, 0, -10), 1));
+            assertNull(far.findGeoIntersections(ray, 10.5), "There shouldn't be any intersections");
+        } finally {
+            Intersectable.createCBR(false);
+        }
+    }
+
+    /**
+     * Test method for {@link geometries.Geometries#createKdTree()} and
+     * {@link geometries.Geometries#createGrid()} after another structure was
+     * built.
+     */
+    @Test
+    void testSwitchAcceleration() {
+        Intersectable.createCBR(true);
+        try {
+            Sphere[] spheres = createSpheres(10);
+            Geometries flat = new Geometries(spheres);
+            Geometries geometries = new Geometries(spheres);
+            Plane plane = new Plane(new Point(0, 0, -5), new Vector(0, 0, 1));
+            flat.add(plane);
+            geometries.add(plane);
+            Ray[] rays = { new Ray(new Point(6, 9, 10), new Vector(0, 0, -1)),
+                    new Ray(new Point(-5, 12, 0), new Vector(1, 0, 0)),
+                    new Ray(new Point(1.5, 1.5, 10), new Vector(0, 0, -1)) };
+
+            // ============ Equivalence Partitions Tests ==============
+            // TC01: BVH, then kd-tree, then grid of the same geometries find the points
+            // of the flat geometries, the plane included
+            geometries.createBVH();
+            assertEquals(1, geometries.children().size(), "The BVH should hold only its root");
+            geometries.createKdTree();
+            assertEquals(100, geometries.children().size(), "The kd-tree wasn't built of all the geometries");
+            assertSameIntersections(flat, geometries, rays);
+            geometries.createGrid();
+            assertEquals(100, geometries.children().size(), "The grid wasn't built of all the geometries");
+            assertSameIntersections(flat, geometries, rays);
+
+            // =============== Boundary Values Tests ==================
+            // TC11: Back to a BVH after the grid
+            geometries.createBVH();
+            assertEquals(1, geometries.children().size(), "The BVH should hold only its root");
+            assertSameIntersections(flat, geometries, rays);
+        } finally {
+            Intersectable.createCBR(false);
+        }
+    }
+
+    /**
+     * Checks that two geometries find the same points along rays
+     *
+     * @param expected the reference geometries
+     * @param actual   the checked geometries
+     * @param rays     the rays
+     */
+    private static void assertSameIntersections(Geometries expected, Geometries actual, Ray[] rays) {
+        for (Ray ray : rays) {
+            assertEquals(expected.findIntersections(ray).size(), actual.findIntersections(ray).size(),
+                    "Different number of points");
+            assertEquals(expected.findClosestIntersection(ray), actual.findClosestIntersection(ray),
+                    "Different closest point");
+        }
+    }
+
+    /**
+     * Test method for {@link geometries.Geometries#createQBVH()} and
+     * {@link geometries.Geometries#createSBVH()} after another hierarchy was
+     * built.
+     */
+    @Test
+    void testRebuildHierarchy() {
+        Intersectable.createCBR(true);
+        try {
+            Sphere[] spheres = createSpheres(10);
+            Geometries geometries = new Geometries(spheres);
+            Ray ray = new Ray(new Point(-5, 12, 0), new Vector(1, 0, 0));
+
+            // ============ Equivalence Partitions Tests ==============
+            // TC01: QBVH after a BVH is a tree of wide nodes of all the geometries
+            geometries.createBVH();
+            geometries.createQBVH();
+            assertInstanceOf(WideBVH.class, geometries.accelerator(), "QBVH after BVH isn't a wide tree");
+            assertEquals(20, geometries.findIntersections(ray).size(), "Wrong number of points");
+            // TC02: BVH after a QBVH stays a binary tree after a refit
+            geometries.createBVH();
+            spheres[0].setCenter(new Point(100, 0, 0));
+            geometries.refit(spheres[0]);
+            assertInstanceOf(LinearBVH.class, geometries.accelerator(), "BVH became a wide tree on refit");
+            // TC03: SBVH after a BVH is built again
+            Intersectable bvh = geometries.accelerator();
+            geometries.createSBVH();
+            assertNotSame(bvh, geometries.accelerator(), "SBVH after BVH wasn't built");
+            assertEquals(20, geometries.findIntersections(ray).size(), "Wrong number of points");
+
+            // =============== Boundary Values Tests ==================
+            // TC11: The same hierarchy built twice
+            geometries.createQBVH();
+            geometries.createQBVH();
+            assertEquals(1, geometries.children().size(), "The hierarchy should hold only its root");
+            assertEquals(new Point(99, 0, 0),
+                    geometries.findClosestIntersection(new Ray(new Point(90, 0, 0), new Vector(1, 0, 0))).getPoint(),
+                    "Moved sphere wasn't found");
+        } finally {
+            Intersectable.createCBR(false);
+        }
+    }
+}
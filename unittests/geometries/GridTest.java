@@ -0,0 +1,50 @@
+package geometries;
+
+import static geometries.AccelerationTest.assertSameAsFlat;
+import static geometries.AccelerationTest.createScene;
+
+import org.junit.jupiter.api.Test;
+import primitives.Point;
+import primitives.Ray;
+import primitives.Vector;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for {@link geometries.Grid} - the cases of the grid itself, the
+ * cases of all the structures are in {@link AccelerationTest}
+ *
+ * @author Moy and Efrat
+ */
+class GridTest {
+
+    /**
+     * Test method for {@link geometries.Grid#findIntersections(primitives.Ray)} and
+     * {@link geometries.Intersectable#findClosestIntersection(primitives.Ray)} of a
+     * geometry which overlaps many cells (the grid of
+     * {@link AccelerationTest#createScene()} has 3 cells from z=-4 to z=4).
+     */
+    @Test
+    void testLargeGeometry() {
+        Intersectable.createCBR(true);
+        try {
+            Intersectable[] geometries = createScene();
+            Geometries flat = new Geometries(geometries);
+            Grid grid = new Grid(geometries);
+
+            // ============ Equivalence Partitions Tests ==============
+            // TC01: Ray crosses the cells of the big sphere - the sphere is tested once
+            Ray ray = new Ray(new Point(-5, 13.5, 0), new Vector(1, 0, 0));
+            assertEquals(2, grid.findIntersections(ray).size(), "Wrong number of points");
+            assertSameAsFlat(flat, grid, ray);
+
+            // =============== Boundary Values Tests ==================
+            // TC11: Ray parallel to the cells starts on a cell boundary, its direction
+            // has a negative zero
+            ray = new Ray(new Point(-5, 13.5, -4 + 8d / 3), new Vector(1, 0, -0d));
+            assertEquals(2, grid.findIntersections(ray).size(), "Wrong number of points");
+            assertSameAsFlat(flat, grid, ray);
+        } finally {
+            Intersectable.createCBR(false);
+        }
+    }
+}
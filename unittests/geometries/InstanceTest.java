@@ -0,0 +1,101 @@
+package geometries;
+
+import geometries.Intersectable.GeoPoint;
+import org.junit.jupiter.api.Test;
+import primitives.Double3;
+import primitives.Material;
+import primitives.Point;
+import primitives.Ray;
+import primitives.Transform;
+import primitives.Vector;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for {@link geometries.Instance}
+ *
+ * @author Moy and Efrat
+ */
+class InstanceTest {
+    /** The shared model - a unit sphere at the origin */
+    private final Sphere sphere = new Sphere(new Point(0, 0, 0), 1);
+
+    /**
+     * Places the model scaled by 2 around the point (10,0,0)
+     *
+     * @return the instance
+     */
+    private Instance createInstance() {
+        return new Instance(new Geometries(sphere),
+                Transform.scaling(2, 2, 2).then(Transform.translation(new Vector(10, 0, 0))));
+    }
+
+    /**
+     * Test method for {@link geometries.Instance#findIntersections(primitives.Ray)}.
+     */
+    @Test
+    void testFindIntersections() {
+        Instance instance = createInstance();
+        // ============ Equivalence Partitions Tests ==============
+        // TC01: Ray crosses the transformed sphere
+        var result = instance.findGeoIntersections(new Ray(new Point(0, 0, 0), new Vector(1, 0, 0)));
+        assertEquals(2, result.size(), "Wrong number of points");
+        assertEquals(sphere, result.get(0).geometry, "Wrong geometry");
+        // TC02: Ray crosses the sphere before the transformation only
+        assertNull(instance.findIntersections(new Ray(new Point(0, 0, -5), new Vector(0, 0, 1))),
+                "There shouldn't be any intersections");
+
+        // =============== Boundary Values Tests ==================
+        // TC11: The maximal distance is scaled into the model
+        assertEquals(1, instance.findGeoIntersections(new Ray(new Point(0, 0, 0), new Vector(1, 0, 0)), 10).size(),
+                "Wrong number of points");
+    }
+
+    /**
+     * Test method for
+     * {@link geometries.Intersectable#findClosestIntersection(primitives.Ray)}.
+     */
+    @Test
+    void testFindClosestIntersection() {
+        Instance instance = createInstance();
+        // ============ Equivalence Partitions Tests ==============
+        // TC01: The point and the normal are in the scene
+        GeoPoint gp = instance.findClosestIntersection(new Ray(new Point(20, 0, 0), new Vector(-1, 0, 0)));
+        assertEquals(new Point(12, 0, 0), gp.getPoint(), "Wrong closest point");
+        assertEquals(new Vector(1, 0, 0), gp.getNormal(), "Wrong normal");
+        // TC02: Rotated instance of a triangle - the normal is rotated as well
+        Triangle triangle = new Triangle(new Point(0, 0, 0), new Point(1, 0, 0), new Point(0, 1, 0));
+        Instance rotated = new Instance(triangle, Transform.rotation(new Vector(1, 0, 0), 90));
+        gp = rotated.findClosestIntersection(new Ray(new Point(0.2, -5, 0.2), new Vector(0, 1, 0)));
+        assertEquals(new Point(0.2, 0, 0.2), gp.getPoint(), "Wrong closest point");
+        assertEquals(0, gp.getNormal().dotProduct(new Vector(1, 0, 0)), 1e-10, "Wrong normal");
+        assertEquals(1, Math.abs(gp.getNormal().getY()), 1e-10, "Wrong normal");
+    }
+
+    /**
+     * Test method for {@link geometries.Geometries#createBVH()} over instances
+     * sharing one model.
+     */
+    @Test
+    void testInstancesBVH() {
+        Intersectable.createCBR(true);
+        try {
+            Geometries model = new Geometries(new Sphere(new Point(0, 0, 0), 1)
+                    .setMaterial(new Material().setKT(0.5)));
+            Geometries scene = new Geometries();
+            for (int i = 0; i < 10; ++i)
+                for (int j = 0; j < 10; ++j)
+                    scene.add(new Instance(model, Transform.translation(new Vector(i * 3, j * 3, 1))));
+            scene.createBVH();
+
+            // ============ Equivalence Partitions Tests ==============
+            // TC01: Ray crosses a whole row of instances
+            Ray ray = new Ray(new Point(-5, 12, 1), new Vector(1, 0, 0));
+            assertEquals(20, scene.findIntersections(ray).size(), "Wrong number of points");
+            assertEquals(new Point(-1, 12, 1), scene.findClosestIntersection(ray).getPoint(), "Wrong closest point");
+            // TC02: Two instances before the maximal distance - 4 points of kT 0.5
+            assertEquals(new Double3(0.0625), scene.findTransparency(ray, 10, 0.001), "Wrong transparency");
+        } finally {
+            Intersectable.createCBR(false);
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package geometries;
+
+import static geometries.AccelerationTest.assertSameAsFlat;
+import static geometries.AccelerationTest.createScene;
+
+import org.junit.jupiter.api.Test;
+import primitives.Point;
+import primitives.Ray;
+import primitives.Vector;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for {@link geometries.KdTree} - the cases of the kd-tree itself,
+ * the cases of all the structures are in {@link AccelerationTest}
+ *
+ * @author Moy and Efrat
+ */
+class KdTreeTest {
+
+    /**
+     * Test method for
+     * {@link geometries.Intersectable#findClosestIntersection(primitives.Ray)} of
+     * geometries without a box in the tree.
+     */
+    @Test
+    void testUnboundedGeometries() {
+        Intersectable.createCBR(true);
+        try {
+            KdTree tree = new KdTree(new Sphere(new Point(0, 0, 0), 1), new Sphere(new Point(3, 0, 0), 1),
+                    new Plane(new Point(-10, 0, 0), new Vector(1, 0, 0)));
+            // ============ Equivalence Partitions Tests ==============
+            // TC01: Geometry without a box behind all the spheres
+            assertEquals(new Point(-10, 1.5, 0),
+                    tree.findClosestIntersection(new Ray(new Point(-5, 1.5, 0), new Vector(-1, 0, 0))).getPoint(),
+                    "Wrong closest point");
+            // TC02: The sphere is before the geometry without a box
+            assertEquals(new Point(4, 0, 0),
+                    tree.findClosestIntersection(new Ray(new Point(10, 0, 0), new Vector(-1, 0, 0))).getPoint(),
+                    "Wrong closest point");
+        } finally {
+            Intersectable.createCBR(false);
+        }
+    }
+
+    /**
+     * Test method for {@link geometries.KdTree#findIntersections(primitives.Ray)}
+     * and {@link geometries.Intersectable#findClosestIntersection(primitives.Ray)}
+     * of geometries which are cut by the split planes (the root of the tree of
+     * {@link AccelerationTest#createScene()} splits at x=13).
+     */
+    @Test
+    void testSplitPlanes() {
+        Intersectable.createCBR(true);
+        try {
+            Intersectable[] geometries = createScene();
+            Geometries flat = new Geometries(geometries);
+            KdTree tree = new KdTree(geometries);
+
+            // ============ Equivalence Partitions Tests ==============
+            // TC01: Ray crosses the leaves of the big sphere - the sphere is tested once
+            Ray ray = new Ray(new Point(-5, 13.5, 0), new Vector(1, 0, 0));
+            assertEquals(2, tree.findIntersections(ray).size(), "Wrong number of points");
+            assertSameAsFlat(flat, tree, ray);
+
+            // =============== Boundary Values Tests ==================
+            // TC11: Ray starts on the split plane towards the geometries below it
+            ray = new Ray(new Point(13, 13.5, 0), new Vector(-1, 0, 0));
+            assertEquals(new Point(9.5, 13.5, 0), tree.findClosestIntersection(ray).getPoint(),
+                    "Wrong closest point");
+            assertSameAsFlat(flat, tree, ray);
+            // TC12: Ray starts on the split plane towards the geometries above it
+            ray = new Ray(new Point(13, 13.5, 0), new Vector(1, 0, 0));
+            assertEquals(new Point(17.5, 13.5, 0), tree.findClosestIntersection(ray).getPoint(),
+                    "Wrong closest point");
+            assertSameAsFlat(flat, tree, ray);
+            // TC13: Ray lies in the split plane
+            assertSameAsFlat(flat, tree, new Ray(new Point(13, -5, 0), new Vector(0, 1, 0)));
+            assertSameAsFlat(flat, tree, new Ray(new Point(13, -5, 0.5), new Vector(0, 1, 0.01)));
+        } finally {
+            Intersectable.createCBR(false);
+        }
+    }
+}
@@ -86,4 +86,25 @@ class PlaneTest {
         assertNull(p.findIntersections(new Ray(p.getP(), v352)),
                 "ERROR: findIntersections() did not return null when the ray begins in the same point which appears as reference point in the plane");
     }
-}
\ No newline at end of file
+
+    /**
+     * Test method for
+     * {@link geometries.Plane#findGeoIntersections(primitives.Ray, double)}.
+     */
+    @Test
+    void testFindGeoIntersectionsWithDistance() {
+        Plane p = new Plane(new Point(0, 0, 1), new Vector(0, 0, 1));
+        Ray ray = new Ray(new Point(1, 1, 4), new Vector(0, 0, -1));
+        // ============ Equivalence Partitions Tests ==============
+        // TC01: The plane is closer than the distance
+        assertEquals(List.of(new Point(1, 1, 1)),
+                p.findGeoIntersections(ray, 5).stream().map(Intersectable.GeoPoint::getPoint).toList(),
+                "Wrong point");
+        // TC02: The plane is beyond the distance
+        assertNull(p.findGeoIntersections(ray, 2), "There shouldn't be any intersections");
+
+        // =============== Boundary Values Tests ==================
+        // TC11: The plane is at the distance
+        assertNull(p.findGeoIntersections(ray, 3), "There shouldn't be any intersections");
+    }
+}
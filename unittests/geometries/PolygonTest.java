@@ -45,36 +45,35 @@ class PolygonTest {
      */
     @Test
     void findIntersections() {
+        // all tests assume a point on the plane in which the Polygon is on and check
+        // if the function identifies whether the point is inside the Polygon or not
+        Polygon t = new Polygon(new Point(0, 0, 1), new Point(1, 0, 0), new Point(0, 1, 0), new Point(-1, 1, 1));
+
+        // ============ Equivalence Partitions Tests ==============
+        // TC01: Ray intersects the Polygon
+        List<Point> result = t.findIntersections(new Ray(p05051, new Vector(-0.5, -1, -1)));
+        assertEquals(1, result.size(), "ERROR: findIntersections() did not return the right number of points");
+        assertEquals(List.of(new Point(0.3, 0.1, 0.6)), result, "Incorrect intersection points");
+
+        // TC02: Ray outside against edge
+        assertNull(t.findIntersections(new Ray(p05051, new Vector(-0.5, -2, -1))),
+                "ERROR: findIntersections() did not return null");
+
+        // TC03: Ray outside against vertex
+        assertNull(t.findIntersections(new Ray(p05051, new Vector(1, -0.5, -1))),
+                "ERROR: findIntersections() did not return null");
+
+        // =============== Boundary Values Tests ==================
+        // TC04: Ray on edge
+        assertNull(t.findIntersections(new Ray(p05051, new Vector(-0.5, -1.5, -1))),
+                "ERROR: findIntersections() did not return null");
+
+        // TC05: Ray on vertex
+        assertNull(t.findIntersections(new Ray(p05051, new Vector(-0.5, 0.5, -1))),
+                "ERROR: findIntersections() did not return null");
+
+        // TC06: Ray on edge's continuation
+        assertNull(t.findIntersections(new Ray(p05051, new Vector(-0.5, -1, 0.5))),
+                "ERROR: findIntersections() did not return null");
     }
-//        // all tests assume a point on the plane in which the Polygon is on and check
-//        // if the function identifies whether the point is inside the Polygon or not
-//        Polygon t = new Polygon(new Point(0, 0, 1), new Point(1, 0, 0), new Point(0, 1, 0), new Point(-1, 1, 1));
-//
-//        // ============ Equivalence Partitions Tests ==============
-//        // TC01: Ray intersects the Polygon
-//        List<Point> result = t.findIntersections(new Ray(p05051, new Vector(-0.5, -1, -1)));
-//        assertEquals(1, result.size(), "ERROR: findIntersections() did not return the right number of points");
-//        assertEquals(List.of(new Point(0.3, 0.1, 0.6)), result, "Incorrect intersection points");
-//
-//        // TC02: Ray outside against edge
-//        assertNull(t.findIntersections(new Ray(p05051, new Vector(-0.5, -2, -1))),
-//                "ERROR: findIntersections() did not return null");
-//
-//        // TC03: Ray outside against vertex
-//        assertNull(t.findIntersections(new Ray(p05051, new Vector(1, -0.5, -1))),
-//                "ERROR: findIntersections() did not return null");
-//
-//        // =============== Boundary Values Tests ==================
-//        // TC04: Ray on edge
-//        assertNull(t.findIntersections(new Ray(p05051, new Vector(-0.5, -1.5, -1))),
-//                "ERROR: findIntersections() did not return null");
-//
-//        // TC05: Ray on vertex
-//        assertNull(t.findIntersections(new Ray(p05051, new Vector(-0.5, 0.5, -1))),
-//                "ERROR: findIntersections() did not return null");
-//
-//        // TC06: Ray on edge's continuation
-//        assertNull(t.findIntersections(new Ray(p05051, new Vector(-0.5, -1, 0.5))),
-//                "ERROR: findIntersections() did not return null");
-//    }
 }
@@ -126,4 +126,31 @@ class SphereTest {
         assertNull(sphere.findIntersections(new Ray(new Point(1, 2, 0), v100)),
                 "There shouldn't be any intersections");
     }
-}
\ No newline at end of file
+
+    /**
+     * Test method for
+     * {@link geometries.Sphere#findGeoIntersections(primitives.Ray, double)}.
+     */
+    @Test
+    void testFindGeoIntersectionsWithDistance() {
+        Sphere sphere = new Sphere(p100, 1d);
+        Ray ray = new Ray(new Point(-2, 0, 0), v100);
+        // ============ Equivalence Partitions Tests ==============
+        // TC01: Both points are closer than the distance
+        assertEquals(2, sphere.findGeoIntersections(ray, 5).size(), "Wrong number of points");
+        // TC02: Only the first point is closer than the distance
+        var result = sphere.findGeoIntersections(ray, 3);
+        assertEquals(1, result.size(), "Wrong number of points");
+        assertEquals(new Point(0, 0, 0), result.get(0).getPoint(), "Wrong point");
+        // TC03: The sphere is beyond the distance
+        assertNull(sphere.findGeoIntersections(ray, 1), "There shouldn't be any intersections");
+
+        // =============== Boundary Values Tests ==================
+        // TC11: The second point is at the distance
+        assertEquals(1, sphere.findGeoIntersections(ray, 4).size(), "Wrong number of points");
+        // TC12: The first point is at the distance
+        assertNull(sphere.findGeoIntersections(ray, 2), "There shouldn't be any intersections");
+        // TC13: Ray starts at the center, the point is beyond the distance
+        assertNull(sphere.findGeoIntersections(new Ray(p100, v010), 0.5), "There shouldn't be any intersections");
+    }
+}
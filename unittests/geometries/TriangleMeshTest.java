@@ -0,0 +1,164 @@
+package geometries;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import geometries.Intersectable.GeoPoint;
+import primitives.Point;
+import primitives.Ray;
+import primitives.Vector;
+
+/**
+ * Unit test for TriangleMesh class
+ *
+ * @author Moy and Efrat
+ */
+class TriangleMeshTest {
+    /** Vertices of a square of two faces in the plane z = 0 */
+    private final double[] vertices = { 0, 0, 0, 2, 0, 0, 2, 2, 0, 0, 2, 0 };
+    /** Faces of the square, sharing the diagonal */
+    private final int[] faces = { 0, 1, 2, 0, 2, 3 };
+
+    /**
+     * Test method for
+     * {@link geometries.TriangleMesh#TriangleMesh(double[], int[])}.
+     */
+    @Test
+    void testConstructor() {
+        // ============ Equivalence Partitions Tests ==============
+        // TC01: Correct mesh
+        assertDoesNotThrow(() -> new TriangleMesh(vertices, faces), "Failed constructing a correct mesh");
+        // TC02: Face of a missing vertex
+        assertThrows(IllegalArgumentException.class, () -> new TriangleMesh(vertices, new int[] { 0, 1, 4 }),
+                "Constructed a mesh with a missing vertex");
+        // =============== Boundary Values Tests ==================
+        // TC11: Incomplete face
+        assertThrows(IllegalArgumentException.class, () -> new TriangleMesh(vertices, new int[] { 0, 1 }),
+                "Constructed a mesh with an incomplete face");
+        // TC12: No faces
+        assertThrows(IllegalArgumentException.class, () -> new TriangleMesh(vertices, new int[0]),
+                "Constructed a mesh without faces");
+    }
+
+    /**
+     * Test method for {@link geometries.TriangleMesh#getNormal(primitives.Point)}.
+     */
+    @Test
+    void testGetNormal() {
+        TriangleMesh mesh = new TriangleMesh(vertices, faces);
+        // ============ Equivalence Partitions Tests ==============
+        // TC01: Point inside the second face
+        assertEquals(new Vector(0, 0, 1), mesh.getNormal(new Point(0.5, 1.5, 0)), "Wrong normal");
+        // TC02: Point out of the mesh
+        assertThrows(IllegalArgumentException.class, () -> mesh.getNormal(new Point(3, 3, 0)),
+                "Found a normal out of the mesh");
+    }
+
+    /**
+     * Test method for
+     * {@link geometries.TriangleMesh#findGeoIntersections(primitives.Ray, double)}.
+     */
+    @Test
+    void testFindIntersections() {
+        TriangleMesh mesh = new TriangleMesh(vertices, faces);
+        Vector down = new Vector(0, 0, -1);
+        // ============ Equivalence Partitions Tests ==============
+        // TC01: Ray crosses the first face
+        List<GeoPoint> result = mesh.findGeoIntersections(new Ray(new Point(1.5, 0.5, 1), down));
+        assertEquals(1, result.size(), "Wrong number of points");
+        assertEquals(new Point(1.5, 0.5, 0), result.get(0).getPoint(), "Wrong point");
+        assertEquals(new Vector(0, 0, 1), result.get(0).getNormal(), "Wrong normal of the point");
+        // TC02: Ray crosses the second face
+        assertEquals(List.of(new Point(0.5, 1.5, 0)), mesh.findIntersections(new Ray(new Point(0.5, 1.5, 1), down)),
+                "Wrong point");
+        // TC03: Ray misses the mesh
+        assertNull(mesh.findIntersections(new Ray(new Point(3, 1, 1), down)), "There shouldn't be any intersections");
+        // TC04: Mesh beyond the maximal distance
+        assertNull(mesh.findGeoIntersections(new Ray(new Point(1.5, 0.5, 1), down), 0.5),
+                "There shouldn't be any intersections");
+
+        // =============== Boundary Values Tests ==================
+        // TC11: Ray on the shared edge hits the mesh (once per face)
+        assertEquals(new Point(1, 1, 0), mesh.findClosestIntersection(new Ray(new Point(1, 1, 1), down)).getPoint(),
+                "Missed the shared edge");
+        // TC12: Ray parallel to the mesh
+        assertNull(mesh.findIntersections(new Ray(new Point(-1, 1, 0.5), new Vector(1, 0, 0))),
+                "There shouldn't be any intersections");
+    }
+
+    /**
+     * Test method for {@link geometries.TriangleMesh#faces()}.
+     */
+    @Test
+    void testFaces() {
+        Intersectable.createCBR(true);
+        try {
+            // a strip of faces over the x axis, compared with the same triangles
+            int n = 20;
+            double[] strip = new double[(n + 1) * 6];
+            int[] indices = new int[n * 6];
+            Geometries triangles = new Geometries();
+            for (int i = 0; i <= n; ++i) {
+                strip[6 * i] = i;
+                strip[6 * i + 3] = i;
+                strip[6 * i + 4] = 1;
+                strip[6 * i + 5] = i % 2;
+            }
+            for (int i = 0; i < n; ++i) {
+                int a = 2 * i, b = a + 1, c = a + 2, d = a + 3;
+                indices[6 * i] = a;
+                indices[6 * i + 1] = c;
+                indices[6 * i + 2] = b;
+                indices[6 * i + 3] = b;
+                indices[6 * i + 4] = c;
+                indices[6 * i + 5] = d;
+                triangles.add(new Triangle(point(strip, a), point(strip, c), point(strip, b)),
+                        new Triangle(point(strip, b), point(strip, c), point(strip, d)));
+            }
+            TriangleMesh mesh = new TriangleMesh(strip, indices);
+            Geometries scene = new Geometries(mesh.faces());
+            scene.createBVH();
+            triangles.createBVH();
+
+            // ============ Equivalence Partitions Tests ==============
+            // TC01: The leaves of the faces find the points of the triangles
+            assertEquals(2 * n, mesh.faces().size(), "Wrong number of faces");
+            for (int i = 0; i < n; ++i) {
+                Ray ray = new Ray(new Point(i + 0.3, 0.3, 5), new Vector(0, 0.1, -1));
+                GeoPoint expected = triangles.findClosestIntersection(ray);
+                GeoPoint actual = scene.findClosestIntersection(ray);
+                assertEquals(expected.getPoint(), actual.getPoint(), "Faces and triangles found different points");
+                assertEquals(mesh, actual.geometry, "The point doesn't belong to the mesh");
+                assertEquals(expected.getPoint(), mesh.findClosestIntersection(ray).getPoint(),
+                        "Mesh and triangles found different points");
+            }
+            // TC02: Ray misses all the faces
+            assertNull(scene.findIntersections(new Ray(new Point(-1, 0.5, 5), new Vector(0, 0, -1))),
+                    "There shouldn't be any intersections");
+
+            // =============== Boundary Values Tests ==================
+            // TC11: Ray on an edge between two faces hits the mesh but misses both
+            // triangles
+            Ray ray = new Ray(new Point(8.45, 0.55, 1), new Vector(0, 0, -1));
+            assertNull(triangles.findIntersections(ray), "The triangles include their edges");
+            assertEquals(new Point(8.45, 0.55, 0), scene.findClosestIntersection(ray).getPoint(),
+                    "Missed the edge between the faces");
+        } finally {
+            Intersectable.createCBR(false);
+        }
+    }
+
+    /**
+     * Returns a vertex of a vertex array as a point
+     *
+     * @param vertices the vertex array
+     * @param index    the index of the vertex
+     * @return the point
+     */
+    private static Point point(double[] vertices, int index) {
+        return new Point(vertices[3 * index], vertices[3 * index + 1], vertices[3 * index + 2]);
+    }
+}
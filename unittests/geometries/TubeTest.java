@@ -4,6 +4,10 @@ import org.junit.jupiter.api.Test;
 
 import static org.junit.jupiter.api.Assertions.*;
 
+import java.util.List;
+
+import geometries.Intersectable.GeoPoint;
+
 import primitives.Point;
 import primitives.Ray;
 import primitives.Vector;
@@ -35,4 +39,47 @@ class TubeTest {
         // ensure the result is right
         assertEquals(new Vector(1, 0, 0), result1, "getNormal() wrong result");
     }
-}
\ No newline at end of file
+
+    /**
+     * Test method for {@link geometries.Tube#findIntersections(primitives.Ray)}
+     * and {@link geometries.Tube#findGeoIntersections(primitives.Ray, double)}.
+     */
+    @Test
+    void testFindIntersections() {
+        Tube tube = new Tube(new Ray(new Point(0, 0, 0), new Vector(0, 0, 1)), 1);
+        Vector v100 = new Vector(1, 0, 0);
+        // ============ Equivalence Partitions Tests ==============
+        // TC01: Ray crosses the tube (2 points)
+        assertEquals(List.of(new Point(-1, 0, 0.5), new Point(1, 0, 0.5)),
+                tube.findIntersections(new Ray(new Point(-2, 0, 0.5), v100)), "Wrong points");
+        // TC02: Ray's line is outside the tube (0 points)
+        assertNull(tube.findIntersections(new Ray(new Point(-2, 2, 0), v100)),
+                "There shouldn't be any intersections");
+        // TC03: Ray starts inside the tube (1 point)
+        assertEquals(List.of(new Point(1, 0, 1)),
+                tube.findIntersections(new Ray(new Point(0, 0, 0), new Vector(1, 0, 1))), "Wrong point");
+        // TC04: Ray starts after the tube (0 points)
+        assertNull(tube.findIntersections(new Ray(new Point(2, 0, 0), v100)), "There shouldn't be any intersections");
+        // TC05: Only the first point is closer than the maximal distance
+        List<GeoPoint> result = tube.findGeoIntersections(new Ray(new Point(-2, 0, 0), v100), 2);
+        assertEquals(1, result.size(), "Wrong number of points");
+        assertEquals(new Point(-1, 0, 0), result.get(0).getPoint(), "Wrong point");
+        assertEquals(new Vector(-1, 0, 0), result.get(0).getNormal(), "Wrong normal");
+
+        // =============== Boundary Values Tests ==================
+        // TC11: Ray parallel to the axis inside the tube
+        assertNull(tube.findIntersections(new Ray(new Point(0.5, 0, 0), new Vector(0, 0, 1))),
+                "There shouldn't be any intersections");
+        // TC12: Ray tangent to the tube
+        assertNull(tube.findIntersections(new Ray(new Point(-2, 1, 0), v100)),
+                "There shouldn't be any intersections");
+        // TC13: Ray starts on the tube and goes outside
+        assertNull(tube.findIntersections(new Ray(new Point(1, 0, 0), v100)), "There shouldn't be any intersections");
+        // TC14: Ray crosses the axis obliquely
+        assertEquals(List.of(new Point(-1, 0, -1), new Point(1, 0, 1)),
+                tube.findIntersections(new Ray(new Point(-2, 0, -2), new Vector(1, 0, 1))), "Wrong points");
+        // TC15: The second point is at the maximal distance
+        assertEquals(1, tube.findGeoIntersections(new Ray(new Point(-2, 0, 0), v100), 3).size(),
+                "Wrong number of points");
+    }
+}
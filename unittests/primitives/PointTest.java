@@ -88,4 +88,14 @@ class PointTest {
         double b1 = p1.distanceSquared(p1);
         assertTrue(isZero(b1), "distanceSquared() does not work for distance between point and itself");
     }
-}
\ No newline at end of file
+
+    /**
+     * Test method for {@link primitives.Point#getZ()}.
+     */
+    @Test
+    void testgetZ() {
+        // ============ Equivalence Partitions Tests ==============
+        // TC01: Test that the z coordinate is returned and not another one
+        assertEquals(3, new Point(1, 2, 3).getZ(), 0.00001, "getZ() wrong result");
+    }
+}
@@ -4,6 +4,8 @@ import org.junit.jupiter.api.Test;
 
 import java.util.List;
 
+import geometries.Intersectable.GeoPoint;
+
 import static org.junit.jupiter.api.Assertions.*;
 
 class RayTest {
@@ -85,4 +87,53 @@ class RayTest {
         points = List.of(b, c, a);
         assertEquals(a, ray.findClosestPoint(points), "Returned wrong result");
     }
-}
\ No newline at end of file
+
+    /**
+     * Test method for {@link primitives.Ray#findClosestGeoPoint(List)}.
+     */
+    @Test
+    void testFindClosestGeoPoint() {
+        Ray ray = new Ray(new Point(0, 0, 0), new Vector(1, 1, 0));
+        GeoPoint a = new GeoPoint(null, ray, 2);
+        GeoPoint b = new GeoPoint(null, ray, 3);
+        GeoPoint c = new GeoPoint(null, ray, 5);
+        // ============ Equivalence Partitions Tests ==============
+        // TC01: Closest point is in the middle of the list, its point is calculated
+        // only when it is asked for
+        GeoPoint closest = ray.findClosestGeoPoint(List.of(b, a, c));
+        assertSame(a, closest, "Returned wrong result");
+        assertEquals(2, closest.getDistance(), "Wrong distance");
+        assertEquals(ray.getPoint(2), closest.getPoint(), "Wrong point");
+
+        // ============ Boundary Values Tests ==============
+        // TC11: list is empty (should return null)
+        assertNull(ray.findClosestGeoPoint(List.of()), "Should have returned null");
+        // TC12: closest point is at end of list
+        assertSame(a, ray.findClosestGeoPoint(List.of(b, c, a)), "Returned wrong result");
+    }
+
+    /**
+     * Test method for the inverse direction and the sign bits of
+     * {@link primitives.Ray#Ray(Point, Vector)}.
+     */
+    @Test
+    void testInverseDirection() {
+        // ============ Equivalence Partitions Tests ==============
+        // TC01: Direction with positive and negative coordinates
+        Ray ray = new Ray(Point.ZERO, new Vector(3, -4, 12));
+        assertEquals(13d / 3, ray.inverseX, 1e-12, "Wrong inverse of x");
+        assertEquals(-13d / 4, ray.inverseY, 1e-12, "Wrong inverse of y");
+        assertEquals(13d / 12, ray.inverseZ, 1e-12, "Wrong inverse of z");
+        assertEquals(0, ray.signX, "Wrong sign of x");
+        assertEquals(1, ray.signY, "Wrong sign of y");
+        assertEquals(0, ray.signZ, "Wrong sign of z");
+        // =============== Boundary Values Tests ==================
+        // TC11: Direction parallel to an axis has infinite inverses, -0 is negative
+        ray = new Ray(Point.ZERO, new Vector(-0d, 0, -2));
+        assertEquals(Double.NEGATIVE_INFINITY, ray.inverseX, "Wrong inverse of -0");
+        assertEquals(Double.POSITIVE_INFINITY, ray.inverseY, "Wrong inverse of 0");
+        assertEquals(1, ray.signX, "Wrong sign of -0");
+        assertEquals(0, ray.signY, "Wrong sign of 0");
+        assertEquals(1, ray.signZ, "Wrong sign of z");
+    }
+}
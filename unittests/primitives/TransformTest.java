@@ -0,0 +1,58 @@
+package primitives;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit test for Transform class
+ *
+ * @author Moy and Efrat
+ */
+class TransformTest {
+    /** Rotation by 90 degrees around z followed by a translation */
+    private final Transform transform = Transform.rotation(new Vector(0, 0, 1), 90)
+            .then(Transform.translation(new Vector(1, 2, 3)));
+
+    /**
+     * Test method for {@link primitives.Transform#apply(primitives.Point)}.
+     */
+    @Test
+    void testApplyPoint() {
+        // ============ Equivalence Partitions Tests ==============
+        // TC01: The point is rotated and then translated
+        assertEquals(new Point(1, 3, 3), transform.apply(new Point(1, 0, 0)), "apply() wrong result");
+        // TC02: Scaling
+        assertEquals(new Point(2, 3, -4), Transform.scaling(2, 3, 4).apply(new Point(1, 1, -1)),
+                "apply() wrong result");
+
+        // =============== Boundary Values Tests ==================
+        // TC11: Zero scale
+        assertThrows(IllegalArgumentException.class, () -> Transform.scaling(0, 1, 1),
+                "scaling() does not throw an exception for zero scale");
+    }
+
+    /**
+     * Test method for {@link primitives.Transform#apply(primitives.Vector)}.
+     */
+    @Test
+    void testApplyVector() {
+        // ============ Equivalence Partitions Tests ==============
+        // TC01: The vector is rotated but not translated
+        assertEquals(new Vector(0, 1, 0), transform.apply(new Vector(1, 0, 0)), "apply() wrong result");
+    }
+
+    /**
+     * Test method for {@link primitives.Transform#inverse()}.
+     */
+    @Test
+    void testInverse() {
+        // ============ Equivalence Partitions Tests ==============
+        // TC01: The inverse takes the point back
+        Point p = new Point(3, -2, 5);
+        assertEquals(p, transform.inverse().apply(transform.apply(p)), "inverse() wrong result");
+        // TC02: Inverse of a scaling
+        assertEquals(new Point(1, 1, 1), Transform.scaling(2, 4, 5).inverse().apply(new Point(2, 4, 5)),
+                "inverse() wrong result");
+    }
+}
@@ -0,0 +1,55 @@
+package primitives;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit test for Vec3 class
+ *
+ * @author Moy and Efrat
+ */
+class Vec3Test {
+
+    /**
+     * Test method for {@link primitives.Vec3#cross(primitives.Vec3, primitives.Vec3)}.
+     */
+    @Test
+    void testCross() {
+        Vector v1 = new Vector(1, 2, 3);
+        Vector v2 = new Vector(0.3, -4, 2.7);
+        Vec3 a = new Vec3().set(v1);
+        Vec3 b = new Vec3().set(v2);
+        // ============ Equivalence Partitions Tests ==============
+        // TC01: The same vector as the immutable cross product
+        assertEquals(v1.crossProduct(v2), new Vec3().cross(a, b).toVector(), "ERROR: wrong cross product");
+        // =============== Boundary Values Tests ==================
+        // TC11: The result is one of the operands
+        assertEquals(v1.crossProduct(v2), a.cross(a, b).toVector(), "ERROR: wrong cross product into an operand");
+    }
+
+    /**
+     * Test method for {@link primitives.Vec3#normalize()} and
+     * {@link primitives.Vec3#dot(primitives.Vector)}.
+     */
+    @Test
+    void testNormalizeDot() {
+        Point p1 = new Point(1, 2, 3);
+        Point p2 = new Point(-2, 0.5, 7);
+        Vector v = new Vector(0, 3, 4);
+        // ============ Equivalence Partitions Tests ==============
+        // TC01: Exactly the same values as the immutable operations
+        Vec3 u = new Vec3().subtract(p1, p2);
+        assertEquals(p1.subtract(p2).dotProduct(v), u.dot(v), 0, "ERROR: wrong dot product");
+        Vector normalized = p1.subtract(p2).normalize();
+        u.normalize();
+        assertEquals(normalized.getX(), u.x, 0, "ERROR: wrong normalized x");
+        assertEquals(normalized.getY(), u.y, 0, "ERROR: wrong normalized y");
+        assertEquals(normalized.getZ(), u.z, 0, "ERROR: wrong normalized z");
+        // =============== Boundary Values Tests ==================
+        // TC11: The zero vector can't become a Vector
+        Vec3 zero = new Vec3().subtract(p1, p1);
+        assertTrue(zero.isZeroVector(), "ERROR: zero vector not detected");
+        assertThrows(IllegalArgumentException.class, zero::toVector, "ERROR: zero vector created");
+    }
+}
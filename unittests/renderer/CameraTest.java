@@ -1,6 +1,9 @@
 package renderer;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
 import org.junit.jupiter.api.Test;
 import primitives.*;
 import scene.Scene;
@@ -59,4 +62,44 @@ class CameraTest {
                 camera2.constructRay(3, 3, 0, 0), badRay);
 
     }
-}
\ No newline at end of file
+
+    /**
+     * Test method for {@link renderer.Camera#renderImage()} with tiles and
+     * threads.
+     */
+    @Test
+    void testRenderImageTiles() {
+        // ============ Equivalence Partitions Tests ==============
+        // TC01: Every pixel is rendered once by several threads
+        assertRenderedOnce(cameraBuilder.setVpSize(8d, 8d).setMultiThreading(4).setTileSize(4), 16, 16);
+        // TC02: Every pixel is rendered once in packets by several threads
+        assertRenderedOnce(cameraBuilder.setVpSize(8d, 8d).setMultiThreading(3).setTileSize(5).setPacketSize(2),
+                16, 16);
+
+        // =============== Boundary Values Tests ==================
+        // TC11: The tiles are cut by the borders of the image
+        assertRenderedOnce(cameraBuilder.setVpSize(8d, 8d).setMultiThreading(4).setTileSize(6).setPacketSize(1),
+                13, 7);
+        // TC12: A single tile without threads
+        assertRenderedOnce(cameraBuilder.setVpSize(8d, 8d).setMultiThreading(0).setTileSize(32), 13, 7);
+    }
+
+    /**
+     * Renders an image and checks that every pixel is written exactly once
+     *
+     * @param builder the builder of the camera
+     * @param nX      the amount of pixel columns
+     * @param nY      the amount of pixel rows
+     */
+    private void assertRenderedOnce(Camera.Builder builder, int nX, int nY) {
+        AtomicIntegerArray written = new AtomicIntegerArray(nX * nY);
+        builder.setImageWriter(new ImageWriter("Test", nX, nY) {
+            @Override
+            public void writePixel(int xIndex, int yIndex, Color color) {
+                written.incrementAndGet(yIndex * nX + xIndex);
+            }
+        }).build().renderImage();
+        for (int i = 0; i < written.length(); ++i)
+            assertEquals(1, written.get(i), "Pixel " + i + " was not rendered once");
+    }
+}
@@ -0,0 +1,121 @@
+package renderer;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.Test;
+
+import geometries.Intersectable;
+import geometries.Plane;
+import geometries.Sphere;
+import lighting.AmbientLight;
+import lighting.PointLight;
+import primitives.*;
+import scene.Scene;
+
+/**
+ * Testing SimpleRayTracer Class
+ *
+ * @author Moy and Efrat
+ */
+class SimpleRayTracerTest {
+
+    /**
+     * Creates a scene of a transparent sphere around an opaque one over a
+     * reflective floor, which covers only a part of the image - the rays of the
+     * other part and their secondary rays miss all the geometries
+     *
+     * @return the scene
+     */
+    private static Scene createScene() {
+        Scene scene = new Scene("Sorted secondary rays").setCBR();
+        scene.geometries.add(
+                new Sphere(new Point(0, 0, -100), 40).setEmission(new Color(0, 0, 100))
+                        .setMaterial(new Material().setKd(0.3).setKs(0.3).setNShininess(50).setKT(0.6)),
+                new Sphere(new Point(0, 0, -100), 15).setEmission(new Color(100, 20, 20))
+                        .setMaterial(new Material().setKd(0.5).setKs(0.5).setNShininess(30).setKR(0.3)),
+                new Plane(new Point(0, -40, 0), new Vector(0, 1, 0)).setEmission(new Color(20, 20, 20))
+                        .setMaterial(new Material().setKd(0.2).setKR(0.7)));
+        scene.setAmbientLight(new AmbientLight(new Color(255, 255, 255), 0.1));
+        scene.lights.add(new PointLight(new Color(500, 400, 300), new Point(60, 80, 0)).setKl(0.0005).setKq(0.00005));
+        scene.geometries.createBVH();
+        return scene;
+    }
+
+    /**
+     * Renders the scene into an array of pixels
+     *
+     * @param scene  the scene
+     * @param sorted true to trace the secondary rays sorted
+     * @return the RGB values of the pixels, row by row
+     */
+    private static int[] render(Scene scene, boolean sorted) {
+        final int nX = 40, nY = 30;
+        int[] pixels = new int[nX * nY];
+        Camera.getBuilder()
+                .setLocation(Point.ZERO).setDirection(new Vector(0, 0, -1), new Vector(0, 1, 0))
+                .setVpDistance(100).setVpSize(160, 120).setPacketSize(4)
+                .setRayTracer(new SimpleRayTracer(scene).setSortSecondaryRays(sorted))
+                .setImageWriter(new ImageWriter("Test", nX, nY) {
+                    @Override
+                    public void writePixel(int xIndex, int yIndex, Color color) {
+                        pixels[yIndex * nX + xIndex] = color.getColor().getRGB();
+                    }
+                }).build().renderImage();
+        return pixels;
+    }
+
+    /**
+     * Test method for {@link renderer.SimpleRayTracer#traceRays(primitives.Ray[])}.
+     */
+    @Test
+    void testTraceRays() {
+        try {
+            Scene scene = createScene();
+            // ============ Equivalence Partitions Tests ==============
+            // TC01: Reflected and refracted rays traced sorted by levels color the pixels
+            // as the recursive tracing does
+            assertArrayEquals(render(scene, false), render(scene, true), "Sorted tracing changed the image");
+
+            // =============== Boundary Values Tests ==================
+            // TC11: A packet whose rays all miss - the background without secondary rays
+            Ray[] rays = { new Ray(Point.ZERO, new Vector(0, 1, 0)), new Ray(Point.ZERO, new Vector(1, 1, 0)),
+                    new Ray(Point.ZERO, new Vector(-1, 1, 1)) };
+            for (Color color : new SimpleRayTracer(scene).setSortSecondaryRays(true).traceRays(rays))
+                assertEquals(scene.background, color, "A missing ray should have the background color");
+        } finally {
+            Intersectable.createCBR(false);
+        }
+    }
+
+    /**
+     * Test method for {@link renderer.SimpleRayTracer#sortOrder(primitives.Ray[])}.
+     */
+    @Test
+    void testSortOrder() {
+        // ============ Equivalence Partitions Tests ==============
+        // TC01: Rays of a common head are ordered by the octants of their directions
+        Ray[] rays = { new Ray(Point.ZERO, new Vector(-1, -1, -1)), new Ray(Point.ZERO, new Vector(-1, 1, 1)),
+                new Ray(Point.ZERO, new Vector(1, -1, 1)), new Ray(Point.ZERO, new Vector(1, 1, -1)),
+                new Ray(Point.ZERO, new Vector(1, 1, 1)) };
+        assertArrayEquals(new int[] { 4, 3, 2, 1, 0 }, SimpleRayTracer.sortOrder(rays), "Wrong order of octants");
+        // TC02: Rays of a common direction are ordered by the Morton codes of their
+        // heads - x is the highest bit, so (0,1,1) is before (1,0,0)
+        Vector v = new Vector(1, 1, 1);
+        rays = new Ray[] { new Ray(new Point(1, 1, 1), v), new Ray(new Point(1, 0, 0), v),
+                new Ray(new Point(0, 1, 1), v), new Ray(new Point(0, 1, 0), v), new Ray(new Point(0, 0, 1), v),
+                new Ray(Point.ZERO, v) };
+        assertArrayEquals(new int[] { 5, 4, 3, 2, 1, 0 }, SimpleRayTracer.sortOrder(rays),
+                "Wrong order of heads");
+
+        // =============== Boundary Values Tests ==================
+        // TC11: The octant comes before the head
+        rays = new Ray[] { new Ray(Point.ZERO, new Vector(1, 1, -1)), new Ray(new Point(1, 1, 1), v) };
+        assertArrayEquals(new int[] { 1, 0 }, SimpleRayTracer.sortOrder(rays), "The octant should come first");
+        // TC12: Rays of a common head and octant keep their order
+        rays = new Ray[] { new Ray(Point.ZERO, new Vector(1, 2, 3)), new Ray(Point.ZERO, v),
+                new Ray(Point.ZERO, new Vector(3, 2, 1)) };
+        assertArrayEquals(new int[] { 0, 1, 2 }, SimpleRayTracer.sortOrder(rays), "Equal rays should keep their order");
+        // TC13: No rays
+        assertEquals(0, SimpleRayTracer.sortOrder(new Ray[0]).length, "There shouldn't be any rays");
+    }
+}
@@ -0,0 +1,121 @@
+package renderer;
+
+import static java.awt.Color.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.Test;
+
+import geometries.*;
+import lighting.AmbientLight;
+import lighting.SpotLight;
+import primitives.*;
+import scene.Scene;
+
+/**
+ * Testing the single precision storage of the geometry against the double
+ * precision by the difference of the images
+ *
+ * @author Moy and Efrat
+ */
+public class SinglePrecisionTests {
+    /** Resolution of the compared images */
+    private static final int RESOLUTION = 120;
+    /** Difference of a color channel above which two pixels are different */
+    private static final int CHANNEL_THRESHOLD = 8;
+    /** Maximal share of different pixels */
+    private static final double PIXELS_THRESHOLD = 0.01;
+
+    /**
+     * Creates the scene of the tests - a wavy reflecting mesh under spheres, with
+     * a shadow casting spotlight
+     *
+     * @param singlePrecision whether the geometry is stored in single precision
+     * @return the scene
+     */
+    private Scene scene(boolean singlePrecision) {
+        Scene scene = new Scene("Precision scene").setCBR();
+        if (singlePrecision)
+            scene.setSinglePrecision();
+        scene.setAmbientLight(new AmbientLight(new Color(WHITE), 0.1));
+
+        // a grid of n x n quads around the origin
+        int n = 30;
+        double size = 10;
+        double[] vertices = new double[(n + 1) * (n + 1) * 3];
+        for (int i = 0; i <= n; ++i)
+            for (int j = 0; j <= n; ++j) {
+                int v = (i * (n + 1) + j) * 3;
+                vertices[v] = (j - n / 2.0) * size + 0.1;
+                vertices[v + 1] = (i - n / 2.0) * size + 0.1;
+                vertices[v + 2] = -100 + 7 * Math.sin(i * 0.7) * Math.cos(j * 0.5);
+            }
+        int[] faces = new int[n * n * 6];
+        for (int i = 0; i < n; ++i)
+            for (int j = 0; j < n; ++j) {
+                int a = i * (n + 1) + j, b = a + 1, c = a + n + 1, d = c + 1, f = (i * n + j) * 6;
+                faces[f] = a;
+                faces[f + 1] = b;
+                faces[f + 2] = d;
+                faces[f + 3] = a;
+                faces[f + 4] = d;
+                faces[f + 5] = c;
+            }
+        TriangleMesh mesh = new TriangleMesh(vertices, faces);
+        mesh.setEmission(new Color(20, 40, 20))
+                .setMaterial(new Material().setKd(0.6).setKs(0.3).setNShininess(20).setKR(0.2));
+        scene.geometries.add(mesh.faces());
+        for (int k = 0; k < 5; ++k)
+            scene.geometries.add(new Sphere(new Point(-60 + k * 30, 20 - k * 10, -60 + k * 5), 15)
+                    .setEmission(new Color(BLUE))
+                    .setMaterial(new Material().setKd(0.5).setKs(0.5).setNShininess(30).setKT(k % 2 * 0.4)));
+        scene.lights.add(new SpotLight(new Color(700, 400, 400), new Point(100, 150, 200), new Vector(-1, -1.5, -3))
+                .setKl(4E-5).setKq(2E-7));
+        scene.setBVH();
+        return scene;
+    }
+
+    /**
+     * Renders a scene pixel by pixel
+     *
+     * @param scene the scene
+     * @return the RGB values of the pixels
+     */
+    private int[] render(Scene scene) {
+        SimpleRayTracer tracer = new SimpleRayTracer(scene);
+        Camera camera = Camera.getBuilder() //
+                .setDirection(new Vector(0, 1, -1), new Vector(0, 1, 1)) //
+                .setLocation(new Point(0, -300, 200)).setVpDistance(300) //
+                .setVpSize(200, 200) //
+                .setImageWriter(new ImageWriter("precision", RESOLUTION, RESOLUTION)) //
+                .setRayTracer(tracer) //
+                .build();
+        int[] pixels = new int[RESOLUTION * RESOLUTION];
+        for (int i = 0; i < RESOLUTION; ++i)
+            for (int j = 0; j < RESOLUTION; ++j)
+                pixels[i * RESOLUTION + j] = tracer.traceRay(camera.constructRay(RESOLUTION, RESOLUTION, j, i))
+                        .getColor().getRGB();
+        return pixels;
+    }
+
+    /** The image in single precision is close to the image in double precision */
+    @Test
+    public void singlePrecisionImageDifference() {
+        int[] expected = render(scene(false));
+        int[] actual;
+        try {
+            actual = render(scene(true));
+        } finally {
+            Intersectable.createSinglePrecision(false);
+        }
+
+        int different = 0;
+        for (int k = 0; k < expected.length; ++k)
+            for (int shift = 0; shift < 24; shift += 8)
+                if (Math.abs((expected[k] >> shift & 255) - (actual[k] >> shift & 255)) > CHANNEL_THRESHOLD) {
+                    ++different;
+                    break;
+                }
+        assertTrue(different <= expected.length * PIXELS_THRESHOLD,
+                "Too many different pixels in single precision: " + different);
+    }
+}